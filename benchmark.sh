@@ -1,18 +1,30 @@
-mkdir -p .benchmark
+#!/bin/bash
+# JMH benchmarks on synthetic corpora, compared with the stored baseline (src/jmh/baseline.csv).
+# Extra arguments are passed to JMH, e.g. ./benchmark.sh TreeMatcher -p hitRate=0.01
+# Run with --newsgroups to compare with other annotators on 20 Newsgroups texts (downloads them).
 
-# Download 20 newsgroups
+set -e
 
-if [ ! -f .benchmark/20news-bydate.tar.gz ]; then
-    wget http://qwone.com/~jason/20Newsgroups/20news-bydate.tar.gz -P .benchmark
-    tar zxf .benchmark/20news-bydate.tar.gz -C .benchmark
-fi
+if [ "$1" == "--newsgroups" ]; then
+    mkdir -p .benchmark
+
+    # Download 20 newsgroups
 
-# Run benchmarks
-mvn clean test
-echo "Benchmarking Dictionary Annotator"
-mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="tokenmill" 2> /dev/null | grep "Benchmark"
-echo "Benchmarking Ruta MARKTABLE"
-mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="ruta" 2> /dev/null | grep "Benchmark"
-echo "Benchmarking DkPro dictionary-annotator"
-mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="dkpro" 2> /dev/null | grep "Benchmark"
+    if [ ! -f .benchmark/20news-bydate.tar.gz ]; then
+        wget http://qwone.com/~jason/20Newsgroups/20news-bydate.tar.gz -P .benchmark
+        tar zxf .benchmark/20news-bydate.tar.gz -C .benchmark
+    fi
+
+    # Run benchmarks
+    mvn clean test
+    echo "Benchmarking Dictionary Annotator"
+    mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="tokenmill" 2> /dev/null | grep "Benchmark"
+    echo "Benchmarking Ruta MARKTABLE"
+    mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="ruta" 2> /dev/null | grep "Benchmark"
+    echo "Benchmarking DkPro dictionary-annotator"
+    mvn exec:java -Dbenchmark.texts=".benchmark/20news-bydate-test" -Dbenchmark.engine="dkpro" 2> /dev/null | grep "Benchmark"
+    exit 0
+fi
 
+mvn -B -q -P benchmark test-compile exec:exec@jmh -Djmh.args="-prof gc -rf csv -rff target/benchmark/jmh-result.csv $*"
+mvn -B -q -P benchmark exec:java@compare
@@ -0,0 +1,109 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import lt.tokenmill.uima.dictionaryannotator.DictionaryAnnotator;
+import lt.tokenmill.uima.dictionaryannotator.WhitespaceDictionaryTokenizer;
+import lt.tokenmill.uima.dictionaryannotator.type.DictionaryEntry;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Processes a tokenized document with {@link DictionaryAnnotator}, including annotation creation.
+ * Document is tokenized anew before every invocation, outside of the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotatorBenchmark {
+
+    private static final int TOKENS = 2000;
+
+    @Param({"100000"})
+    public int entries;
+
+    @Param({"3"})
+    public int maxEntryLength;
+
+    @Param({"0.01", "0.2"})
+    public double hitRate;
+
+    @Param({"false"})
+    public boolean characterLevel;
+
+    private Path file;
+    private AnalysisEngine engine;
+    private JCas jcas;
+    private String text;
+    private int[] tokenBegins;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(Corpora.SEED, Corpora.VOCABULARY_SIZE);
+        List<String[]> dictionary = corpus.dictionary(this.entries, this.maxEntryLength);
+        this.file = Files.createTempFile("dictionary", ".csv");
+        SyntheticCorpus.write(dictionary, this.file);
+        this.engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, this.file.toUri().toString(),
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, WhitespaceDictionaryTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_CHARACTER_LEVEL, this.characterLevel,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+        this.jcas = this.engine.newJCas();
+        this.text = corpus.text(dictionary, TOKENS, this.hitRate);
+        String[] tokens = this.text.split(" ");
+        this.tokenBegins = new int[tokens.length + 1];
+        for (int i = 0; i < tokens.length; i++) {
+            this.tokenBegins[i + 1] = this.tokenBegins[i] + tokens[i].length() + 1;
+        }
+    }
+
+    /**
+     * CAS is reset rather than annotations removed from indexes, which would leave them in the growing CAS heap.
+     */
+    @Setup(Level.Invocation)
+    public void tokenize() {
+        this.jcas.reset();
+        this.jcas.setDocumentText(this.text);
+        for (int i = 0; i + 1 < this.tokenBegins.length; i++) {
+            new Token(this.jcas, this.tokenBegins[i], this.tokenBegins[i + 1] - 1).addToIndexes();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.engine.destroy();
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public JCas process() throws AnalysisEngineProcessException {
+        this.engine.process(this.jcas);
+        return this.jcas;
+    }
+}
@@ -0,0 +1,102 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares JMH results in CSV format with the stored baseline and exits with status 1 if any score regressed.
+ * All benchmarks measure average time, so higher is worse for times and for normalized allocation rates alike.
+ * Score is a regression when it exceeds the baseline by more than the threshold and by more than both errors.
+ * Allocation rates are compared per operation, only the primary score and the normalized allocation rate are read.
+ * <p>
+ * Usage: BaselineComparison baseline.csv result.csv [threshold percent, default 10]
+ */
+public class BaselineComparison {
+
+    private static final String PACKAGE = BaselineComparison.class.getPackage().getName();
+    private static final String ALLOCATION = ":gc.alloc.rate.norm";
+    // Allocation of a few bytes per operation is measurement noise of otherwise allocation free code
+    private static final double ALLOCATION_TOLERANCE = 16;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, double[]> baseline = read(args[0]);
+        Map<String, double[]> result = read(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.1;
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : result.entrySet()) {
+            double[] current = entry.getValue();
+            double[] expected = baseline.get(entry.getKey());
+            if (expected == null) {
+                System.out.printf("%-90s %15.3f %10s%n", entry.getKey(), current[0], "new");
+                continue;
+            }
+            double change = (current[0] - expected[0]) / expected[0];
+            boolean regressed = change > threshold && current[0] - current[1] > expected[0] + expected[1]
+                    && !(entry.getKey().contains(ALLOCATION) && current[0] - expected[0] < ALLOCATION_TOLERANCE);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %15.3f %+9.1f%% %s%n", entry.getKey(), current[0], 100 * change,
+                    regressed ? "REGRESSION" : "");
+        }
+        System.out.printf("%d scores compared with baseline, %d regressions%n", result.size(), regressions);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads primary scores and normalized allocation rates keyed by benchmark name and parameters.
+     *
+     * @return score and its error
+     */
+    private static Map<String, double[]> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        List<String> header = split(lines.get(0));
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> values = split(line);
+            String benchmark = values.get(0);
+            if (benchmark.contains(":") && !benchmark.endsWith(ALLOCATION)) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(benchmark.substring(PACKAGE.length() + 1));
+            for (int i = 7; i < values.size(); i++) {
+                if (values.get(i).isEmpty()) {
+                    continue;
+                }
+                key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(values.get(i));
+            }
+            key.append(" (").append(values.get(6)).append(')');
+            double error = Double.parseDouble(values.get(5));
+            double score = Double.parseDouble(values.get(4));
+            scores.put(key.toString(), new double[]{score, Double.isNaN(error) ? 0 : error});
+        }
+        return scores;
+    }
+
+    private static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -0,0 +1,13 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+/**
+ * Settings shared by all benchmarks, so the same parameters produce the same corpora in every benchmark.
+ */
+final class Corpora {
+
+    static final long SEED = 20170301L;
+    static final int VOCABULARY_SIZE = 20000;
+
+    private Corpora() {
+    }
+}
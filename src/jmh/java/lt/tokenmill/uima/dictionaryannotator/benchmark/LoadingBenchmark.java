@@ -0,0 +1,68 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import lt.tokenmill.uima.dictionaryannotator.DictionaryLoader;
+import lt.tokenmill.uima.dictionaryannotator.WhitespaceDictionaryTokenizer;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads CSV dictionary into a compacted tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    @Param({"3"})
+    public int maxEntryLength;
+
+    @Param({"false"})
+    public boolean caseSensitive;
+
+    private Path file;
+    private URL location;
+    private DictionaryLoader loader;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(Corpora.SEED, Corpora.VOCABULARY_SIZE);
+        this.file = Files.createTempFile("dictionary", ".csv");
+        SyntheticCorpus.write(corpus.dictionary(this.entries, this.maxEntryLength), this.file);
+        this.location = this.file.toUri().toURL();
+        this.loader = new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(),
+                this.caseSensitive, true, 0, ',', "UTF-8");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public DictionaryTree load() throws IOException {
+        return this.loader.load(this.location);
+    }
+}
@@ -0,0 +1,124 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates dictionaries and texts for benchmarks, so they run offline and measure the same input every time.
+ * Words are made of syllables, some of them capitalized or accented. Dictionary entries are phrases
+ * of one to maximum entry length words. Text is a sequence of words in which dictionary phrases are inserted
+ * with the given hit rate. Dictionary and other text words come from disjoint halves of the vocabulary,
+ * so text words between the inserted phrases never match.
+ */
+public class SyntheticCorpus {
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "mu", "ti", "vo", "ze", "po", "da", "gu", "be", "fi", "ho", "ja",
+            "r\u00e9", "s\u00e4", "\u010di", "\u017eu"};
+    private static final String[] CATEGORIES = {"person", "place", "organization", "product", "event", "other"};
+
+    private final long seed;
+    private final String[] vocabulary;
+
+    /**
+     * @param seed           seed of every random choice, corpora generated with the same seed are the same
+     * @param vocabularySize number of distinct words, half of them are used in dictionary entries
+     */
+    public SyntheticCorpus(long seed, int vocabularySize) {
+        this.seed = seed;
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < vocabularySize) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 1 + random.nextInt(3); s >= 0; s--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            words.add(word.toString());
+        }
+        // Words are distinct even if case and accents are ignored, as no syllable is a folded form of another one
+        this.vocabulary = words.toArray(new String[vocabularySize]);
+        for (int i = 0; i < vocabularySize; i++) {
+            if (random.nextInt(5) == 0) {
+                String word = this.vocabulary[i];
+                this.vocabulary[i] = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+        }
+    }
+
+    /**
+     * Dictionary records of phrase, category and priority columns.
+     *
+     * @param size           number of entries
+     * @param maxEntryLength maximum number of words in an entry phrase
+     */
+    public List<String[]> dictionary(int size, int maxEntryLength) {
+        Random random = new Random(this.seed + 1);
+        List<String[]> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            records.add(new String[]{
+                    phrase(random, 1 + random.nextInt(maxEntryLength)),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    String.valueOf(random.nextInt(10))});
+        }
+        return records;
+    }
+
+    /**
+     * Writes records as a comma separated dictionary file.
+     */
+    public static void write(List<String[]> records, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String[] record : records) {
+                writer.write(String.join(",", record));
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Text of space separated words.
+     *
+     * @param dictionary records whose phrases are inserted into text
+     * @param words      approximate number of words
+     * @param hitRate    probability of a dictionary phrase at each position of the text
+     */
+    public String text(List<String[]> dictionary, int words, double hitRate) {
+        Random random = new Random(this.seed + 2);
+        StringBuilder text = new StringBuilder(words * 8);
+        int count = 0;
+        while (count < words) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            if (random.nextDouble() < hitRate) {
+                String phrase = dictionary.get(random.nextInt(dictionary.size()))[0];
+                text.append(phrase);
+                count += phrase.split(" ").length;
+            } else {
+                int half = this.vocabulary.length / 2;
+                text.append(this.vocabulary[half + random.nextInt(half)]);
+                count++;
+            }
+        }
+        return text.toString();
+    }
+
+    private String phrase(Random random, int length) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                phrase.append(' ');
+            }
+            phrase.append(this.vocabulary[random.nextInt(this.vocabulary.length / 2)]);
+        }
+        return phrase.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import lt.tokenmill.uima.dictionaryannotator.TextNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizes text tokens, score is time per token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextNormalizerBenchmark {
+
+    private static final int TOKENS = 4096;
+
+    @Param({"case-insensitive", "accent-insensitive", "insensitive"})
+    public String mode;
+
+    private String[] tokens;
+    private String text;
+    private int[] offsets;
+    private TextNormalizer normalizer;
+    private final StringBuilder target = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(Corpora.SEED, Corpora.VOCABULARY_SIZE);
+        List<String[]> dictionary = corpus.dictionary(1000, 3);
+        this.text = corpus.text(dictionary, TOKENS, 0.0);
+        this.tokens = this.text.split(" ");
+        this.offsets = new int[TOKENS + 1];
+        for (int i = 0, offset = 0; i < TOKENS; i++) {
+            this.offsets[i] = offset;
+            offset += this.tokens[i].length() + 1;
+        }
+        this.offsets[TOKENS] = this.text.length() + 1;
+        this.normalizer = new TextNormalizer("accent-insensitive".equals(this.mode),
+                "case-insensitive".equals(this.mode));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void normalize(Blackhole blackhole) {
+        for (int i = 0; i < TOKENS; i++) {
+            blackhole.consume(this.normalizer.normalize(this.tokens[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public int normalizeInto() {
+        int length = 0;
+        for (int i = 0; i < TOKENS; i++) {
+            this.normalizer.normalize(this.text, this.offsets[i], this.offsets[i + 1] - 1, this.target);
+            length += this.target.length();
+        }
+        return length;
+    }
+}
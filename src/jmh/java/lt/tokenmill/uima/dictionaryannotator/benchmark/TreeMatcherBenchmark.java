@@ -0,0 +1,109 @@
+package lt.tokenmill.uima.dictionaryannotator.benchmark;
+
+import lt.tokenmill.uima.dictionaryannotator.DictionaryLoader;
+import lt.tokenmill.uima.dictionaryannotator.WhitespaceDictionaryTokenizer;
+import lt.tokenmill.uima.dictionaryannotator.tree.AhoCorasickAutomaton;
+import lt.tokenmill.uima.dictionaryannotator.tree.AhoCorasickMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import lt.tokenmill.uima.dictionaryannotator.tree.FuzzyIndex;
+import lt.tokenmill.uima.dictionaryannotator.tree.FuzzyTreeMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.MatchListener;
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatch;
+import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches pre-normalized text tokens against the dictionary, score is time per token.
+ * "fuzzy" matches every token of at least 4 characters within Levenshtein distance 1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeMatcherBenchmark {
+
+    private static final int TOKENS = 10000;
+
+    @Param({"tree", "frozen", "aho-corasick", "fuzzy"})
+    public String matcher;
+
+    @Param({"100000"})
+    public int entries;
+
+    @Param({"3"})
+    public int maxEntryLength;
+
+    @Param({"0.01", "0.2"})
+    public double hitRate;
+
+    private String[] tokens;
+    private TokenMatcher tokenMatcher;
+    private final Counter counter = new Counter();
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(Corpora.SEED, Corpora.VOCABULARY_SIZE);
+        List<String[]> dictionary = corpus.dictionary(this.entries, this.maxEntryLength);
+        Path file = Files.createTempFile("dictionary", ".csv");
+        try {
+            SyntheticCorpus.write(dictionary, file);
+            DictionaryLoader loader = new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(),
+                    true, true, 0, ',', "UTF-8");
+            DictionaryTree tree = loader.load(file.toUri().toURL());
+            if ("aho-corasick".equals(this.matcher)) {
+                this.tokenMatcher = new AhoCorasickMatcher(new AhoCorasickAutomaton(tree));
+            } else if ("fuzzy".equals(this.matcher)) {
+                this.tokenMatcher = new FuzzyTreeMatcher(new FuzzyIndex(tree), 1, 4);
+            } else if ("frozen".equals(this.matcher)) {
+                tree.freeze();
+                this.tokenMatcher = new TreeMatcher(tree);
+            } else {
+                this.tokenMatcher = new TreeMatcher(tree);
+            }
+        } finally {
+            Files.delete(file);
+        }
+        this.tokens = corpus.text(dictionary, TOKENS, this.hitRate).split(" ");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public int proceed() {
+        this.counter.matches = 0;
+        this.tokenMatcher.reset();
+        for (int i = 0; i < TOKENS; i++) {
+            this.tokenMatcher.proceed(i, i + 1, this.tokens[i], this.counter);
+        }
+        return this.counter.matches;
+    }
+
+    private static final class Counter implements MatchListener {
+
+        private int matches;
+
+        @Override
+        public void onMatch(TreeMatch match) {
+            this.matches += match.getEntryCount();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.type.DictionaryEntry;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Annotates a directory of texts with several replicas of a pipeline. One thread reads the texts into a bounded
+ * queue, every replica takes texts from it on a thread of its own and processes them in a single reused CAS,
+ * and results are passed through a bounded queue to the writer on the calling thread, so memory is bounded
+ * by the queue capacities whatever the corpus size. Replicas of {@link DictionaryAnnotator} with the same
+ * parameters share one loaded dictionary (see {@link SharedDictionaries}), which makes the runner
+ * a way to find contention in the shared structures too: compare {@link Report}s of growing replica counts.
+ * <p>
+ * Usage: {@code CorpusRunner <texts directory> <dictionary.csv> <replica counts, e.g. 1,2,4> [parameter=value ...]}
+ * matches the dictionary in texts at character level, once for every replica count, and prints a report of each
+ * run. Parameters are {@link DictionaryAnnotator} parameter names, e.g. caseSensitive=false or matcher=ahoCorasick.
+ */
+public class CorpusRunner {
+
+    private static final Document END = new Document(null, null);
+    private static final Object END_OF_RESULTS = new Object();
+
+    private final AnalysisEngineDescription description;
+    private final int replicas;
+    private final int queueCapacity;
+    private final Charset charset;
+    private final DocumentInitializer initializer;
+
+    private CorpusRunner(Builder builder) {
+        this.description = builder.description;
+        this.replicas = builder.replicas;
+        this.queueCapacity = builder.queueCapacity;
+        this.charset = builder.charset;
+        this.initializer = builder.initializer;
+    }
+
+    /**
+     * Processes every regular file under the directory, in path order.
+     *
+     * @param extractor reads the result of a document from its CAS, on the replica thread. Null results are not written
+     * @param writer    receives results on the calling thread, in the order they are completed
+     */
+    public <R> Report run(Path directory, ResultExtractor<R> extractor, ResultWriter<R> writer) throws Exception {
+        List<AnalysisEngine> engines = new ArrayList<>();
+        ExecutorService threads = Executors.newFixedThreadPool(replicas + 1);
+        try {
+            // Engines are created before timing, the first one loads the shared dictionary
+            for (int i = 0; i < replicas; i++) {
+                engines.add(AnalysisEngineFactory.createEngine(description));
+            }
+            BlockingQueue<Document> documents = new ArrayBlockingQueue<>(queueCapacity);
+            BlockingQueue<Object> results = new ArrayBlockingQueue<>(queueCapacity);
+            long start = System.nanoTime();
+            List<Future<?>> tasks = new ArrayList<>();
+            tasks.add(threads.submit(() -> read(directory, documents)));
+            List<Future<Replica>> workers = new ArrayList<>();
+            for (AnalysisEngine engine : engines) {
+                Future<Replica> worker = threads.submit(() -> process(engine, documents, results, extractor));
+                workers.add(worker);
+                tasks.add(worker);
+            }
+            for (int finished = 0; finished < replicas; ) {
+                Object result = results.poll(100, TimeUnit.MILLISECONDS);
+                if (result == END_OF_RESULTS) {
+                    finished++;
+                } else if (result != null) {
+                    @SuppressWarnings("unchecked")
+                    R typed = (R) result;
+                    writer.write(typed);
+                } else {
+                    checkFailures(tasks);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            checkFailures(tasks);
+            List<Replica> done = new ArrayList<>();
+            for (Future<Replica> worker : workers) {
+                done.add(worker.get());
+            }
+            return new Report(replicas, elapsed, done);
+        } finally {
+            threads.shutdownNow();
+            for (AnalysisEngine engine : engines) {
+                engine.destroy();
+            }
+        }
+    }
+
+    private Void read(Path directory, BlockingQueue<Document> documents) throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            documents.put(new Document(directory.relativize(file).toString(),
+                    new String(Files.readAllBytes(file), charset)));
+        }
+        for (int i = 0; i < replicas; i++) {
+            documents.put(END);
+        }
+        return null;
+    }
+
+    private <R> Replica process(AnalysisEngine engine, BlockingQueue<Document> documents, BlockingQueue<Object> results,
+                                ResultExtractor<R> extractor) throws Exception {
+        Replica replica = new Replica();
+        JCas jcas = engine.newJCas();
+        for (Document document = documents.take(); document != END; document = documents.take()) {
+            jcas.setDocumentText(document.text);
+            initializer.initialize(jcas);
+            long start = System.nanoTime();
+            engine.process(jcas);
+            replica.add(System.nanoTime() - start, document.text.length());
+            R result = extractor.extract(document.name, jcas);
+            jcas.reset();
+            if (result != null) {
+                results.put(result);
+            }
+        }
+        results.put(END_OF_RESULTS);
+        return replica;
+    }
+
+    private static void checkFailures(List<Future<?>> tasks) throws Exception {
+        for (Future<?> task : tasks) {
+            if (task.isDone()) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: CorpusRunner <texts directory> <dictionary.csv> <replica counts, e.g. 1,2,4> [parameter=value ...]");
+            System.exit(1);
+        }
+        List<Object> parameters = new ArrayList<>(Arrays.asList(
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, new File(args[1]).toURI().toURL().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true));
+        for (int i = 3; i < args.length; i++) {
+            String[] parts = args[i].split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            parameters.add(parts[0]);
+            parameters.add(value.matches("true|false") ? (Object) Boolean.valueOf(value)
+                    : value.matches("-?\\d+") ? (Object) Integer.valueOf(value) : value);
+        }
+        AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(
+                DictionaryAnnotator.class, parameters.toArray());
+        for (String count : args[2].split(",")) {
+            CorpusRunner runner = new Builder(description).replicas(Integer.parseInt(count.trim())).build();
+            long[] annotations = new long[1];
+            Report report = runner.run(Paths.get(args[0]),
+                    (document, jcas) -> JCasUtil.select(jcas, DictionaryEntry.class).size(),
+                    found -> annotations[0] += found);
+            System.out.println(report + String.format(", %d annotations", annotations[0]));
+        }
+    }
+
+    /**
+     * Reads the result of a processed document before its CAS is reset.
+     */
+    public interface ResultExtractor<R> {
+
+        R extract(String document, JCas jcas) throws Exception;
+    }
+
+    public interface ResultWriter<R> {
+
+        void write(R result) throws Exception;
+    }
+
+    /**
+     * Prepares a CAS with the document text set before it is processed, e.g. adds annotations upstream
+     * annotators expect.
+     */
+    public interface DocumentInitializer {
+
+        void initialize(JCas jcas) throws Exception;
+    }
+
+    public static final class Builder {
+
+        private final AnalysisEngineDescription description;
+        private int replicas = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = 256;
+        private Charset charset = StandardCharsets.UTF_8;
+        private DocumentInitializer initializer = jcas -> {
+        };
+
+        /**
+         * @param description pipeline every replica is created from
+         */
+        public Builder(AnalysisEngineDescription description) {
+            this.description = description;
+        }
+
+        /**
+         * Number of pipeline replicas and threads processing texts. Default value - number of available processors
+         */
+        public Builder replicas(int replicas) {
+            if (replicas < 1) {
+                throw new IllegalArgumentException("At least one replica is needed");
+            }
+            this.replicas = replicas;
+            return this;
+        }
+
+        /**
+         * Capacity of the text and of the result queues. Default value - 256
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("Queue capacity must be positive");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Encoding of the texts. Default value - UTF-8
+         */
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        public Builder initializer(DocumentInitializer initializer) {
+            this.initializer = initializer;
+            return this;
+        }
+
+        public CorpusRunner build() {
+            return new CorpusRunner(this);
+        }
+    }
+
+    /**
+     * Throughput and latency of a run. Latency is the time a replica spends processing a document,
+     * without waiting for texts or for the writer.
+     */
+    public static final class Report {
+
+        private final int replicas;
+        private final long elapsedNanos;
+        private final long documents;
+        private final long characters;
+        private final long[] latencies;
+
+        private Report(int replicas, long elapsedNanos, List<Replica> done) {
+            this.replicas = replicas;
+            this.elapsedNanos = elapsedNanos;
+            long documents = 0;
+            long characters = 0;
+            for (Replica replica : done) {
+                documents += replica.size;
+                characters += replica.characters;
+            }
+            this.documents = documents;
+            this.characters = characters;
+            this.latencies = new long[(int) documents];
+            int offset = 0;
+            for (Replica replica : done) {
+                System.arraycopy(replica.latencies, 0, latencies, offset, replica.size);
+                offset += replica.size;
+            }
+            Arrays.sort(latencies);
+        }
+
+        public int getReplicas() {
+            return replicas;
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getCharacters() {
+            return characters;
+        }
+
+        /**
+         * @return wall time from the first text read until the last result written
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getDocumentsPerSecond() {
+            return elapsedNanos > 0 ? 1e9 * documents / elapsedNanos : 0;
+        }
+
+        public double getCharactersPerSecond() {
+            return elapsedNanos > 0 ? 1e9 * characters / elapsedNanos : 0;
+        }
+
+        /**
+         * @param percentile 0 - 100
+         * @return latency of a document which took no less than the given share of documents, 0 if there were none
+         */
+        public long getLatencyNanos(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.min(latencies.length - 1, Math.max(0, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d replicas: %d texts in %.2f s, %.1f texts/sec, %.0f chars/sec, "
+                            + "latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    replicas, documents, elapsedNanos / 1e9, getDocumentsPerSecond(), getCharactersPerSecond(),
+                    getLatencyNanos(50) / 1e6, getLatencyNanos(90) / 1e6, getLatencyNanos(99) / 1e6,
+                    getLatencyNanos(100) / 1e6);
+        }
+    }
+
+    private static final class Document {
+
+        private final String name;
+        private final String text;
+
+        private Document(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Latencies of the documents processed by one replica.
+     */
+    private static final class Replica {
+
+        private long[] latencies = new long[256];
+        private int size;
+        private long characters;
+
+        private void add(long latency, int length) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+            characters += length;
+        }
+    }
+}
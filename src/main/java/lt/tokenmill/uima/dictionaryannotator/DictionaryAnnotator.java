@@ -1,18 +1,20 @@
 package lt.tokenmill.uima.dictionaryannotator;
 
-import com.opencsv.CSVReader;
 import de.tudarmstadt.ukp.dkpro.core.api.resources.ResourceUtils;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
-import lt.tokenmill.uima.dictionaryannotator.tree.EntryMetadata;
-import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatch;
-import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatcher;
-import org.apache.commons.io.IOUtils;
+import lt.tokenmill.uima.dictionaryannotator.tree.BinaryDictionary;
+import lt.tokenmill.uima.dictionaryannotator.tree.OverlapResolver;
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenBoundary;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Type;
-import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.LowLevelCAS;
+import org.apache.uima.cas.impl.LowLevelIndexRepository;
+import org.apache.uima.cas.impl.LowLevelTypeSystem;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.descriptor.TypeCapability;
@@ -20,15 +22,25 @@ import org.apache.uima.fit.util.CasUtil;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @TypeCapability(
@@ -36,6 +48,8 @@ import java.util.stream.Collectors;
                 "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token"})
 public class DictionaryAnnotator extends JCasAnnotator_ImplBase {
 
+    private static final AtomicInteger METRICS_IDS = new AtomicInteger();
+
     /**
      * Tokenizer for dictionary entries. Make sure it is the same as for text.
      */
@@ -49,23 +63,40 @@ public class DictionaryAnnotator extends JCasAnnotator_ImplBase {
     public static final String PARAM_FEATURE_MAPPING = "featureMapping";
     @ConfigurationParameter(name = PARAM_FEATURE_MAPPING, defaultValue = {}, mandatory = false)
     private String[] featureMapping;
-    private Map<Integer, String> featureIndexes;
 
     /**
      * The annotation to create on matching phases.
      */
     public static final String PARAM_ANNOTATION_TYPE = "annotationType";
-    @ConfigurationParameter(name = PARAM_ANNOTATION_TYPE)
+    @ConfigurationParameter(name = PARAM_ANNOTATION_TYPE, mandatory = false)
     private String annotationType;
 
 
     /**
-     * The file must contain one entry per line.
+     * The file must contain one entry per line. Not needed if all dictionaries are given by {@link #PARAM_DICTIONARIES}.
+     * May be a list of locations separated by ',', a directory or a glob pattern of local files
+     * (e.g. "/data/gazetteer/*.csv.gz"), whose files are loaded as shards of one dictionary.
+     * Gzip compressed files are decompressed.
      */
     public static final String PARAM_DICTIONARY_LOCATION = "dictionaryLocation";
-    @ConfigurationParameter(name = PARAM_DICTIONARY_LOCATION)
+    @ConfigurationParameter(name = PARAM_DICTIONARY_LOCATION, mandatory = false)
     private String dictionaryFile;
 
+    /**
+     * Further dictionaries matched in the same pass, each with its own annotation type and feature mapping.
+     * Every value is a list of parameter=value pairs separated by ';', e.g.
+     * {@code "dictionaryLocation=classpath:people.csv;annotationType=my.Person;featureMapping=1 -> id, 2 -> role"}.
+     * Parameters are dictionaryLocation (mandatory), annotationType, featureMapping (mappings separated by ','),
+     * tokenizerClass, caseSensitive, accentSensitive, phraseColumn, csvSeparator, dictionaryEncoding and costFeature,
+     * missing ones take the values of this annotator. Use "\;" for a ';' in a value.
+     * Dictionaries with the same case and accent sensitivity are combined into one tree, so every token is
+     * normalized and looked up once per distinct normalization. Overlap policy applies to matches of all
+     * dictionaries together. Default value - none
+     */
+    public static final String PARAM_DICTIONARIES = "dictionaries";
+    @ConfigurationParameter(name = PARAM_DICTIONARIES, defaultValue = {}, mandatory = false)
+    private String[] dictionaries;
+
     /**
      * Encoding of the dictionary file. Default value - UTF-8
      */
@@ -101,103 +132,834 @@ public class DictionaryAnnotator extends JCasAnnotator_ImplBase {
     @ConfigurationParameter(name = PARAM_CSV_SEPARATOR, defaultValue = ",")
     private String csvSeparator;
 
-    private DictionaryTree tree;
-    private DictionaryTokenizer tokenizer;
-    private TextNormalizer textNormalizer;
+    /**
+     * Matching engine. "tree" follows every open partial match on each token, "aho-corasick" compiles
+     * the dictionary into a token level Aho-Corasick automaton. Both produce the same annotations. Default value - tree
+     */
+    public static final String PARAM_MATCHER = "matcher";
+    public static final String MATCHER_TREE = "tree";
+    public static final String MATCHER_AHO_CORASICK = "aho-corasick";
+    @ConfigurationParameter(name = PARAM_MATCHER, defaultValue = MATCHER_TREE)
+    private String matcher;
+
+    /**
+     * Largest Levenshtein distance between a text token and a dictionary token it matches, for OCR and typo noise.
+     * Text tokens are run as Levenshtein automata over the dictionary vocabulary, so misspelled variants need not be
+     * in the dictionary. Supported by CSV dictionaries with "tree" matcher on Token annotations. Default value - 0 (exact)
+     */
+    public static final String PARAM_FUZZY_DISTANCE = "fuzzyDistance";
+    @ConfigurationParameter(name = PARAM_FUZZY_DISTANCE, defaultValue = "0")
+    private Integer fuzzyDistance;
+
+    /**
+     * Text tokens shorter than this are matched exactly even when {@link #PARAM_FUZZY_DISTANCE} is set. Default value - 4
+     */
+    public static final String PARAM_FUZZY_MIN_TOKEN_LENGTH = "fuzzyMinTokenLength";
+    @ConfigurationParameter(name = PARAM_FUZZY_MIN_TOKEN_LENGTH, defaultValue = "4")
+    private Integer fuzzyMinTokenLength;
+
+    /**
+     * Integer feature set to the number of character edits of the match, 0 for exact matches. Default value - none
+     */
+    public static final String PARAM_COST_FEATURE = "costFeature";
+    @ConfigurationParameter(name = PARAM_COST_FEATURE, mandatory = false)
+    private String costFeature;
+
+    /**
+     * Format of the dictionary file. "csv" or "binary" for a file compiled by {@link DictionaryCompiler}.
+     * Binary dictionary is memory mapped, so it must be a local file. Default value - csv
+     */
+    public static final String PARAM_DICTIONARY_FORMAT = "dictionaryFormat";
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_BINARY = "binary";
+    @ConfigurationParameter(name = PARAM_DICTIONARY_FORMAT, defaultValue = FORMAT_CSV)
+    private String dictionaryFormat;
+
+    /**
+     * Match dictionary entries directly in document text instead of upstream Token annotations.
+     * Text is normalized character by character and tokens are delimited by the dictionary tokenizer,
+     * which must implement {@link TokenBoundary} (e.g. {@link WhitespaceDictionaryTokenizer}). Default value - false
+     */
+    public static final String PARAM_CHARACTER_LEVEL = "characterLevel";
+    @ConfigurationParameter(name = PARAM_CHARACTER_LEVEL, defaultValue = "false")
+    private Boolean characterLevel;
+
+    /**
+     * Freeze loaded CSV dictionaries into minimized graphs, where identical subtrees such as common phrase endings
+     * are stored once. Frozen dictionaries take less memory, but are matched only by the "tree" matcher
+     * on Token annotations and do not support fuzzy matching or runtime updates. Default value - false
+     */
+    public static final String PARAM_FREEZE_DICTIONARY = "freezeDictionary";
+    @ConfigurationParameter(name = PARAM_FREEZE_DICTIONARY, defaultValue = "false")
+    private Boolean freezeDictionary;
+
+    /**
+     * How often, in milliseconds, to check the dictionary file for modifications and reload it in the background.
+     * Documents already being processed finish with the previous version. Directories and glob patterns are resolved
+     * again on every check, so added and removed shards are picked up. Only CSV dictionaries in local files
+     * can be watched, see also {@link SharedDictionaries#reload(URL)}. Default value - 0 (do not watch)
+     */
+    public static final String PARAM_DICTIONARY_RELOAD_INTERVAL = "dictionaryReloadInterval";
+    @ConfigurationParameter(name = PARAM_DICTIONARY_RELOAD_INTERVAL, defaultValue = "0")
+    private Integer dictionaryReloadInterval;
+
+    /**
+     * Which of the overlapping matches to annotate. "all", "longest" (drop matches contained in a longer one),
+     * "leftmost-longest" (non-overlapping, picked from left to right) or "non-overlapping" (picked by priority
+     * from {@link #PARAM_PRIORITY_COLUMN}, then by length). Overlaps are resolved before annotations are created.
+     * Default value - all
+     */
+    public static final String PARAM_OVERLAP_POLICY = "overlapPolicy";
+    public static final String OVERLAP_ALL = "all";
+    public static final String OVERLAP_LONGEST = "longest";
+    public static final String OVERLAP_LEFTMOST_LONGEST = "leftmost-longest";
+    public static final String OVERLAP_NON_OVERLAPPING = "non-overlapping";
+    @ConfigurationParameter(name = PARAM_OVERLAP_POLICY, defaultValue = OVERLAP_ALL)
+    private String overlapPolicy;
+
+    /**
+     * Which column in CSV file holds numeric entry priority for "non-overlapping" policy, higher wins. Default value - -1 (none)
+     */
+    public static final String PARAM_PRIORITY_COLUMN = "priorityColumn";
+    @ConfigurationParameter(name = PARAM_PRIORITY_COLUMN, defaultValue = "-1")
+    private Integer priorityColumn;
+
+    /**
+     * Log estimated heap usage of the loaded dictionary. Default value - false
+     */
+    public static final String PARAM_REPORT_MEMORY = "reportMemory";
+    @ConfigurationParameter(name = PARAM_REPORT_MEMORY, defaultValue = "false")
+    private Boolean reportMemory;
+
+    /**
+     * Number of threads parsing, tokenizing and normalizing CSV dictionary while it is loaded.
+     * The loaded dictionary does not depend on it. Default value - 0 (number of available processors)
+     */
+    public static final String PARAM_LOADING_THREADS = "loadingThreads";
+    @ConfigurationParameter(name = PARAM_LOADING_THREADS, defaultValue = "0")
+    private Integer loadingThreads;
+
+    /**
+     * Register {@link DictionaryAnnotatorMetricsMXBean} of this annotator in the platform MBean server.
+     * Metrics are collected once per document. Default value - false
+     */
+    public static final String PARAM_METRICS = "metrics";
+    @ConfigurationParameter(name = PARAM_METRICS, defaultValue = "false")
+    private Boolean metricsEnabled;
+
+    /**
+     * Number of threads matching chunks of a large document in parallel, 0 for the number of available processors.
+     * Annotations are still added to the CAS by the calling thread. Not supported by character level matching.
+     * Default value - 1 (match in the calling thread)
+     */
+    public static final String PARAM_MATCHING_THREADS = "matchingThreads";
+    @ConfigurationParameter(name = PARAM_MATCHING_THREADS, defaultValue = "1")
+    private Integer matchingThreads;
+
+    /**
+     * How a large document is split for parallel matching. "window" - windows of tokens. "sentence" - runs of whole
+     * Sentence annotations. Either way chunks overlap by the longest dictionary entry, so annotations are always
+     * the same as matched by a single thread. Default value - window
+     */
+    public static final String PARAM_PARALLEL_SPLIT = "parallelSplit";
+    public static final String SPLIT_WINDOW = "window";
+    public static final String SPLIT_SENTENCE = "sentence";
+    @ConfigurationParameter(name = PARAM_PARALLEL_SPLIT, defaultValue = SPLIT_WINDOW)
+    private String parallelSplit;
+
+    /**
+     * Documents with fewer tokens are matched by the calling thread even if {@link #PARAM_MATCHING_THREADS}
+     * is set. Default value - 100000
+     */
+    public static final String PARAM_PARALLEL_MIN_TOKENS = "parallelMinTokens";
+    @ConfigurationParameter(name = PARAM_PARALLEL_MIN_TOKENS, defaultValue = "100000")
+    private Integer parallelMinTokens;
+
+    /**
+     * Number of recently matched documents or sentences whose matches are kept and added again when the same
+     * tokens come up, without matching them. Least recently used ones are evicted and the cache is emptied whenever
+     * the dictionary changes. Not supported by character level matching. Default value - 0 (no cache)
+     */
+    public static final String PARAM_RESULT_CACHE_SIZE = "resultCacheSize";
+    @ConfigurationParameter(name = PARAM_RESULT_CACHE_SIZE, defaultValue = "0")
+    private Integer resultCacheSize;
+
+    /**
+     * What the result cache keeps matches of. "document" - whole documents, annotations are the same as without
+     * the cache. "sentence" - token runs starting at every Sentence annotation, which repeated paragraphs share across
+     * documents. Each sentence is then matched on its own even if it is not cached, so annotations change: matches
+     * crossing sentence boundaries are lost and overlaps are resolved within sentences. Default value - document
+     */
+    public static final String PARAM_RESULT_CACHE_SCOPE = "resultCacheScope";
+    public static final String CACHE_DOCUMENT = "document";
+    public static final String CACHE_SENTENCE = "sentence";
+    @ConfigurationParameter(name = PARAM_RESULT_CACHE_SCOPE, defaultValue = CACHE_DOCUMENT)
+    private String resultCacheScope;
+
+    /**
+     * What an annotation is created for. "entry" - every matched entry, so a span matching several entries is
+     * annotated several times. "span" - every matched span of a dictionary once, mapped features of primitive array
+     * types (e.g. uima.cas.StringArray) get the values of all entries of the span in match order, other features
+     * the value of the first entry and the cost feature the lowest cost. Default value - entry
+     */
+    public static final String PARAM_OUTPUT_MODE = "outputMode";
+    public static final String OUTPUT_ENTRY = "entry";
+    public static final String OUTPUT_SPAN = "span";
+    @ConfigurationParameter(name = PARAM_OUTPUT_MODE, defaultValue = OUTPUT_ENTRY)
+    private String outputMode;
+
+    // Parameters which may be set for every dictionary of PARAM_DICTIONARIES
+    private static final Set<String> DICTIONARY_SETTINGS = new HashSet<>(Arrays.asList(
+            PARAM_DICTIONARY_LOCATION, PARAM_ANNOTATION_TYPE, PARAM_FEATURE_MAPPING, PARAM_TOKENIZER_CLASS,
+            PARAM_DICTIONARY_CASE_SENSITIVE, PARAM_DICTIONARY_ACCENT_SENSITIVE, PARAM_PHRASE_COLUMN,
+            PARAM_CSV_SEPARATOR, PARAM_DICTIONARY_ENCODING, PARAM_COST_FEATURE));
+
+    private Target[] targets;
+    private Group[] groups;
+    private OverlapResolver.Policy policy;
+    private DictionaryMatcher dictionaryMatcher;
+    // Matchers of the calling thread, replaced together with the matcher so the previous dictionaries are released
+    private DictionaryMatcher.State matchingState;
+    private final Matches matches = new Matches();
+    private DictionaryAnnotatorMetrics metrics;
+    private ObjectName metricsName;
+    private ForkJoinPool matchingPool;
+    private ResultCache resultCache;
+    private SpanGroups spanGroups;
+    private int[] tokenBegins = new int[0];
+    private int[] tokenEnds = new int[0];
+    private int[] unitBegins = new int[0];
+    private int[] unitEnds = new int[0];
+
+    private TypeSystem typeSystem;
+    private int beginCode;
+    private int endCode;
+    private int sofaCode;
 
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException {
         super.initialize(context);
-        this.tree = new DictionaryTree();
-        this.tokenizer = loadTokenizer();
-        this.textNormalizer = new TextNormalizer(this.caseSensitive, this.accentSensitive);
-        this.featureIndexes = parseFeatureMapping();
-        InputStream is = null;
+        if (!MATCHER_TREE.equals(this.matcher) && !MATCHER_AHO_CORASICK.equals(this.matcher)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Unknown matcher '" + this.matcher + "'"));
+        }
+        if (!FORMAT_CSV.equals(this.dictionaryFormat) && !FORMAT_BINARY.equals(this.dictionaryFormat)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Unknown dictionary format '" + this.dictionaryFormat + "'"));
+        }
+        if (FORMAT_BINARY.equals(this.dictionaryFormat) && !MATCHER_TREE.equals(this.matcher)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Binary dictionary supports only '" + MATCHER_TREE + "' matcher"));
+        }
+        if (this.characterLevel && (FORMAT_BINARY.equals(this.dictionaryFormat) || !MATCHER_TREE.equals(this.matcher))) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Character level matching supports only CSV dictionaries and '" + MATCHER_TREE + "' matcher"));
+        }
+        if (this.fuzzyDistance > 0 && (FORMAT_BINARY.equals(this.dictionaryFormat) || !MATCHER_TREE.equals(this.matcher)
+                || this.characterLevel)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Fuzzy matching supports only CSV dictionaries and '" + MATCHER_TREE
+                            + "' matcher on Token annotations"));
+        }
+        if (this.freezeDictionary && (FORMAT_BINARY.equals(this.dictionaryFormat) || !MATCHER_TREE.equals(this.matcher)
+                || this.characterLevel || this.fuzzyDistance > 0)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Frozen dictionaries support only CSV dictionaries and '" + MATCHER_TREE
+                            + "' matcher on Token annotations without fuzzy matching"));
+        }
+        if (!SPLIT_WINDOW.equals(this.parallelSplit) && !SPLIT_SENTENCE.equals(this.parallelSplit)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Unknown parallel split '" + this.parallelSplit + "'"));
+        }
+        if (!CACHE_DOCUMENT.equals(this.resultCacheScope) && !CACHE_SENTENCE.equals(this.resultCacheScope)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Unknown result cache scope '" + this.resultCacheScope + "'"));
+        }
+        if (!OUTPUT_ENTRY.equals(this.outputMode) && !OUTPUT_SPAN.equals(this.outputMode)) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Unknown output mode '" + this.outputMode + "'"));
+        }
+        this.spanGroups = OUTPUT_SPAN.equals(this.outputMode) ? new SpanGroups() : null;
+        if (this.resultCacheSize > 0 && this.characterLevel) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Character level matching does not support result cache"));
+        }
+        int threads = this.matchingThreads > 0 ? this.matchingThreads : Runtime.getRuntime().availableProcessors();
+        if (this.characterLevel && this.matchingThreads != 1) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("Character level matching does not support parallel matching"));
+        }
+        this.policy = parseOverlapPolicy();
         try {
-            URL phraseFileUrl = ResourceUtils.resolveLocation(this.dictionaryFile, context);
-            is = phraseFileUrl.openStream();
-            char separator = csvSeparator.charAt(0);
-            CSVReader csvReader = new CSVReader(new InputStreamReader(is, this.dictionaryEncoding), separator);
-            int count = 0;
-            for (String[] record : csvReader) {
-                String entry = selectEntry(record);
-                EntryMetadata metadata = createMetadata(record);
-                List<String> tokens = this.tokenizer.tokenize(entry)
-                        .stream()
-                        .map(textNormalizer::normalize)
-                        .collect(Collectors.toList());
-                this.tree.addEntry(tokens, metadata);
-                count++;
-            }
-            getLogger().info(String.format("Loaded dictionary from '%s' with %d entries", phraseFileUrl, count));
+            createGroups(context);
+            for (Group group : this.groups) {
+                openDictionary(group);
+            }
+            if (this.metricsEnabled) {
+                String locations = Arrays.stream(this.groups)
+                        .flatMap(group -> group.locations.stream())
+                        .map(URL::toString)
+                        .collect(Collectors.joining(", "));
+                this.metrics = new DictionaryAnnotatorMetrics(locations);
+                this.metricsName = new ObjectName(String.format("%s:type=DictionaryAnnotator,dictionary=%s,id=%d",
+                        getClass().getPackage().getName(), ObjectName.quote(locations),
+                        METRICS_IDS.incrementAndGet()));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, this.metricsName);
+            }
+            if (threads > 1) {
+                this.matchingPool = new ForkJoinPool(threads);
+            }
+            if (this.resultCacheSize > 0) {
+                this.resultCache = new ResultCache(this.resultCacheSize);
+                if (this.metrics != null) {
+                    this.metrics.setResultCache(this.resultCache);
+                }
+            }
+            createMatchers();
         } catch (Exception e) {
+            release();
             throw new ResourceInitializationException(e);
-        } finally {
-            IOUtils.closeQuietly(is);
         }
     }
 
+    /**
+     * Parses dictionary settings and groups dictionaries which can be matched as one combined tree.
+     */
+    private void createGroups(UimaContext context) throws Exception {
+        List<Map<String, String>> settings = new ArrayList<>();
+        if (this.dictionaryFile != null) {
+            settings.add(Collections.singletonMap(PARAM_DICTIONARY_LOCATION, this.dictionaryFile));
+        }
+        for (String dictionary : this.dictionaries) {
+            settings.add(parseDictionarySettings(dictionary));
+        }
+        if (settings.isEmpty()) {
+            throw new IllegalArgumentException("No dictionary given, set '" + PARAM_DICTIONARY_LOCATION
+                    + "' or '" + PARAM_DICTIONARIES + "'");
+        }
+        if (FORMAT_BINARY.equals(this.dictionaryFormat) && settings.size() > 1) {
+            throw new IllegalArgumentException("Binary dictionary can not be combined with other dictionaries");
+        }
+        this.targets = new Target[settings.size()];
+        Map<String, Group> groups = new LinkedHashMap<>();
+        for (int i = 0; i < settings.size(); i++) {
+            Map<String, String> dictionary = settings.get(i);
+            String location = dictionary.get(PARAM_DICTIONARY_LOCATION);
+            String type = dictionary.getOrDefault(PARAM_ANNOTATION_TYPE, this.annotationType);
+            if (type == null) {
+                throw new IllegalArgumentException("Dictionary '" + location + "' has no '" + PARAM_ANNOTATION_TYPE + "'");
+            }
+            Map<Integer, String> featureIndexes = parseFeatureMapping(dictionary.containsKey(PARAM_FEATURE_MAPPING) ?
+                    dictionary.get(PARAM_FEATURE_MAPPING).split("\\s*,\\s*") : this.featureMapping);
+            this.targets[i] = new Target(type, featureIndexes, dictionary.getOrDefault(PARAM_COST_FEATURE, this.costFeature));
+            String tokenizer = dictionary.getOrDefault(PARAM_TOKENIZER_CLASS, this.tokenizerClass);
+            DictionaryLoader loader = new DictionaryLoader(tokenizer,
+                    Boolean.parseBoolean(dictionary.getOrDefault(PARAM_DICTIONARY_CASE_SENSITIVE, this.caseSensitive.toString())),
+                    Boolean.parseBoolean(dictionary.getOrDefault(PARAM_DICTIONARY_ACCENT_SENSITIVE, this.accentSensitive.toString())),
+                    Integer.parseInt(dictionary.getOrDefault(PARAM_PHRASE_COLUMN, this.phraseColumn.toString())),
+                    dictionary.getOrDefault(PARAM_CSV_SEPARATOR, this.csvSeparator).charAt(0),
+                    dictionary.getOrDefault(PARAM_DICTIONARY_ENCODING, this.dictionaryEncoding),
+                    keptColumns(featureIndexes), this.loadingThreads);
+            if (this.characterLevel && !(loader.getTokenizer() instanceof TokenBoundary)) {
+                throw new IllegalArgumentException("Tokenizer '" + tokenizer
+                        + "' must implement " + TokenBoundary.class.getName() + " for character level matching");
+            }
+            List<URL> locations = resolveLocations(location, context);
+            if (FORMAT_BINARY.equals(this.dictionaryFormat)
+                    && (locations.size() > 1 || DictionarySource.resolve(locations.get(0)).size() > 1)) {
+                throw new IllegalArgumentException("Binary dictionary '" + location + "' must be a single file");
+            }
+            Group group = groups.computeIfAbsent(DictionaryMatcher.groupKey(loader, this.characterLevel), k -> new Group());
+            for (URL resolved : locations) {
+                group.add(resolved, loader, i);
+            }
+        }
+        this.groups = groups.values().toArray(new Group[0]);
+    }
+
+    /**
+     * @return every location, directory and glob pattern of the list separated by ',', resolved to their shards
+     * whenever the dictionary is loaded, see {@link DictionarySource#resolve(URL)}
+     */
+    private static List<URL> resolveLocations(String locations, UimaContext context) throws IOException {
+        List<URL> resolved = new ArrayList<>();
+        for (String location : locations.trim().split("\\s*,\\s*")) {
+            if (DictionarySource.isPattern(location)) {
+                resolved.add(DictionarySource.pattern(location));
+            } else {
+                resolved.add(ResourceUtils.resolveLocation(location, context));
+            }
+        }
+        return resolved;
+    }
 
-    private EntryMetadata createMetadata(String[] record) {
-        EntryMetadata entryMetadata = new EntryMetadata();
-        entryMetadata.setText(record[this.phraseColumn]);
-        entryMetadata.setColumns(record);
-        return entryMetadata;
+    private void openDictionary(Group group) throws Exception {
+        DictionaryLoader loader = group.loaders.get(0);
+        if (FORMAT_BINARY.equals(this.dictionaryFormat)) {
+            URL location = DictionarySource.resolve(group.locations.get(0)).get(0);
+            group.binaryDictionary = BinaryDictionary.open(Paths.get(location.toURI()), loader.getMatchingSettings());
+            getLogger().info(String.format("Mapped binary dictionary from '%s' with %d entries",
+                    location, group.binaryDictionary.getEntryCount()));
+            return;
+        }
+        group.set = new DictionarySet(group.locations, group.loaders, this.freezeDictionary);
+        group.dictionary = SharedDictionaries.acquire(group.set);
+        if (this.fuzzyDistance > 0 || this.characterLevel) {
+            // Updates published to the shared dictionary would fail this annotator at document time
+            group.dictionary.lockUpdates();
+            group.updatesLocked = true;
+        }
+        group.dictionary.watch(this.dictionaryReloadInterval);
+        getLogger().info(String.format("Using dictionary from '%s' with %d entries",
+                group.set, group.dictionary.current().getEntryCount()));
+        if (this.reportMemory) {
+            getLogger().info(String.format("Dictionary '%s' memory footprint - %s",
+                    group.set, group.dictionary.current().getTree().getMemoryReport()));
+        }
     }
 
-    private String selectEntry(String[] record) {
-        return record[this.phraseColumn];
+    @Override
+    public void destroy() {
+        release();
+        super.destroy();
     }
 
-    private DictionaryTokenizer loadTokenizer() {
-        try {
-            Class<?> tokenizerClazz = Class.forName(this.tokenizerClass);
-            return (DictionaryTokenizer) tokenizerClazz.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load tokenizer '" + this.tokenizerClass + "'", e);
+    /**
+     * Unregisters metrics, shuts the matching pool down and releases dictionaries, after destroy
+     * or a failed initialize.
+     */
+    private void release() {
+        if (this.metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+            } catch (JMException e) {
+                getLogger().log(Level.WARNING, "Failed to unregister metrics " + this.metricsName, e);
+            }
+            this.metricsName = null;
+        }
+        if (this.matchingPool != null) {
+            this.matchingPool.shutdown();
+            this.matchingPool = null;
+        }
+        releaseDictionaries();
+    }
+
+    private void releaseDictionaries() {
+        if (this.groups == null) {
+            return;
+        }
+        for (Group group : this.groups) {
+            if (group.dictionary != null) {
+                if (group.updatesLocked) {
+                    group.dictionary.unlockUpdates();
+                    group.updatesLocked = false;
+                }
+                SharedDictionaries.release(group.set);
+                group.dictionary = null;
+                group.version = null;
+            }
+        }
+    }
+
+    private OverlapResolver.Policy parseOverlapPolicy() throws ResourceInitializationException {
+        switch (this.overlapPolicy) {
+            case OVERLAP_ALL:
+                return OverlapResolver.Policy.ALL;
+            case OVERLAP_LONGEST:
+                return OverlapResolver.Policy.LONGEST;
+            case OVERLAP_LEFTMOST_LONGEST:
+                return OverlapResolver.Policy.LEFTMOST_LONGEST;
+            case OVERLAP_NON_OVERLAPPING:
+                return OverlapResolver.Policy.NON_OVERLAPPING;
+            default:
+                throw new ResourceInitializationException(
+                        new IllegalArgumentException("Unknown overlap policy '" + this.overlapPolicy + "'"));
         }
     }
 
-    private Map<Integer,String> parseFeatureMapping() {
+    /**
+     * @return CSV columns read while annotating, the rest are not kept in memory
+     */
+    private int[] keptColumns(Map<Integer, String> featureIndexes) {
+        int[] columns = new int[featureIndexes.size() + 1];
+        int i = 0;
+        for (Integer column : featureIndexes.keySet()) {
+            columns[i++] = column;
+        }
+        columns[i] = this.priorityColumn;
+        return columns;
+    }
+
+    private static Map<Integer,String> parseFeatureMapping(String[] featureMapping) {
         Map<Integer, String> result = new HashMap<>();
         for(String fm : featureMapping) {
+            if (fm.isEmpty()) {
+                continue;
+            }
             String[] parts = fm.split("\\s*->\\s*");
             result.put(Integer.parseInt(parts[0]), parts[1]);
         }
         return result;
     }
 
+    /**
+     * Parses {@link #PARAM_DICTIONARIES} value into parameter values by name.
+     */
+    private static Map<String, String> parseDictionarySettings(String dictionary) {
+        Map<String, String> settings = new HashMap<>();
+        StringBuilder pair = new StringBuilder();
+        for (int i = 0; i <= dictionary.length(); i++) {
+            char c = i < dictionary.length() ? dictionary.charAt(i) : ';';
+            if (c == '\\' && i + 1 < dictionary.length() && dictionary.charAt(i + 1) == ';') {
+                pair.append(';');
+                i++;
+            } else if (c != ';') {
+                pair.append(c);
+            } else {
+                String[] parts = pair.toString().split("=", 2);
+                String name = parts[0].trim();
+                if (!name.isEmpty() && !DICTIONARY_SETTINGS.contains(name)) {
+                    throw new IllegalArgumentException("Unknown dictionary parameter '" + name + "' in '" + dictionary + "'");
+                }
+                if (!name.isEmpty()) {
+                    String value = parts.length > 1 ? parts[1] : "";
+                    // Whitespace is a value only if it is the whole value, e.g. a tab separator
+                    settings.put(name, value.trim().isEmpty() ? value : value.trim());
+                }
+                pair.setLength(0);
+            }
+        }
+        if (!settings.containsKey(PARAM_DICTIONARY_LOCATION)) {
+            throw new IllegalArgumentException("Dictionary '" + dictionary + "' has no '" + PARAM_DICTIONARY_LOCATION + "'");
+        }
+        return settings;
+    }
+
     @Override
     public void process(JCas jcas) throws AnalysisEngineProcessException {
-        TreeMatcher treeMatcher = new TreeMatcher(this.tree);
-        Iterator<Token> iterator = JCasUtil.iterator(jcas, Token.class);
-        Type type = CasUtil.getType(jcas.getCas(), this.annotationType);
-        while (iterator.hasNext()) {
-            Token token = iterator.next();
-            String tokenText = token.getCoveredText();
-            tokenText = this.textNormalizer.normalize(tokenText);
-            treeMatcher.proceed(token.getBegin(), token.getEnd(), tokenText);
-            List<TreeMatch> matches = treeMatcher.getMatches();
-
-            for (TreeMatch match : matches) {
-                for (EntryMetadata metadata : match.matchedEntries()) {
-                    annotate(jcas, type, match, metadata);
+        for (Group group : this.groups) {
+            if (group.dictionary != null && group.dictionary.current() != group.version) {
+                createMatchers();
+                break;
+            }
+        }
+        if (jcas.getTypeSystem() != this.typeSystem) {
+            typeSystemInit(jcas.getCas());
+        }
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        int tokens = 0;
+        DictionaryMatcher matcher = this.dictionaryMatcher;
+        DictionaryMatcher.State state = this.matchingState;
+        Matches matches = this.matches;
+        if (this.characterLevel) {
+            matcher.match(state, jcas.getDocumentText(), matches);
+        } else if (this.resultCache != null) {
+            tokens = readTokens(jcas);
+            matchCached(jcas, tokens, matcher, state, matches);
+        } else {
+            tokens = readTokens(jcas);
+            int[] chunkStarts = SPLIT_SENTENCE.equals(this.parallelSplit) && matcher.isParallel(tokens) ?
+                    sentenceChunks(jcas, tokens) : null;
+            matcher.match(state, jcas.getDocumentText(), this.tokenBegins, this.tokenEnds, tokens, chunkStarts, matches);
+        }
+        int matchCount = matches.size();
+        createAnnotations(jcas.getCas());
+        if (this.metrics != null) {
+            this.metrics.record(System.nanoTime() - start, tokens, matchCount, state.takePeakPartialMatchCount());
+        }
+    }
+
+    /**
+     * Adds cached matches of the document or of every sentence, and matches and caches those which are not cached.
+     */
+    private void matchCached(JCas jcas, int tokens, DictionaryMatcher matcher, DictionaryMatcher.State state,
+                             Matches matches) {
+        String text = jcas.getDocumentText();
+        TextNormalizer[] normalizers = matcher.getNormalizers();
+        int[] units = CACHE_SENTENCE.equals(this.resultCacheScope) ? sentenceUnits(jcas, tokens) : new int[]{0, tokens};
+        for (int u = 0; u + 1 < units.length; u++) {
+            int first = units[u];
+            int count = units[u + 1] - first;
+            ResultCache.Key key = this.resultCache.key(normalizers, text, this.tokenBegins, this.tokenEnds, first, count);
+            ResultCache.Result result = this.resultCache.get(key);
+            if (result != null) {
+                result.replay(matches, this.tokenBegins, this.tokenEnds, first);
+                continue;
+            }
+            int from = matches.size();
+            if (count == tokens) {
+                int[] chunkStarts = SPLIT_SENTENCE.equals(this.parallelSplit) && matcher.isParallel(tokens) ?
+                        sentenceChunks(jcas, tokens) : null;
+                matcher.match(state, text, this.tokenBegins, this.tokenEnds, tokens, chunkStarts, matches);
+            } else {
+                if (this.unitBegins.length < count) {
+                    this.unitBegins = new int[count];
+                    this.unitEnds = new int[count];
+                }
+                System.arraycopy(this.tokenBegins, first, this.unitBegins, 0, count);
+                System.arraycopy(this.tokenEnds, first, this.unitEnds, 0, count);
+                matcher.match(state, text, this.unitBegins, this.unitEnds, count, matches);
+            }
+            result = ResultCache.Result.of(matches, from, this.tokenBegins, this.tokenEnds, first, count);
+            if (result != null) {
+                this.resultCache.put(key, result);
+            }
+        }
+    }
+
+    /**
+     * @return first token of every sentence and of the tokens before the first sentence, followed by the number of tokens
+     */
+    private int[] sentenceUnits(JCas jcas, int count) {
+        int[] starts = new int[16];
+        int size = 1;
+        for (Sentence sentence : JCasUtil.select(jcas, Sentence.class)) {
+            int token = Arrays.binarySearch(this.tokenBegins, 0, count, sentence.getBegin());
+            if (token < 0) {
+                token = -token - 1;
+            }
+            if (token > starts[size - 1] && token < count) {
+                if (size + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
                 }
+                starts[size++] = token;
             }
         }
+        starts[size++] = count;
+        return Arrays.copyOf(starts, size);
     }
 
-    private void annotate(JCas jcas, Type type, TreeMatch match, EntryMetadata metadata) {
-        AnnotationFS annotation =
-                jcas.getCas().createAnnotation(type, match.getStart(), match.getEnd());
-        String[] columns = metadata.getColumns();
-        for (Map.Entry<Integer,String> fi : featureIndexes.entrySet()) {
-            if (columns.length > fi.getKey()) {
+    /**
+     * Copies token offsets into reused arrays, which are matched without accessing the CAS.
+     *
+     * @return number of tokens
+     */
+    private int readTokens(JCas jcas) {
+        int count = jcas.getAnnotationIndex(Token.type).size();
+        if (this.tokenBegins.length < count) {
+            this.tokenBegins = new int[count];
+            this.tokenEnds = new int[count];
+        }
+        int i = 0;
+        for (Token token : JCasUtil.select(jcas, Token.class)) {
+            this.tokenBegins[i] = token.getBegin();
+            this.tokenEnds[i] = token.getEnd();
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return first token of every chunk followed by the number of tokens, chunks start at sentence starts
+     */
+    private int[] sentenceChunks(JCas jcas, int count) {
+        int[] starts = new int[16];
+        int size = 1;
+        int next = DictionaryMatcher.CHUNK_TOKENS;
+        for (Sentence sentence : JCasUtil.select(jcas, Sentence.class)) {
+            int token = Arrays.binarySearch(this.tokenBegins, 0, count, sentence.getBegin());
+            if (token < 0) {
+                token = -token - 1;
+            }
+            if (token >= next && token < count) {
+                if (size + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[size++] = token;
+                next = token + DictionaryMatcher.CHUNK_TOKENS;
+            }
+        }
+        starts[size++] = count;
+        return Arrays.copyOf(starts, size);
+    }
+
+    /**
+     * Resolves annotation type and feature codes, called whenever the CAS comes with a different type system.
+     */
+    private void typeSystemInit(CAS cas) throws AnalysisEngineProcessException {
+        LowLevelCAS lowLevelCas = cas.getLowLevelCAS();
+        LowLevelTypeSystem lowLevelTypeSystem = lowLevelCas.ll_getTypeSystem();
+        // Features inherited from uima.tcas.Annotation have the same codes in every annotation type
+        Type annotation = cas.getAnnotationType();
+        this.beginCode = lowLevelTypeSystem.ll_getCodeForFeature(annotation.getFeatureByBaseName(CAS.FEATURE_BASE_NAME_BEGIN));
+        this.endCode = lowLevelTypeSystem.ll_getCodeForFeature(annotation.getFeatureByBaseName(CAS.FEATURE_BASE_NAME_END));
+        this.sofaCode = lowLevelTypeSystem.ll_getCodeForFeature(annotation.getFeatureByBaseName(CAS.FEATURE_BASE_NAME_SOFA));
+        for (Target target : this.targets) {
+            Type type = CasUtil.getType(cas, target.annotationType);
+            target.typeCode = lowLevelTypeSystem.ll_getCodeForType(type);
+            EntryFeature[] resolved = new EntryFeature[target.featureIndexes.size()];
+            int i = 0;
+            for (Map.Entry<Integer, String> fi : target.featureIndexes.entrySet()) {
                 Feature feature = type.getFeatureByBaseName(fi.getValue());
-                annotation.setFeatureValueFromString(feature, columns[fi.getKey()]);
+                if (feature == null) {
+                    throw new AnalysisEngineProcessException(new IllegalArgumentException(
+                            "Type '" + target.annotationType + "' has no feature '" + fi.getValue() + "'"));
+                }
+                resolved[i++] = new EntryFeature(fi.getKey(), feature, lowLevelCas);
+            }
+            target.features = resolved;
+            target.costCode = -1;
+            if (target.costFeature != null) {
+                Feature cost = type.getFeatureByBaseName(target.costFeature);
+                if (cost == null || !CAS.TYPE_NAME_INTEGER.equals(cost.getRange().getName())) {
+                    throw new AnalysisEngineProcessException(new IllegalArgumentException(
+                            "Type '" + target.annotationType + "' has no integer feature '" + target.costFeature + "'"));
+                }
+                target.costCode = lowLevelTypeSystem.ll_getCodeForFeature(cost);
+            }
+        }
+        this.typeSystem = cas.getTypeSystem();
+    }
+
+    /**
+     * Creates annotations of all matches through low level CAS API, no feature structure objects are created.
+     * Annotation type and features are those of the dictionary the matched entry comes from.
+     * Matches are cleared even if a feature value is rejected, so they are not annotated in the next document.
+     */
+    private void createAnnotations(CAS cas) throws AnalysisEngineProcessException {
+        LowLevelCAS lowLevelCas = cas.getLowLevelCAS();
+        LowLevelIndexRepository indexRepository = lowLevelCas.ll_getIndexRepository();
+        int sofa = lowLevelCas.ll_getFSRef(cas.getSofa());
+        Matches matches = this.matches;
+        try {
+            if (this.spanGroups != null) {
+                createSpanAnnotations(lowLevelCas, indexRepository, sofa, matches);
+                return;
+            }
+            for (int i = 0; i < matches.size(); i++) {
+                Target target = this.targets[matches.getDictionary(i)];
+                int annotation = lowLevelCas.ll_createFS(target.typeCode);
+                lowLevelCas.ll_setRefValue(annotation, this.sofaCode, sofa);
+                lowLevelCas.ll_setIntValue(annotation, this.beginCode, matches.getStart(i));
+                lowLevelCas.ll_setIntValue(annotation, this.endCode, matches.getEnd(i));
+                for (EntryFeature feature : target.features) {
+                    feature.set(lowLevelCas, annotation, matches.getEntryTable(i), matches.getEntry(i));
+                }
+                if (target.costCode >= 0) {
+                    lowLevelCas.ll_setIntValue(annotation, target.costCode, matches.getCost(i));
+                }
+                indexRepository.ll_addFS(annotation);
+            }
+        } finally {
+            matches.clear();
+        }
+    }
+
+    /**
+     * Creates a single annotation for all matches of a dictionary with the same span.
+     */
+    private void createSpanAnnotations(LowLevelCAS lowLevelCas, LowLevelIndexRepository indexRepository, int sofa,
+                                       Matches matches) throws AnalysisEngineProcessException {
+        SpanGroups groups = this.spanGroups;
+        groups.group(matches);
+        int[] order = groups.getOrder();
+        for (int g = 0; g < groups.size(); g++) {
+            Target target = this.targets[groups.getDictionary(g)];
+            int first = groups.getFirst(g);
+            int count = groups.getCount(g);
+            int annotation = lowLevelCas.ll_createFS(target.typeCode);
+            lowLevelCas.ll_setRefValue(annotation, this.sofaCode, sofa);
+            lowLevelCas.ll_setIntValue(annotation, this.beginCode, groups.getStart(g));
+            lowLevelCas.ll_setIntValue(annotation, this.endCode, groups.getEnd(g));
+            for (EntryFeature feature : target.features) {
+                feature.set(lowLevelCas, annotation, matches, order, first, count);
+            }
+            if (target.costCode >= 0) {
+                int cost = Integer.MAX_VALUE;
+                for (int k = first; k < first + count; k++) {
+                    cost = Math.min(cost, matches.getCost(order[k]));
+                }
+                lowLevelCas.ll_setIntValue(annotation, target.costCode, cost);
             }
+            indexRepository.ll_addFS(annotation);
+        }
+    }
+
+    /**
+     * Binds a new matcher to the binary dictionary or to the latest versions of the shared ones.
+     */
+    private void createMatchers() {
+        long version = 0;
+        long loadTime = 0;
+        int entryCount = 0;
+        int nodeCount = 0;
+        List<DictionaryMatcher.Group> matched = new ArrayList<>(this.groups.length);
+        for (Group group : this.groups) {
+            DictionaryLoader loader = group.loaders.get(0);
+            if (group.binaryDictionary != null) {
+                BinaryDictionary binary = group.binaryDictionary;
+                matched.add(new DictionaryMatcher.Group(binary, loader.getTextNormalizer(), group.targets[0]));
+                version += 1;
+                entryCount += binary.getEntryCount();
+                nodeCount += binary.getNodeCount();
+                continue;
+            }
+            SharedDictionary current = group.dictionary.current();
+            group.version = current;
+            matched.add(new DictionaryMatcher.Group(current, loader.getTextNormalizer(), loader.getTokenizer(), group.targets));
+            version += current.getVersion();
+            loadTime += current.getLoadTime();
+            entryCount += current.getEntryCount();
+            nodeCount += current.getTree().getNodeCount();
+        }
+        if (this.resultCache != null) {
+            this.resultCache.clear();
+        }
+        this.dictionaryMatcher = new DictionaryMatcher(matched, MATCHER_AHO_CORASICK.equals(this.matcher),
+                this.fuzzyDistance, this.fuzzyMinTokenLength, this.policy, this.priorityColumn, this.matchingPool, this.parallelMinTokens);
+        this.matchingState = this.dictionaryMatcher.newState();
+        if (this.metrics != null) {
+            SharedDictionary[] versions = Arrays.stream(this.groups).map(group -> group.version).toArray(SharedDictionary[]::new);
+            BinaryDictionary[] binaries = Arrays.stream(this.groups).map(group -> group.binaryDictionary).toArray(BinaryDictionary[]::new);
+            this.metrics.setDictionary(version, loadTime, entryCount, nodeCount, () -> {
+                long bytes = 0;
+                for (int i = 0; i < versions.length; i++) {
+                    bytes += binaries[i] != null ? binaries[i].getByteCount() : versions[i].getEstimatedMemory();
+                }
+                return bytes;
+            });
         }
+    }
+
+    /**
+     * Annotation type and features created for matches of one dictionary.
+     */
+    private static final class Target {
 
-        jcas.getCas().addFsToIndexes(annotation);
+        private final String annotationType;
+        private final Map<Integer, String> featureIndexes;
+        private final String costFeature;
+        private int typeCode;
+        private EntryFeature[] features;
+        private int costCode;
+
+        private Target(String annotationType, Map<Integer, String> featureIndexes, String costFeature) {
+            this.annotationType = annotationType;
+            this.featureIndexes = featureIndexes;
+            this.costFeature = costFeature;
+        }
+    }
+
+    /**
+     * Dictionaries with the same normalization, loaded into one tree which is matched once per token.
+     */
+    private static final class Group {
+
+        private final List<URL> locations = new ArrayList<>();
+        private final List<DictionaryLoader> loaders = new ArrayList<>();
+        // Target of every dictionary in the group, indexed by dictionary index in the combined tree
+        private int[] targets = new int[0];
+        private DictionarySet set;
+        private ReloadableDictionary dictionary;
+        private SharedDictionary version;
+        private BinaryDictionary binaryDictionary;
+        private boolean updatesLocked;
+
+        private void add(URL location, DictionaryLoader loader, int target) {
+            locations.add(location);
+            loaders.add(loader);
+            targets = Arrays.copyOf(targets, targets.length + 1);
+            targets[targets.length - 1] = target;
+        }
     }
 }
@@ -0,0 +1,220 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects {@link DictionaryAnnotatorMetricsMXBean} values. Annotator records one sample per document,
+ * latencies are counted in power of two buckets, so recording takes a few atomic increments and no allocation.
+ * Percentiles are upper bounds of the bucket they fall into, but not more than the maximum latency.
+ */
+final class DictionaryAnnotatorMetrics implements DictionaryAnnotatorMetricsMXBean {
+
+    private static final int BUCKETS = 40;
+
+    private final String dictionaryLocation;
+    private volatile long dictionaryVersion;
+    private volatile long dictionaryLoadTime;
+    private volatile int dictionaryEntryCount;
+    private volatile int dictionaryNodeCount;
+    private volatile LongSupplier dictionaryMemory = () -> 0;
+
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private volatile int peakPartialMatches;
+    private volatile ResultCache resultCache;
+
+    DictionaryAnnotatorMetrics(String dictionaryLocation) {
+        this.dictionaryLocation = dictionaryLocation;
+    }
+
+    void setDictionary(long version, long loadTime, int entryCount, int nodeCount, LongSupplier memory) {
+        this.dictionaryVersion = version;
+        this.dictionaryLoadTime = loadTime;
+        this.dictionaryEntryCount = entryCount;
+        this.dictionaryNodeCount = nodeCount;
+        this.dictionaryMemory = memory;
+    }
+
+    void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @param peakPartialMatches largest number of partial matches followed at once, or -1 if not known
+     */
+    void record(long elapsedNanos, int tokenCount, int matchCount, int peakPartialMatches) {
+        documents.incrementAndGet();
+        tokens.addAndGet(tokenCount);
+        matches.addAndGet(matchCount);
+        nanos.addAndGet(elapsedNanos);
+        if (elapsedNanos > maxNanos.get()) {
+            maxNanos.set(elapsedNanos);
+        }
+        latencies.incrementAndGet(bucket(elapsedNanos / 1000));
+        if (peakPartialMatches > this.peakPartialMatches) {
+            this.peakPartialMatches = peakPartialMatches;
+        }
+    }
+
+    @Override
+    public String getDictionaryLocation() {
+        return dictionaryLocation;
+    }
+
+    @Override
+    public long getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    @Override
+    public long getDictionaryLoadTimeMillis() {
+        return dictionaryLoadTime;
+    }
+
+    @Override
+    public int getDictionaryEntryCount() {
+        return dictionaryEntryCount;
+    }
+
+    @Override
+    public int getDictionaryNodeCount() {
+        return dictionaryNodeCount;
+    }
+
+    @Override
+    public long getDictionaryMemoryBytes() {
+        return dictionaryMemory.getAsLong();
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return documents.get();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return tokens.get();
+    }
+
+    @Override
+    public long getMatchCount() {
+        return matches.get();
+    }
+
+    @Override
+    public double getTokensPerSecond() {
+        long elapsed = nanos.get();
+        return elapsed > 0 ? tokens.get() * 1e9 / elapsed : 0;
+    }
+
+    @Override
+    public double getMatchesPerDocument() {
+        long count = documents.get();
+        return count > 0 ? (double) matches.get() / count : 0;
+    }
+
+    @Override
+    public long getLatencyMedianMicros() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getLatency90thPercentileMicros() {
+        return percentile(0.9);
+    }
+
+    @Override
+    public long getLatency99thPercentileMicros() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public int getPeakPartialMatchCount() {
+        return peakPartialMatches;
+    }
+
+    @Override
+    public int getResultCacheSize() {
+        ResultCache cache = resultCache;
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public long getResultCacheHitCount() {
+        ResultCache cache = resultCache;
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    @Override
+    public long getResultCacheMissCount() {
+        ResultCache cache = resultCache;
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
+    @Override
+    public long getResultCacheEvictionCount() {
+        ResultCache cache = resultCache;
+        return cache != null ? cache.getEvictionCount() : 0;
+    }
+
+    @Override
+    public void reset() {
+        documents.set(0);
+        tokens.set(0);
+        matches.set(0);
+        nanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies.set(i, 0);
+        }
+        peakPartialMatches = 0;
+        ResultCache cache = resultCache;
+        if (cache != null) {
+            cache.resetCounters();
+        }
+    }
+
+    private long percentile(double fraction) {
+        long[] histogram = getLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(1L << i, getLatencyMaxMicros());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return index of the bucket counting latencies less than 2^index microseconds
+     */
+    private static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+}
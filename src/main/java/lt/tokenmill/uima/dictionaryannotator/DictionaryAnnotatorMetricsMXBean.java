@@ -0,0 +1,72 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+/**
+ * Runtime metrics of a single {@link DictionaryAnnotator} instance, registered in the platform MBean server
+ * when {@link DictionaryAnnotator#PARAM_METRICS} is enabled. Latencies are in microseconds.
+ * Dictionaries matched by one annotator are reported together, their sizes and load times are summed.
+ */
+public interface DictionaryAnnotatorMetricsMXBean {
+
+    String getDictionaryLocation();
+
+    /**
+     * @return version of the dictionary, sum of versions if dictionaries are loaded into several trees
+     */
+    long getDictionaryVersion();
+
+    long getDictionaryLoadTimeMillis();
+
+    int getDictionaryEntryCount();
+
+    int getDictionaryNodeCount();
+
+    /**
+     * @return estimated heap usage of CSV dictionary or size of memory mapped binary dictionary
+     */
+    long getDictionaryMemoryBytes();
+
+    long getDocumentCount();
+
+    /**
+     * @return number of matched tokens, not counted by character level matching
+     */
+    long getTokenCount();
+
+    long getMatchCount();
+
+    double getTokensPerSecond();
+
+    double getMatchesPerDocument();
+
+    long getLatencyMedianMicros();
+
+    long getLatency90thPercentileMicros();
+
+    long getLatency99thPercentileMicros();
+
+    long getLatencyMaxMicros();
+
+    /**
+     * @return number of documents processed in less than 1, 2, 4, 8, ... microseconds,
+     * every document is counted in a single bucket
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * @return largest number of partial matches followed at once by tree matcher
+     */
+    int getPeakPartialMatchCount();
+
+    /**
+     * @return number of documents or sentences kept by the result cache, 0 if it is disabled
+     */
+    int getResultCacheSize();
+
+    long getResultCacheHitCount();
+
+    long getResultCacheMissCount();
+
+    long getResultCacheEvictionCount();
+
+    void reset();
+}
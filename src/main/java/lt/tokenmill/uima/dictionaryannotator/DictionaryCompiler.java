@@ -0,0 +1,51 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.BinaryDictionaryWriter;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles CSV dictionary into binary format which is memory mapped by {@link DictionaryAnnotator}
+ * when {@link DictionaryAnnotator#PARAM_DICTIONARY_FORMAT} is "binary".
+ * <p>
+ * Usage: {@code DictionaryCompiler <dictionary.csv> <dictionary.bin> [parameter=value ...]}, where parameters are
+ * {@link DictionaryAnnotator} parameter names: tokenizerClass, caseSensitive, accentSensitive, phraseColumn,
+ * csvSeparator, dictionaryEncoding. Tokenizer and normalization settings must be the same as the annotator uses.
+ */
+public class DictionaryCompiler {
+
+    public static void compile(URL dictionary, DictionaryLoader loader, Path output) throws IOException {
+        DictionaryTree tree = loader.load(dictionary);
+        BinaryDictionaryWriter.write(tree, loader.getMatchingSettings(), output);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: DictionaryCompiler <dictionary.csv> <dictionary.bin> [parameter=value ...]");
+            System.exit(1);
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            String[] parts = args[i].split("=", 2);
+            parameters.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        DictionaryLoader loader = new DictionaryLoader(
+                parameters.getOrDefault(DictionaryAnnotator.PARAM_TOKENIZER_CLASS, WhitespaceDictionaryTokenizer.class.getName()),
+                Boolean.parseBoolean(parameters.getOrDefault(DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, "true")),
+                Boolean.parseBoolean(parameters.getOrDefault(DictionaryAnnotator.PARAM_DICTIONARY_ACCENT_SENSITIVE, "true")),
+                Integer.parseInt(parameters.getOrDefault(DictionaryAnnotator.PARAM_PHRASE_COLUMN, "0")),
+                parameters.getOrDefault(DictionaryAnnotator.PARAM_CSV_SEPARATOR, ",").charAt(0),
+                parameters.getOrDefault(DictionaryAnnotator.PARAM_DICTIONARY_ENCODING, "UTF-8"));
+        Path output = Paths.get(args[1]);
+        long start = System.currentTimeMillis();
+        compile(new File(args[0]).toURI().toURL(), loader, output);
+        System.out.println(String.format("Compiled '%s' into '%s' in %d ms", args[0], output, System.currentTimeMillis() - start));
+    }
+}
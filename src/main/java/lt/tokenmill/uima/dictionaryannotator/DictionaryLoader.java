@@ -0,0 +1,350 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVReader;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryBatch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+/**
+ * Loads dictionary from CSV file into {@link DictionaryTree}. Gzip compressed files are decompressed, see {@link DictionarySource}.
+ * Loaders with equal settings produce equal trees, so loader is used as a part of {@link SharedDictionaries} key.
+ * <p>
+ * With more than one loading thread the file is read in chunks of lines, which are parsed, tokenized,
+ * normalized and interned on a fork-join pool, while the reading thread adds finished chunks to the tree in file order.
+ * A chunk which turns out to start inside a multi-line quoted value is parsed again together with the end of
+ * the previous one, so the tree is always the same as the one loaded by a single thread.
+ */
+public class DictionaryLoader {
+
+    static final int CHUNK_LINES = 4096;
+
+    private final String tokenizerClass;
+    private final boolean caseSensitive;
+    private final boolean accentSensitive;
+    private final int phraseColumn;
+    private final char separator;
+    private final String encoding;
+    private final int[] columns;
+    private final int threads;
+    private final DictionaryTokenizer tokenizer;
+    private final TextNormalizer textNormalizer;
+
+    public DictionaryLoader(String tokenizerClass, boolean caseSensitive, boolean accentSensitive,
+                            int phraseColumn, char separator, String encoding) {
+        this(tokenizerClass, caseSensitive, accentSensitive, phraseColumn, separator, encoding, null);
+    }
+
+    /**
+     * @param columns CSV columns to keep in entry metadata or null to keep all of them
+     */
+    public DictionaryLoader(String tokenizerClass, boolean caseSensitive, boolean accentSensitive,
+                            int phraseColumn, char separator, String encoding, int[] columns) {
+        this(tokenizerClass, caseSensitive, accentSensitive, phraseColumn, separator, encoding, columns, 0);
+    }
+
+    /**
+     * @param columns CSV columns to keep in entry metadata or null to keep all of them
+     * @param threads number of loading threads, 0 for the number of available processors.
+     *                It does not change the loaded tree, so it is not a part of loader equality
+     */
+    public DictionaryLoader(String tokenizerClass, boolean caseSensitive, boolean accentSensitive,
+                            int phraseColumn, char separator, String encoding, int[] columns, int threads) {
+        this.tokenizerClass = tokenizerClass;
+        this.caseSensitive = caseSensitive;
+        this.accentSensitive = accentSensitive;
+        this.phraseColumn = phraseColumn;
+        this.separator = separator;
+        this.encoding = encoding;
+        this.columns = columns != null ? Arrays.stream(columns).distinct().sorted().toArray() : null;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.tokenizer = loadTokenizer(tokenizerClass);
+        this.textNormalizer = new TextNormalizer(caseSensitive, accentSensitive);
+    }
+
+    public DictionaryTree load(URL location) throws IOException {
+        DictionaryTree tree = new DictionaryTree(this.phraseColumn, this.columns);
+        ForkJoinPool pool = newPool();
+        try {
+            load(location, tree, 0, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        tree.compact();
+        return tree;
+    }
+
+    /**
+     * @return pool of the loading threads, to be shared by every shard of a load and shut down after it,
+     * null if entries are parsed on the calling thread
+     */
+    ForkJoinPool newPool() {
+        return this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+    }
+
+    /**
+     * Adds entries of the dictionary to a tree which may already hold other dictionaries, see {@link DictionarySet}.
+     *
+     * @param dictionary index the entries are tagged with
+     * @param pool       pool records are parsed on, see {@link #newPool()}, null to parse them on the calling thread
+     */
+    void load(URL location, DictionaryTree tree, int dictionary, ForkJoinPool pool) throws IOException {
+        try (InputStream is = DictionarySource.open(location)) {
+            load(new InputStreamReader(is, this.encoding), tree, dictionary, pool);
+        }
+    }
+
+    /**
+     * Adds entries read from the reader, which is not closed.
+     */
+    void load(Reader reader, DictionaryTree tree, int dictionary, ForkJoinPool pool) throws IOException {
+        if (pool != null) {
+            loadParallel(reader, tree, dictionary, pool);
+        } else {
+            CSVReader csvReader = new CSVReader(reader, this.separator);
+            for (String[] record : csvReader) {
+                tree.addEntry(tokenize(record, this.tokenizer), record, dictionary);
+            }
+        }
+    }
+
+    private void loadParallel(Reader reader, DictionaryTree tree, int dictionary, ForkJoinPool pool) throws IOException {
+        ThreadLocal<DictionaryTokenizer> tokenizers = ThreadLocal.withInitial(() -> loadTokenizer(this.tokenizerClass));
+        BufferedReader lineReader = new BufferedReader(reader, 1 << 16);
+        Deque<ForkJoinTask<Chunk>> chunks = new ArrayDeque<>();
+        List<String> open = Collections.emptyList();
+        List<String> lines;
+        while (!(lines = readLines(lineReader)).isEmpty()) {
+            List<String> chunkLines = lines;
+            chunks.add(pool.submit(() -> parse(chunkLines, tokenizers.get(), false)));
+            // Limits the number of chunks held in memory
+            if (chunks.size() > 2 * pool.getParallelism()) {
+                open = add(tree, dictionary, chunks.poll().join(), open);
+            }
+        }
+        while (!chunks.isEmpty()) {
+            open = add(tree, dictionary, chunks.poll().join(), open);
+        }
+        if (!open.isEmpty()) {
+            // File ends inside a quoted value, which is kept as CSVReader does
+            add(tree, dictionary, parse(open, this.tokenizer, true), Collections.emptyList());
+        }
+    }
+
+    /**
+     * Adds chunk entries to the tree, the chunk is parsed again if the previous one ended inside a record.
+     *
+     * @param open lines of the record left open at the end of the previous chunk
+     * @return lines of the record left open at the end of this chunk
+     */
+    private List<String> add(DictionaryTree tree, int dictionary, Chunk chunk, List<String> open) throws IOException {
+        if (!open.isEmpty()) {
+            List<String> lines = new ArrayList<>(open.size() + chunk.lines.size());
+            lines.addAll(open);
+            lines.addAll(chunk.lines);
+            chunk = parse(lines, this.tokenizer, false);
+        }
+        if (chunk.failure instanceof IOException) {
+            throw (IOException) chunk.failure;
+        } else if (chunk.failure != null) {
+            throw (RuntimeException) chunk.failure;
+        }
+        tree.addEntries(chunk.entries, dictionary);
+        return chunk.open;
+    }
+
+    /**
+     * Parses lines the same way as {@link CSVReader} does. Failure is kept in the chunk rather than thrown,
+     * as it does not matter if the chunk has to be parsed again.
+     *
+     * @param last whether the lines end the file, otherwise the record left open is not added
+     */
+    private Chunk parse(List<String> lines, DictionaryTokenizer tokenizer, boolean last) {
+        Chunk chunk = new Chunk(lines);
+        try {
+            CSVParser parser = new CSVParser(this.separator);
+            String[] record = null;
+            int recordStart = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                if (!parser.isPending()) {
+                    recordStart = i;
+                }
+                String[] values = parser.parseLineMulti(lines.get(i));
+                if (values.length > 0) {
+                    record = record == null ? values : concat(record, values);
+                }
+                if (!parser.isPending() && record != null) {
+                    chunk.entries.add(tokenize(record, tokenizer), record);
+                    record = null;
+                }
+            }
+            if (parser.isPending()) {
+                if (!last) {
+                    chunk.open = lines.subList(recordStart, lines.size());
+                } else if (record != null) {
+                    chunk.entries.add(tokenize(record, tokenizer), record);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            chunk.failure = e;
+        }
+        return chunk;
+    }
+
+    /**
+     * Tokenizes a phrase the same way as the phrase of a loaded entry, for runtime updates of the loaded tree.
+     * Tokenizer is not shared with loading, so it may be called from any thread.
+     */
+    List<String> tokenize(String phrase) {
+        return tokenize(phrase, loadTokenizer(this.tokenizerClass));
+    }
+
+    /**
+     * @return tokens of the record phrase, tokenized as by {@link #tokenize(String)}
+     */
+    List<String> tokenize(String[] record) {
+        return tokenize(selectEntry(record));
+    }
+
+    private List<String> tokenize(String[] record, DictionaryTokenizer tokenizer) {
+        return tokenize(selectEntry(record), tokenizer);
+    }
+
+    private List<String> tokenize(String phrase, DictionaryTokenizer tokenizer) {
+        return tokenizer.tokenize(phrase)
+                .stream()
+                .map(textNormalizer::normalize)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> readLines(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>(CHUNK_LINES);
+        String line;
+        while (lines.size() < CHUNK_LINES && (line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * @return description of settings which affect dictionary tokens, compiled dictionaries built with other settings can not be used
+     */
+    public String getMatchingSettings() {
+        return String.format("tokenizer=%s;caseSensitive=%s;accentSensitive=%s", tokenizerClass, caseSensitive, accentSensitive);
+    }
+
+    public DictionaryTokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public TextNormalizer getTextNormalizer() {
+        return textNormalizer;
+    }
+
+    boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    boolean isAccentSensitive() {
+        return accentSensitive;
+    }
+
+    String getEncoding() {
+        return encoding;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    int getPhraseColumn() {
+        return phraseColumn;
+    }
+
+    /**
+     * @return kept CSV columns or null if all of them are kept
+     */
+    int[] getColumns() {
+        return columns;
+    }
+
+    private String selectEntry(String[] record) {
+        return record[this.phraseColumn];
+    }
+
+    private static DictionaryTokenizer loadTokenizer(String tokenizerClass) {
+        try {
+            Class<?> tokenizerClazz = Class.forName(tokenizerClass);
+            return (DictionaryTokenizer) tokenizerClazz.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load tokenizer '" + tokenizerClass + "'", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DictionaryLoader that = (DictionaryLoader) o;
+        return caseSensitive == that.caseSensitive
+                && accentSensitive == that.accentSensitive
+                && phraseColumn == that.phraseColumn
+                && separator == that.separator
+                && tokenizerClass.equals(that.tokenizerClass)
+                && encoding.equals(that.encoding)
+                && Arrays.equals(columns, that.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tokenizerClass, caseSensitive, accentSensitive, phraseColumn, separator, encoding)
+                * 31 + Arrays.hashCode(columns);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tokenizer=%s, caseSensitive=%s, accentSensitive=%s, phraseColumn=%d, separator='%s', encoding=%s, columns=%s",
+                tokenizerClass, caseSensitive, accentSensitive, phraseColumn, separator, encoding,
+                columns != null ? Arrays.toString(columns) : "all");
+    }
+
+    private static final class Chunk {
+
+        private final List<String> lines;
+        private final EntryBatch entries = new EntryBatch();
+        private List<String> open = Collections.emptyList();
+        private Exception failure;
+
+        private Chunk(List<String> lines) {
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,870 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.AhoCorasickMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.BinaryDictionary;
+import lt.tokenmill.uima.dictionaryannotator.tree.BinaryDictionaryMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.CharacterMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+import lt.tokenmill.uima.dictionaryannotator.tree.FuzzyTreeMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.MatchListener;
+import lt.tokenmill.uima.dictionaryannotator.tree.MatchRecorder;
+import lt.tokenmill.uima.dictionaryannotator.tree.OverlapResolver;
+import lt.tokenmill.uima.dictionaryannotator.tree.SnapshotMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenBoundary;
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenMatcher;
+import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatch;
+import lt.tokenmill.uima.dictionaryannotator.tree.TreeMatcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Matches dictionaries against text without UIMA. Text is either given with offsets of its tokens,
+ * or matched character by character with tokens delimited by the dictionary tokenizer, which then must implement
+ * {@link TokenBoundary}. Matches are returned in {@link Matches}, ordered and resolved by the overlap policy
+ * the same way as annotations of {@link DictionaryAnnotator}, which is an adapter over this class.
+ * <p>
+ * Matcher is immutable and safe to use from many threads. Matchers and buffers of a match are kept in a {@link State},
+ * which methods taking one reuse from call to call, one state per thread. Methods without a state create one per call.
+ * States are owned by their callers, so neither the matcher nor its dictionaries outlive the callers.
+ * <pre>
+ * DictionaryMatcher matcher = new DictionaryMatcher.Builder()
+ *         .addDictionary(location, new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(), false, true, 0, ',', "UTF-8"))
+ *         .overlapPolicy(OverlapResolver.Policy.LONGEST, -1)
+ *         .build();
+ * Matches matches = matcher.match("Natural language processing with Java");
+ * </pre>
+ */
+public final class DictionaryMatcher {
+
+    // Tokens of a chunk matched by a single task
+    static final int CHUNK_TOKENS = 1 << 14;
+
+    private final Group[] groups;
+    // Distinct normalizers of the groups
+    private final TextNormalizer[] normalizers;
+    private final int dictionaryCount;
+    private final boolean ahoCorasick;
+    private final int fuzzyDistance;
+    private final int fuzzyMinTokenLength;
+    private final OverlapResolver.Policy policy;
+    private final int priorityColumn;
+    private final ForkJoinPool pool;
+    private final int parallelMinTokens;
+    private volatile int maxEntryLength = -1;
+
+    /**
+     * @param fuzzyDistance       largest Levenshtein distance of a matched token, 0 for exact matching
+     * @param fuzzyMinTokenLength tokens shorter than it are matched exactly
+     * @param pool                pool matching chunks of large documents and batches of documents, null to match
+     *                            in the calling thread
+     * @param parallelMinTokens   documents with fewer tokens are matched in the calling thread
+     */
+    DictionaryMatcher(List<Group> groups, boolean ahoCorasick, int fuzzyDistance, int fuzzyMinTokenLength,
+                      OverlapResolver.Policy policy, int priorityColumn, ForkJoinPool pool, int parallelMinTokens) {
+        if (fuzzyDistance > 0 && (ahoCorasick || groups.stream().anyMatch(group -> group.binaryDictionary != null))) {
+            throw new IllegalArgumentException("Fuzzy matching supports only CSV dictionaries matched by the tree");
+        }
+        if ((ahoCorasick || fuzzyDistance > 0) && groups.stream().anyMatch(Group::isFrozen)) {
+            throw new IllegalArgumentException("Frozen dictionaries are matched only by the tree matcher");
+        }
+        this.groups = groups.toArray(new Group[0]);
+        this.normalizers = groups.stream().map(group -> group.normalizer).distinct().toArray(TextNormalizer[]::new);
+        this.dictionaryCount = groups.stream().mapToInt(group -> group.dictionaries.length).sum();
+        this.ahoCorasick = ahoCorasick;
+        this.fuzzyDistance = fuzzyDistance;
+        this.fuzzyMinTokenLength = fuzzyMinTokenLength;
+        this.policy = policy;
+        this.priorityColumn = priorityColumn;
+        this.pool = pool;
+        this.parallelMinTokens = parallelMinTokens;
+    }
+
+    /**
+     * @return new matching state of this matcher, to be used by one thread at a time
+     */
+    public State newState() {
+        return new State(this);
+    }
+
+    /**
+     * @return number of matched dictionaries, dictionary indexes of matches are below it
+     */
+    public int getDictionaryCount() {
+        return dictionaryCount;
+    }
+
+    /**
+     * Matches text character by character.
+     */
+    public Matches match(CharSequence text) {
+        Matches matches = new Matches();
+        match(text, matches);
+        return matches;
+    }
+
+    /**
+     * Matches text character by character, matches are added to matches as a new document.
+     * Not supported by fuzzy matching.
+     */
+    public void match(CharSequence text, Matches matches) {
+        match(newState(), text, matches);
+    }
+
+    /**
+     * Matches text character by character with the matchers of the state, matches are added to matches
+     * as a new document. Not supported by fuzzy matching.
+     */
+    public void match(State state, CharSequence text, Matches matches) {
+        if (fuzzyDistance > 0) {
+            throw new UnsupportedOperationException("Fuzzy matching needs token offsets");
+        }
+        check(state);
+        matches.startDocument();
+        state.matchCharacters(text, matches);
+    }
+
+    /**
+     * Matches tokens of text.
+     *
+     * @param tokenBegins start offset of every token, tokens are ordered by offsets
+     * @param tokenEnds   end offset of every token
+     * @param tokenCount  number of tokens in the offset arrays
+     */
+    public Matches match(CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount) {
+        Matches matches = new Matches();
+        match(text, tokenBegins, tokenEnds, tokenCount, matches);
+        return matches;
+    }
+
+    /**
+     * Matches tokens of text, matches are added to matches as a new document.
+     * Documents of at least the parallel minimum of tokens are matched in chunks on the pool.
+     */
+    public void match(CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount, Matches matches) {
+        match(newState(), text, tokenBegins, tokenEnds, tokenCount, null, matches);
+    }
+
+    /**
+     * Matches tokens of text with the matchers of the state, matches are added to matches as a new document.
+     */
+    public void match(State state, CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount,
+                      Matches matches) {
+        match(state, text, tokenBegins, tokenEnds, tokenCount, null, matches);
+    }
+
+    /**
+     * @param chunkStarts first token of every chunk followed by the number of tokens when matched in parallel,
+     *                    null for windows of {@link #CHUNK_TOKENS}
+     */
+    void match(State state, CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount, int[] chunkStarts,
+               Matches matches) {
+        check(state);
+        matches.startDocument();
+        if (isParallel(tokenCount)) {
+            matchParallel(text, tokenBegins, tokenEnds, tokenCount, chunkStarts, state, matches);
+        } else {
+            state.matchTokens(text, tokenBegins, tokenEnds, tokenCount, matches);
+        }
+    }
+
+    /**
+     * Matches text read from the reader without holding all of it. Text is read in buffers of bufferSize characters
+     * and split into tokens by the {@link TokenBoundary} of the dictionary tokenizer, as by character level matching.
+     * After every buffer the matches which are complete are passed to the listener, with offsets relative to
+     * the given stream offset. Memory is bounded by the buffer and the tokens of the longest dictionary entry,
+     * whatever the stream length. Tokens longer than the buffer are not matched.
+     * Matches are the same as of {@link #match(CharSequence, int[], int[], int)} on the tokens of the whole text.
+     * All dictionaries must use the same tokenizer.
+     */
+    public void match(Reader reader, int bufferSize, StreamListener listener) throws IOException {
+        newState().matchStream(reader, streamBoundary(), bufferSize, listener);
+    }
+
+    /**
+     * Decodes bytes of the channel and matches them as {@link #match(Reader, int, StreamListener)} does,
+     * offsets are in characters.
+     */
+    public void match(ReadableByteChannel channel, Charset charset, int bufferSize, StreamListener listener) throws IOException {
+        match(Channels.newReader(channel, charset.newDecoder(), bufferSize), bufferSize, listener);
+    }
+
+    private TokenBoundary streamBoundary() {
+        DictionaryTokenizer tokenizer = null;
+        for (Group group : groups) {
+            if (!(group.tokenizer instanceof TokenBoundary)
+                    || (tokenizer != null && tokenizer.getClass() != group.tokenizer.getClass())) {
+                throw new UnsupportedOperationException("Stream matching needs CSV dictionaries with a single tokenizer implementing "
+                        + TokenBoundary.class.getName());
+            }
+            tokenizer = group.tokenizer;
+        }
+        return (TokenBoundary) tokenizer;
+    }
+
+    /**
+     * Matches every text character by character, documents are matched in parallel on the pool.
+     *
+     * @return matches of every text as a document, in the order of texts
+     */
+    public Matches matchAll(List<? extends CharSequence> texts) {
+        return matchAll(texts.size(), (state, document, matches) -> match(state, texts.get(document), matches));
+    }
+
+    /**
+     * Matches tokens of every text, documents are matched in parallel on the pool.
+     *
+     * @param tokenBegins start offsets of all tokens of the text at the same position
+     * @param tokenEnds   end offsets of all tokens of the text at the same position
+     * @return matches of every text as a document, in the order of texts
+     */
+    public Matches matchAll(List<? extends CharSequence> texts, List<int[]> tokenBegins, List<int[]> tokenEnds) {
+        if (texts.size() != tokenBegins.size() || texts.size() != tokenEnds.size()) {
+            throw new IllegalArgumentException("Every text needs token offsets");
+        }
+        return matchAll(texts.size(), (state, document, matches) -> {
+            int[] begins = tokenBegins.get(document);
+            matches.startDocument();
+            state.matchTokens(texts.get(document), begins, tokenEnds.get(document), begins.length, matches);
+        });
+    }
+
+    private Matches matchAll(int documents, DocumentMatcher matcher) {
+        Matches matches = new Matches();
+        if (pool == null || documents < 2) {
+            State state = newState();
+            for (int d = 0; d < documents; d++) {
+                matcher.match(state, d, matches);
+            }
+            return matches;
+        }
+        int batches = Math.min(documents, pool.getParallelism() * 4);
+        List<ForkJoinTask<Matches>> tasks = new ArrayList<>(batches);
+        for (int b = 0; b < batches; b++) {
+            int from = (int) ((long) documents * b / batches);
+            int to = (int) ((long) documents * (b + 1) / batches);
+            tasks.add(pool.submit(() -> {
+                State state = newState();
+                Matches batch = new Matches();
+                for (int d = from; d < to; d++) {
+                    matcher.match(state, d, batch);
+                }
+                return batch;
+            }));
+        }
+        for (ForkJoinTask<Matches> task : tasks) {
+            matches.addAll(task.join());
+        }
+        return matches;
+    }
+
+    boolean isParallel(int tokenCount) {
+        return pool != null && tokenCount >= parallelMinTokens;
+    }
+
+    /**
+     * @return every distinct normalizer of the dictionaries, matches depend only on the tokens normalized by them
+     */
+    TextNormalizer[] getNormalizers() {
+        return normalizers.clone();
+    }
+
+    private void check(State state) {
+        if (state.matcher != this) {
+            throw new IllegalArgumentException("State of another matcher");
+        }
+    }
+
+    /**
+     * Matches chunks of the token stream on the pool. Chunks are either windows of tokens or the given chunks, and
+     * each one starts matching early enough to complete the longest entry ending at its first own token. Every chunk
+     * records matches ending at its own tokens and the calling thread passes them on in document order, so matches
+     * are the same and in the same order as from sequential matching.
+     */
+    private void matchParallel(CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount,
+                               int[] chunkStarts, State state, Matches matches) {
+        int overlap = Math.max(0, getMaxEntryLength() - 1);
+        int[] starts = chunkStarts != null ? chunkStarts : windowChunks(tokenCount);
+        List<ForkJoinTask<MatchRecorder>> tasks = new ArrayList<>(starts.length);
+        for (int c = 0; c + 1 < starts.length; c++) {
+            int from = starts[c];
+            int to = starts[c + 1];
+            tasks.add(pool.submit(() -> matchChunk(text, tokenBegins, tokenEnds, Math.max(0, from - overlap), from, to)));
+        }
+        List<MatchRecorder> chunks = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<MatchRecorder> task : tasks) {
+            chunks.add(task.join());
+        }
+        state.replay(chunks, matches);
+    }
+
+    /**
+     * Matches tokens from first to the end of the chunk with matchers of its own,
+     * tokens before the chunk only open partial matches.
+     */
+    private MatchRecorder matchChunk(CharSequence text, int[] tokenBegins, int[] tokenEnds, int first, int from, int to) {
+        TokenMatcher[] matchers = new TokenMatcher[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            matchers[g] = newTokenMatcher(groups[g]);
+        }
+        StringBuilder token = new StringBuilder();
+        MatchRecorder recorder = new MatchRecorder();
+        MatchListener ignored = match -> {
+        };
+        for (int t = first; t < to; t++) {
+            int begin = tokenBegins[t];
+            int end = tokenEnds[t];
+            for (int g = 0; g < groups.length; g++) {
+                groups[g].normalizer.normalize(text, begin, end, token);
+                matchers[g].proceed(begin, end, token, t < from ? ignored : recorder);
+            }
+        }
+        return recorder;
+    }
+
+    /**
+     * @return first token of every chunk followed by the number of tokens
+     */
+    private static int[] windowChunks(int count) {
+        int[] starts = new int[(count + CHUNK_TOKENS - 1) / CHUNK_TOKENS + 1];
+        for (int c = 0; c < starts.length - 1; c++) {
+            starts[c] = c * CHUNK_TOKENS;
+        }
+        starts[starts.length - 1] = count;
+        return starts;
+    }
+
+    private int getMaxEntryLength() {
+        int length = maxEntryLength;
+        if (length < 0) {
+            length = 0;
+            for (Group group : groups) {
+                length = Math.max(length, group.binaryDictionary != null ?
+                        group.binaryDictionary.getMaxEntryLength() : group.dictionary.getMaxEntryLength());
+            }
+            maxEntryLength = length;
+        }
+        return length;
+    }
+
+    private TokenMatcher newTokenMatcher(Group group) {
+        if (group.binaryDictionary != null) {
+            return new BinaryDictionaryMatcher(group.binaryDictionary);
+        }
+        if (group.dictionary.getSnapshot() != null) {
+            if (fuzzyDistance > 0) {
+                throw new UnsupportedOperationException("Fuzzy matching does not support dictionaries with runtime updates");
+            }
+            // Matches the same entries as the automaton would
+            return new SnapshotMatcher(group.dictionary.getSnapshot());
+        }
+        if (fuzzyDistance > 0) {
+            return new FuzzyTreeMatcher(group.dictionary.getFuzzyIndex(), fuzzyDistance, fuzzyMinTokenLength);
+        }
+        return ahoCorasick ? new AhoCorasickMatcher(group.dictionary.getAutomaton()) : new TreeMatcher(group.dictionary.getTree());
+    }
+
+    /**
+     * @return key of the loaders whose dictionaries can be combined into one tree
+     */
+    static String groupKey(DictionaryLoader loader, boolean characterLevel) {
+        // Character level matcher delimits tokens of the whole tree by a single tokenizer
+        return loader.isCaseSensitive() + ":" + loader.isAccentSensitive()
+                + (characterLevel ? ":" + loader.getTokenizer().getClass().getName() : "");
+    }
+
+    /**
+     * Receives matches of a stream as they are completed.
+     */
+    public interface StreamListener {
+
+        /**
+         * @param offset  stream offset of the character the match offsets are relative to
+         * @param matches matches completed since the previous call, ordered as matches of a document.
+         *                Matches are reused after the call returns
+         */
+        void onMatches(long offset, Matches matches);
+    }
+
+    private interface DocumentMatcher {
+
+        void match(State state, int document, Matches matches);
+    }
+
+    /**
+     * Dictionaries with the same normalization, loaded into one tree which is matched once per token.
+     */
+    static final class Group {
+
+        private final SharedDictionary dictionary;
+        private final BinaryDictionary binaryDictionary;
+        private final TextNormalizer normalizer;
+        private final DictionaryTokenizer tokenizer;
+        // Matcher dictionary index of every dictionary in the tree
+        private final int[] dictionaries;
+        private final EntryTable entryTable;
+
+        Group(SharedDictionary dictionary, TextNormalizer normalizer, DictionaryTokenizer tokenizer, int[] dictionaries) {
+            this.dictionary = dictionary;
+            this.binaryDictionary = null;
+            this.normalizer = normalizer;
+            this.tokenizer = tokenizer;
+            this.dictionaries = dictionaries;
+            this.entryTable = dictionary.getEntryTable();
+        }
+
+        Group(BinaryDictionary binaryDictionary, TextNormalizer normalizer, int dictionary) {
+            this.dictionary = null;
+            this.binaryDictionary = binaryDictionary;
+            this.normalizer = normalizer;
+            this.tokenizer = null;
+            this.dictionaries = new int[]{dictionary};
+            this.entryTable = binaryDictionary;
+        }
+
+        private boolean isFrozen() {
+            return dictionary != null && dictionary.getTree().isFrozen();
+        }
+
+        private CharacterMatcher newCharacterMatcher() {
+            if (isFrozen()) {
+                throw new UnsupportedOperationException("Frozen dictionaries are matched only by the tree matcher");
+            }
+            if (binaryDictionary != null || !(tokenizer instanceof TokenBoundary)) {
+                throw new UnsupportedOperationException("Character level matching needs a CSV dictionary and a tokenizer implementing "
+                        + TokenBoundary.class.getName());
+            }
+            return new CharacterMatcher(dictionary.getCharacterTrie(), (TokenBoundary) tokenizer, normalizer);
+        }
+    }
+
+    /**
+     * Last tokens of a stream with their offsets, at most the given number. Token buffers are reused.
+     */
+    private static final class StreamTokens {
+
+        private final StringBuilder[] tokens;
+        private final int[] begins;
+        private final int[] ends;
+        // Position of the oldest token
+        private int first;
+        private int size;
+
+        private StreamTokens(int capacity) {
+            tokens = new StringBuilder[capacity];
+            begins = new int[capacity];
+            ends = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                tokens[i] = new StringBuilder();
+            }
+        }
+
+        private void add(CharSequence token, int begin, int end) {
+            if (tokens.length == 0) {
+                return;
+            }
+            int slot = (first + size) % tokens.length;
+            if (size == tokens.length) {
+                first = (first + 1) % tokens.length;
+            } else {
+                size++;
+            }
+            tokens[slot].setLength(0);
+            tokens[slot].append(token);
+            begins[slot] = begin;
+            ends[slot] = end;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private CharSequence getToken(int index) {
+            return tokens[(first + index) % tokens.length];
+        }
+
+        private int getBegin(int index) {
+            return begins[(first + index) % tokens.length];
+        }
+
+        private int getEnd(int index) {
+            return ends[(first + index) % tokens.length];
+        }
+
+        private void rebase(int delta) {
+            for (int i = 0; i < tokens.length; i++) {
+                begins[i] -= delta;
+                ends[i] -= delta;
+            }
+        }
+
+        private void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Matchers and buffers of one thread, which passes resolved matches on to the matches of the current document.
+     * Created by {@link #newState()} and kept by the caller for as long as it uses the matcher.
+     */
+    public static final class State implements MatchListener {
+
+        private final DictionaryMatcher matcher;
+        private final Group[] groups;
+        private final TokenMatcher[] tokenMatchers;
+        private CharacterMatcher[] characterMatchers;
+        private final OverlapResolver resolver;
+        private final StringBuilder token = new StringBuilder();
+        private Matches matches;
+        private Group group;
+        private boolean matchedTokens;
+
+        private State(DictionaryMatcher matcher) {
+            this.matcher = matcher;
+            this.groups = matcher.groups;
+            this.tokenMatchers = new TokenMatcher[groups.length];
+            for (int g = 0; g < groups.length; g++) {
+                tokenMatchers[g] = matcher.newTokenMatcher(groups[g]);
+            }
+            resolver = matcher.policy != OverlapResolver.Policy.ALL ?
+                    new OverlapResolver(matcher.policy, matcher.priorityColumn) : null;
+        }
+
+        private void matchTokens(CharSequence text, int[] tokenBegins, int[] tokenEnds, int tokenCount, Matches matches) {
+            start(matches, true);
+            MatchListener target = resolver != null ? resolver : this;
+            for (TokenMatcher matcher : tokenMatchers) {
+                matcher.reset();
+            }
+            for (int t = 0; t < tokenCount; t++) {
+                int begin = tokenBegins[t];
+                int end = tokenEnds[t];
+                int partialMatchStart = -1;
+                // Token is normalized and looked up once per distinct normalization, not once per dictionary
+                for (int g = 0; g < groups.length; g++) {
+                    groups[g].normalizer.normalize(text, begin, end, token);
+                    tokenMatchers[g].proceed(begin, end, token, target);
+                    if (resolver != null) {
+                        int groupStart = tokenMatchers[g].getPartialMatchStart();
+                        if (groupStart >= 0 && (partialMatchStart < 0 || groupStart < partialMatchStart)) {
+                            partialMatchStart = groupStart;
+                        }
+                    }
+                }
+                if (resolver != null) {
+                    resolver.advance(partialMatchStart >= 0 ? partialMatchStart : end, this);
+                }
+            }
+            finish();
+        }
+
+        private void matchStream(Reader reader, TokenBoundary boundary, int bufferSize, StreamListener listener) throws IOException {
+            Matches streamMatches = new Matches();
+            streamMatches.startDocument();
+            start(streamMatches, true);
+            MatchListener target = resolver != null ? resolver : this;
+            MatchListener ignored = match -> {
+            };
+            for (TokenMatcher matcher : tokenMatchers) {
+                matcher.reset();
+            }
+            // Tokens which may still start a match, replayed after offsets move
+            StreamTokens recent = new StreamTokens(Math.max(0, matcher.getMaxEntryLength() - 1));
+            char[] buffer = new char[bufferSize];
+            StringBuilder current = new StringBuilder();
+            int tokenBegin = -1;
+            boolean oversized = false;
+            char previous = 0;
+            // Stream offset of relative offset 0 and relative offset of the next character
+            long base = 0;
+            int position = 0;
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    boolean separator = boundary.isSeparator(c);
+                    if (tokenBegin >= 0 && (separator || boundary.isBoundary(previous, c))) {
+                        proceed(current, tokenBegin, position + i, oversized, recent, target);
+                        current.setLength(0);
+                        tokenBegin = -1;
+                        oversized = false;
+                    }
+                    if (!separator) {
+                        if (tokenBegin < 0) {
+                            tokenBegin = position + i;
+                        }
+                        if (current.length() < bufferSize) {
+                            current.append(c);
+                        } else {
+                            oversized = true;
+                        }
+                    }
+                    previous = c;
+                }
+                position += read;
+                listener.onMatches(base, streamMatches);
+                streamMatches.clear();
+                streamMatches.startDocument();
+                // Offsets start again at the earliest token a match may still start at
+                int delta = recent.size() > 0 ? recent.getBegin(0) : tokenBegin >= 0 ? tokenBegin : position;
+                base += delta;
+                position -= delta;
+                if (tokenBegin >= 0) {
+                    tokenBegin -= delta;
+                }
+                recent.rebase(delta);
+                if (resolver != null) {
+                    resolver.rebase(delta);
+                }
+                for (TokenMatcher matcher : tokenMatchers) {
+                    matcher.reset();
+                }
+                for (int t = 0; t < recent.size(); t++) {
+                    for (int g = 0; g < groups.length; g++) {
+                        groups[g].normalizer.normalize(recent.getToken(t), 0, recent.getToken(t).length(), token);
+                        tokenMatchers[g].proceed(recent.getBegin(t), recent.getEnd(t), token, ignored);
+                    }
+                }
+            }
+            if (tokenBegin >= 0) {
+                proceed(current, tokenBegin, position, oversized, recent, target);
+            }
+            finish();
+            listener.onMatches(base, streamMatches);
+        }
+
+        private void proceed(CharSequence text, int begin, int end, boolean oversized, StreamTokens recent, MatchListener target) {
+            if (oversized) {
+                for (TokenMatcher matcher : tokenMatchers) {
+                    matcher.reset();
+                }
+                recent.clear();
+                if (resolver != null) {
+                    resolver.advance(end, this);
+                }
+                return;
+            }
+            recent.add(text, begin, end);
+            int partialMatchStart = -1;
+            for (int g = 0; g < groups.length; g++) {
+                groups[g].normalizer.normalize(text, 0, text.length(), token);
+                tokenMatchers[g].proceed(begin, end, token, target);
+                if (resolver != null) {
+                    int groupStart = tokenMatchers[g].getPartialMatchStart();
+                    if (groupStart >= 0 && (partialMatchStart < 0 || groupStart < partialMatchStart)) {
+                        partialMatchStart = groupStart;
+                    }
+                }
+            }
+            if (resolver != null) {
+                resolver.advance(partialMatchStart >= 0 ? partialMatchStart : end, this);
+            }
+        }
+
+        private void matchCharacters(CharSequence text, Matches matches) {
+            if (characterMatchers == null) {
+                CharacterMatcher[] created = new CharacterMatcher[groups.length];
+                for (int g = 0; g < groups.length; g++) {
+                    created[g] = groups[g].newCharacterMatcher();
+                }
+                characterMatchers = created;
+            }
+            start(matches, false);
+            // Character level matches of a group come ordered by start, so none of the later ones starts before
+            // the current one. Matches of several groups are resolved at the end of the document
+            OverlapResolver resolver = this.resolver;
+            MatchListener target = resolver == null ? this : groups.length > 1 ? resolver : match -> {
+                resolver.advance(match.getStart(), this);
+                resolver.onMatch(match);
+            };
+            for (CharacterMatcher matcher : characterMatchers) {
+                matcher.match(text, target);
+            }
+            finish();
+        }
+
+        private void replay(List<MatchRecorder> chunks, Matches matches) {
+            start(matches, false);
+            if (resolver != null) {
+                MatchRecorder.replay(chunks, resolver, this);
+            } else {
+                for (MatchRecorder chunk : chunks) {
+                    chunk.replay(this);
+                }
+            }
+            finish();
+        }
+
+        private void start(Matches matches, boolean matchedTokens) {
+            this.matches = matches;
+            this.matchedTokens = matchedTokens;
+            if (resolver != null) {
+                resolver.reset();
+            }
+        }
+
+        private void finish() {
+            if (resolver != null) {
+                resolver.finish(this);
+            }
+            matches = null;
+        }
+
+        /**
+         * @return sum of the peak partial match counts of the tree matchers since the previous call, or -1 if the last
+         * document was not matched token by token by this state or not all dictionaries are matched by
+         * {@link TreeMatcher}, {@link FuzzyTreeMatcher} or {@link SnapshotMatcher}
+         */
+        int takePeakPartialMatchCount() {
+            int peak = matchedTokens ? 0 : -1;
+            for (TokenMatcher matcher : tokenMatchers) {
+                if (peak >= 0 && matcher instanceof TreeMatcher) {
+                    peak += ((TreeMatcher) matcher).takePeakPartialMatchCount();
+                } else if (peak >= 0 && matcher instanceof FuzzyTreeMatcher) {
+                    peak += ((FuzzyTreeMatcher) matcher).takePeakPartialMatchCount();
+                } else if (peak >= 0 && matcher instanceof SnapshotMatcher) {
+                    peak += ((SnapshotMatcher) matcher).takePeakPartialMatchCount();
+                } else {
+                    peak = -1;
+                }
+            }
+            return peak;
+        }
+
+        @Override
+        public void onMatch(TreeMatch match) {
+            EntryTable table = match.getEntryTable();
+            if (group == null || group.entryTable != table) {
+                group = findGroup(table);
+            }
+            for (int i = 0; i < match.getEntryCount(); i++) {
+                int entry = match.getEntry(i);
+                matches.add(match.getStart(), match.getEnd(), table, entry, group.dictionaries[table.getDictionary(entry)],
+                        match.getCost());
+            }
+        }
+
+        private Group findGroup(EntryTable table) {
+            for (Group group : groups) {
+                if (group.entryTable == table) {
+                    return group;
+                }
+            }
+            throw new IllegalStateException("Match of an unknown dictionary");
+        }
+    }
+
+    /**
+     * Loads CSV dictionaries for a standalone matcher. Dictionaries with the same normalization and tokenizer
+     * are combined into one tree. Loaded trees are not shared with {@link SharedDictionaries}.
+     */
+    public static final class Builder {
+
+        private final List<URL> locations = new ArrayList<>();
+        private final List<DictionaryLoader> loaders = new ArrayList<>();
+        private boolean ahoCorasick;
+        private boolean frozen;
+        private int fuzzyDistance;
+        private int fuzzyMinTokenLength;
+        private OverlapResolver.Policy policy = OverlapResolver.Policy.ALL;
+        private int priorityColumn = -1;
+        private ForkJoinPool pool;
+        private int parallelMinTokens = 100000;
+
+        /**
+         * Adds a CSV dictionary, dictionary indexes of matches follow the order dictionaries are added in.
+         */
+        public Builder addDictionary(URL location, DictionaryLoader loader) {
+            locations.add(location);
+            loaders.add(loader);
+            return this;
+        }
+
+        /**
+         * Matches tokens with Aho-Corasick automata instead of following partial matches in the trees.
+         * Both produce the same matches.
+         */
+        public Builder ahoCorasick(boolean ahoCorasick) {
+            this.ahoCorasick = ahoCorasick;
+            return this;
+        }
+
+        /**
+         * Freezes loaded trees into minimized graphs, see {@link lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree#freeze()}.
+         * Frozen trees take less memory and are matched only by the tree matcher on token offsets.
+         */
+        public Builder freeze(boolean frozen) {
+            this.frozen = frozen;
+            return this;
+        }
+
+        /**
+         * Lets every text token match a dictionary token within the Levenshtein distance, see {@link FuzzyTreeMatcher}.
+         * Fuzzy matches need token offsets and are matched by the tree.
+         *
+         * @param minTokenLength tokens shorter than it are matched exactly
+         */
+        public Builder fuzzy(int maxDistance, int minTokenLength) {
+            this.fuzzyDistance = maxDistance;
+            this.fuzzyMinTokenLength = minTokenLength;
+            return this;
+        }
+
+        /**
+         * @param priorityColumn CSV column holding numeric entry priority for
+         *                       {@link OverlapResolver.Policy#NON_OVERLAPPING}, -1 for none
+         */
+        public Builder overlapPolicy(OverlapResolver.Policy policy, int priorityColumn) {
+            this.policy = policy;
+            this.priorityColumn = priorityColumn;
+            return this;
+        }
+
+        /**
+         * Matches batches of documents and chunks of documents with at least parallelMinTokens tokens on pool.
+         * The pool is not shut down by the matcher.
+         */
+        public Builder parallel(ForkJoinPool pool, int parallelMinTokens) {
+            this.pool = pool;
+            this.parallelMinTokens = parallelMinTokens;
+            return this;
+        }
+
+        public DictionaryMatcher build() throws IOException {
+            if (locations.isEmpty()) {
+                throw new IllegalStateException("No dictionary added");
+            }
+            Map<String, List<Integer>> grouped = new LinkedHashMap<>();
+            for (int i = 0; i < loaders.size(); i++) {
+                grouped.computeIfAbsent(groupKey(loaders.get(i), true), key -> new ArrayList<>()).add(i);
+            }
+            List<Group> groups = new ArrayList<>();
+            for (List<Integer> indexes : grouped.values()) {
+                List<URL> groupLocations = new ArrayList<>();
+                List<DictionaryLoader> groupLoaders = new ArrayList<>();
+                for (int i : indexes) {
+                    groupLocations.add(locations.get(i));
+                    groupLoaders.add(loaders.get(i));
+                }
+                long start = System.currentTimeMillis();
+                SharedDictionary dictionary = new SharedDictionary(new DictionarySet(groupLocations, groupLoaders, frozen).load(),
+                        1, System.currentTimeMillis() - start);
+                DictionaryLoader loader = groupLoaders.get(0);
+                groups.add(new Group(dictionary, loader.getTextNormalizer(), loader.getTokenizer(),
+                        indexes.stream().mapToInt(Integer::intValue).toArray()));
+            }
+            return new DictionaryMatcher(groups, ahoCorasick, fuzzyDistance, fuzzyMinTokenLength, policy, priorityColumn,
+                    pool, parallelMinTokens);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Dictionaries loaded into one combined {@link DictionaryTree}, which share its vocabulary and the nodes
+ * of common phrases. Entries are tagged by the index of their dictionary in the set.
+ * Text tokens are normalized once for the whole tree, so all loaders of a set must have the same
+ * case and accent sensitivity, while tokenizers, CSV settings and kept columns may differ.
+ * A location may be a directory or a glob pattern of local files, whose shards are loaded as one dictionary.
+ * Sets with equal locations, loader settings and freezing produce equal trees, so set is
+ * the {@link SharedDictionaries} key.
+ */
+public final class DictionarySet {
+
+    private final List<URL> locations;
+    private final List<String> externalForms;
+    private final List<DictionaryLoader> loaders;
+    private final boolean frozen;
+
+    public DictionarySet(URL location, DictionaryLoader loader) {
+        this(Collections.singletonList(location), Collections.singletonList(loader));
+    }
+
+    /**
+     * @param loaders loader of the dictionary at the same position in locations
+     */
+    public DictionarySet(List<URL> locations, List<DictionaryLoader> loaders) {
+        this(locations, loaders, false);
+    }
+
+    /**
+     * @param loaders loader of the dictionary at the same position in locations
+     * @param frozen  whether the loaded tree is frozen, see {@link DictionaryTree#freeze()}
+     */
+    public DictionarySet(List<URL> locations, List<DictionaryLoader> loaders, boolean frozen) {
+        if (locations.isEmpty() || locations.size() != loaders.size()) {
+            throw new IllegalArgumentException("Every dictionary location needs a loader");
+        }
+        for (DictionaryLoader loader : loaders) {
+            if (loader.isCaseSensitive() != loaders.get(0).isCaseSensitive()
+                    || loader.isAccentSensitive() != loaders.get(0).isAccentSensitive()) {
+                throw new IllegalArgumentException("Combined dictionaries must have the same case and accent sensitivity");
+            }
+        }
+        this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        this.externalForms = locations.stream().map(URL::toExternalForm).collect(Collectors.toList());
+        this.loaders = Collections.unmodifiableList(new ArrayList<>(loaders));
+        this.frozen = frozen;
+    }
+
+    /**
+     * Loads every dictionary of the set, entries of a single dictionary are loaded exactly as by its loader.
+     * Locations are resolved to their shards on every load, see {@link DictionarySource#resolve(URL)}.
+     */
+    public DictionaryTree load() throws IOException {
+        List<URL> shards = new ArrayList<>();
+        List<Integer> dictionaries = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            for (URL shard : DictionarySource.resolve(locations.get(i))) {
+                shards.add(shard);
+                dictionaries.add(i);
+            }
+        }
+        DictionaryTree tree = shards.size() == 1 ? loaders.get(0).load(shards.get(0)) : loadCombined(shards, dictionaries);
+        if (frozen) {
+            tree.freeze();
+        }
+        return tree;
+    }
+
+    /**
+     * @param dictionaries index of the dictionary of the shard at the same position in shards
+     */
+    private DictionaryTree loadCombined(List<URL> shards, List<Integer> dictionaries) throws IOException {
+        int[] phraseColumns = new int[size()];
+        TreeSet<Integer> columns = new TreeSet<>();
+        boolean allColumns = false;
+        for (int i = 0; i < size(); i++) {
+            DictionaryLoader loader = loaders.get(i);
+            phraseColumns[i] = loader.getPhraseColumn();
+            if (loader.getColumns() == null) {
+                allColumns = true;
+            } else {
+                for (int column : loader.getColumns()) {
+                    columns.add(column);
+                }
+            }
+        }
+        DictionaryTree tree = new DictionaryTree(phraseColumns,
+                allColumns ? null : columns.stream().mapToInt(Integer::intValue).toArray());
+        // One pool parses the records of every shard, the set is loaded on the threads of its first loader
+        int threads = loaders.get(0).getThreads();
+        ForkJoinPool pool = loaders.get(0).newPool();
+        try {
+            if (threads > 1) {
+                // Later shards are read and decoded while the tree is built of the earlier ones
+                List<String> encodings = dictionaries.stream().map(i -> loaders.get(i).getEncoding()).collect(Collectors.toList());
+                try (DictionarySource.Prefetch prefetch = new DictionarySource.Prefetch(shards, encodings, threads)) {
+                    for (int i = 0; i < shards.size(); i++) {
+                        int dictionary = dictionaries.get(i);
+                        loaders.get(dictionary).load(prefetch.get(i), tree, dictionary, pool);
+                    }
+                }
+            } else {
+                for (int i = 0; i < shards.size(); i++) {
+                    int dictionary = dictionaries.get(i);
+                    loaders.get(dictionary).load(shards.get(i), tree, dictionary, pool);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        tree.compact();
+        return tree;
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    public List<URL> getLocations() {
+        return locations;
+    }
+
+    public List<DictionaryLoader> getLoaders() {
+        return loaders;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    boolean contains(URL location) {
+        return indexOf(location) >= 0;
+    }
+
+    /**
+     * @param location configured location of the dictionary, such as a directory or a glob pattern, or any file
+     *                 it currently resolves to
+     * @return index entries of the dictionary are tagged with or -1 if the set does not have the location
+     */
+    int indexOf(URL location) {
+        int index = externalForms.indexOf(location.toExternalForm());
+        if (index >= 0) {
+            return index;
+        }
+        Path path = DictionarySource.isPatternLocation(location) ? null : DictionarySource.toPath(location);
+        if (path == null) {
+            return -1;
+        }
+        for (int i = 0; i < size(); i++) {
+            if (isSameFile(locations.get(i), path)) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size(); i++) {
+            try {
+                for (URL shard : DictionarySource.resolve(locations.get(i))) {
+                    if (isSameFile(shard, path)) {
+                        return i;
+                    }
+                }
+            } catch (IOException e) {
+                // Location with no files has none of the path
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSameFile(URL location, Path path) {
+        Path other = DictionarySource.isPatternLocation(location) ? null : DictionarySource.toPath(location);
+        return other != null && other.toAbsolutePath().normalize().equals(path.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DictionarySet that = (DictionarySet) o;
+        return frozen == that.frozen && externalForms.equals(that.externalForms) && loaders.equals(that.loaders);
+    }
+
+    @Override
+    public int hashCode() {
+        return (externalForms.hashCode() * 31 + loaders.hashCode()) * 31 + Boolean.hashCode(frozen);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", externalForms);
+    }
+}
@@ -0,0 +1,300 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Where dictionary text comes from: a dictionary location may be a list of locations separated by ',', a local
+ * directory (every file in it) or a glob pattern of local files (e.g. {@code /data/gazetteer/*.csv.gz}), each
+ * expanding to shards which are loaded as one dictionary. Shards are opened with large buffered reads and gzip
+ * compressed ones, recognized by their first bytes, are decompressed on the fly. Other compression formats
+ * (zstd, xz) have no decoder in the JDK and must be decompressed before loading.
+ */
+final class DictionarySource {
+
+    static final int BUFFER_SIZE = 1 << 20;
+    // Characters of a block read ahead by Prefetch, and number of blocks kept per shard
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BLOCKS = 8;
+    private static final char[] END = new char[0];
+
+    private DictionarySource() {
+    }
+
+    /**
+     * @return true if the location is a glob pattern rather than a single location
+     */
+    static boolean isPattern(String location) {
+        return location.indexOf('*') >= 0 || location.indexOf('?') >= 0 || location.indexOf('[') >= 0
+                || location.indexOf('{') >= 0;
+    }
+
+    /**
+     * @param pattern glob pattern of local files, optionally with the "file:" prefix
+     * @return matching regular files in path order
+     * @throws FileNotFoundException if no file matches
+     */
+    static List<URL> glob(String pattern) throws IOException {
+        String path = pattern.startsWith("file:") ? pattern.substring("file:".length()) : pattern;
+        // Directories up to the first segment with a pattern are walked from
+        String[] segments = path.replace(File.separatorChar, '/').split("/", -1);
+        StringBuilder base = new StringBuilder();
+        for (String segment : segments) {
+            if (isPattern(segment)) {
+                break;
+            }
+            base.append(segment).append('/');
+        }
+        Path root = Paths.get(base.length() > 0 ? base.toString() : ".");
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+        List<URL> files = new ArrayList<>();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path file : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    if (matcher.matches(file) || matcher.matches(file.normalize())) {
+                        files.add(file.toUri().toURL());
+                    }
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("No dictionary file matches '" + pattern + "'");
+        }
+        return files;
+    }
+
+    /**
+     * @return files of a local directory in name order, not hidden ones, or the location itself if it is not a directory
+     */
+    static List<URL> expand(URL location) throws IOException {
+        Path directory = toPath(location);
+        if (directory == null || !Files.isDirectory(directory)) {
+            return Arrays.asList(location);
+        }
+        List<URL> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path file : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                if (!file.getFileName().toString().startsWith(".")) {
+                    files.add(file.toUri().toURL());
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("Dictionary directory '" + location + "' has no files");
+        }
+        return files;
+    }
+
+    /**
+     * @return location of the local files matching a glob pattern, to be resolved by {@link #resolve(URL)}
+     */
+    static URL pattern(String pattern) throws IOException {
+        return new URL(pattern.startsWith("file:") ? pattern : "file:" + pattern);
+    }
+
+    /**
+     * Resolves a configured location to its current shards, so files added to a directory or matching
+     * a glob pattern since the last call are included.
+     *
+     * @return files matching a pattern location, see {@link #pattern(String)}, files of a local directory
+     * or the location itself
+     */
+    static List<URL> resolve(URL location) throws IOException {
+        if (isPatternLocation(location)) {
+            return glob(location.getFile());
+        }
+        return expand(location);
+    }
+
+    static boolean isPatternLocation(URL location) {
+        return "file".equals(location.getProtocol()) && isPattern(location.getFile());
+    }
+
+    /**
+     * Opens the location for reading, local files through a file channel. Gzip streams are decompressed.
+     */
+    static InputStream open(URL location) throws IOException {
+        Path file = toPath(location);
+        InputStream raw = file != null && Files.isRegularFile(file) ?
+                Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)) : location.openStream();
+        BufferedInputStream buffered = new BufferedInputStream(raw, BUFFER_SIZE);
+        try {
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+            if (first == 0x1f && second == 0x8b) {
+                return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            return buffered;
+        } catch (IOException | RuntimeException e) {
+            buffered.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return local file or directory of the location, null if it is not a local path
+     */
+    static Path toPath(URL location) {
+        if (!"file".equals(location.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(location.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads, decompresses and decodes shards ahead on a few threads, while the loading thread builds the tree
+     * of the previous ones in order. Every shard keeps at most a few blocks of characters read ahead, so memory
+     * does not grow with shard sizes. Shards are read in order, a reader thread waits for the earlier ones
+     * to be taken before it reads more than the blocks.
+     */
+    static final class Prefetch implements Closeable {
+
+        private final ExecutorService threads;
+        private final List<BlockReader> readers = new ArrayList<>();
+
+        /**
+         * @param encodings encoding of the shard at the same position in locations
+         */
+        Prefetch(List<URL> locations, List<String> encodings, int threadCount) {
+            this.threads = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, locations.size())), runnable -> {
+                Thread thread = new Thread(runnable, "dictionary-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < locations.size(); i++) {
+                BlockReader reader = new BlockReader();
+                URL location = locations.get(i);
+                String encoding = encodings.get(i);
+                readers.add(reader);
+                threads.execute(() -> reader.fill(location, encoding));
+            }
+        }
+
+        /**
+         * @return characters of the shard at the index, to be read by a single thread
+         */
+        Reader get(int index) {
+            return readers.get(index);
+        }
+
+        @Override
+        public void close() {
+            for (BlockReader reader : readers) {
+                reader.close();
+            }
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Reader of character blocks filled by another thread.
+     */
+    private static final class BlockReader extends Reader {
+
+        private final BlockingQueue<char[]> blocks = new ArrayBlockingQueue<>(BLOCKS);
+        private volatile IOException failure;
+        private volatile boolean closed;
+        private char[] block;
+        private int blockLength;
+        private int position;
+
+        private void fill(URL location, String encoding) {
+            try (Reader reader = new InputStreamReader(open(location), encoding)) {
+                while (!closed) {
+                    char[] read = new char[BLOCK_SIZE];
+                    int length = 0;
+                    int count;
+                    while (length < read.length && (count = reader.read(read, length, read.length - length)) >= 0) {
+                        length += count;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                    blocks.put(length < read.length ? Arrays.copyOf(read, length) : read);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("Dictionary '" + location + "' reading was interrupted");
+            } catch (RuntimeException e) {
+                failure = new IOException("Failed to read dictionary '" + location + "'", e);
+            }
+            try {
+                if (!closed) {
+                    blocks.put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (block == null || position == blockLength) {
+                if (block == END) {
+                    return -1;
+                }
+                try {
+                    block = blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                blockLength = block.length;
+                position = 0;
+                if (block == END) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+            }
+            int count = Math.min(length, blockLength - position);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            blocks.clear();
+        }
+    }
+}
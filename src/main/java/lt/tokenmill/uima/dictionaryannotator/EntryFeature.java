@@ -0,0 +1,327 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.impl.LowLevelCAS;
+
+import java.util.Arrays;
+
+/**
+ * Sets annotation feature from a CSV column of the matched entry. Feature code is resolved once per type system
+ * and column values are converted to the feature range type once per distinct value,
+ * so annotating a match costs a single low level CAS call per feature.
+ * Features of primitive array types (e.g. uima.cas.StringArray) get the values of all entries of a span,
+ * see {@link #set(LowLevelCAS, int, Matches, int[], int, int)}.
+ */
+final class EntryFeature {
+
+    private static final int STRING = 0;
+    private static final int INTEGER = 1;
+    private static final int LONG = 2;
+    private static final int SHORT = 3;
+    private static final int BYTE = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int BOOLEAN = 7;
+    // Value is set through FeatureStructure#setFeatureValueFromString, which also reports invalid values
+    private static final int GENERIC = 8;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte CONVERTED = 1;
+    private static final byte INVALID = 2;
+
+    private final int column;
+    private final Feature feature;
+    private final int featureCode;
+    // Kind of the feature or of its array elements
+    private final int kind;
+    private final boolean array;
+    private final int rangeCode;
+
+    private EntryTable table;
+    private byte[] states;
+    private long[] numbers;
+    private String[] strings;
+
+    EntryFeature(int column, Feature feature, LowLevelCAS cas) {
+        this.column = column;
+        this.feature = feature;
+        this.featureCode = cas.ll_getTypeSystem().ll_getCodeForFeature(feature);
+        String range = feature.getRange().getName();
+        int elementKind = elementKind(range);
+        this.array = elementKind >= 0;
+        this.kind = array ? elementKind : kind(range);
+        this.rangeCode = cas.ll_getTypeSystem().ll_getCodeForType(feature.getRange());
+    }
+
+    /**
+     * @return true if the feature is a primitive array, which gets a value of every entry of a span
+     */
+    boolean isArray() {
+        return array;
+    }
+
+    /**
+     * Sets the feature of a single entry, array features get an array of one value.
+     *
+     * @throws AnalysisEngineProcessException if an array element value is not valid for its type
+     */
+    void set(LowLevelCAS cas, int annotation, EntryTable table, int entry) throws AnalysisEngineProcessException {
+        if (array) {
+            int values = createArray(cas, 1);
+            setElement(cas, values, 0, table, entry);
+            cas.ll_setRefValue(annotation, featureCode, values);
+            return;
+        }
+        int valueId = resolve(table, entry);
+        if (valueId < 0) {
+            return;
+        }
+        if (kind == STRING) {
+            String value = strings[valueId];
+            if (value == null) {
+                value = strings[valueId] = table.getValue(entry, column);
+            }
+            cas.ll_setStringValue(annotation, featureCode, value);
+            return;
+        }
+        if (states[valueId] == INVALID) {
+            FeatureStructure fs = cas.ll_getFSForRef(annotation);
+            fs.setFeatureValueFromString(feature, table.getValue(entry, column));
+            return;
+        }
+        long number = numbers[valueId];
+        switch (kind) {
+            case INTEGER:
+                cas.ll_setIntValue(annotation, featureCode, (int) number);
+                break;
+            case LONG:
+                cas.ll_setLongValue(annotation, featureCode, number);
+                break;
+            case SHORT:
+                cas.ll_setShortValue(annotation, featureCode, (short) number);
+                break;
+            case BYTE:
+                cas.ll_setByteValue(annotation, featureCode, (byte) number);
+                break;
+            case FLOAT:
+                cas.ll_setFloatValue(annotation, featureCode, Float.intBitsToFloat((int) number));
+                break;
+            case DOUBLE:
+                cas.ll_setDoubleValue(annotation, featureCode, Double.longBitsToDouble(number));
+                break;
+            case BOOLEAN:
+                cas.ll_setBooleanValue(annotation, featureCode, number != 0);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected feature kind " + kind);
+        }
+    }
+
+    /**
+     * Sets the feature of the entries of a span: array features get the values of all entries in the given order,
+     * with the default value where an entry has none, other features the value of the first entry.
+     *
+     * @param indexes matches of the span are indexes[from] until indexes[from + count]
+     * @throws AnalysisEngineProcessException if an array element value is not valid for its type
+     */
+    void set(LowLevelCAS cas, int annotation, Matches matches, int[] indexes, int from, int count)
+            throws AnalysisEngineProcessException {
+        if (!array) {
+            set(cas, annotation, matches.getEntryTable(indexes[from]), matches.getEntry(indexes[from]));
+            return;
+        }
+        int values = createArray(cas, count);
+        for (int i = 0; i < count; i++) {
+            setElement(cas, values, i, matches.getEntryTable(indexes[from + i]), matches.getEntry(indexes[from + i]));
+        }
+        cas.ll_setRefValue(annotation, featureCode, values);
+    }
+
+    private int createArray(LowLevelCAS cas, int length) {
+        switch (kind) {
+            case STRING:
+            case INTEGER:
+            case FLOAT:
+                // Heap arrays have no creation method of their own
+                return cas.ll_createArray(rangeCode, length);
+            case LONG:
+                return cas.ll_createLongArray(length);
+            case SHORT:
+                return cas.ll_createShortArray(length);
+            case BYTE:
+                return cas.ll_createByteArray(length);
+            case DOUBLE:
+                return cas.ll_createDoubleArray(length);
+            case BOOLEAN:
+                return cas.ll_createBooleanArray(length);
+            default:
+                throw new IllegalStateException("Unexpected array feature kind " + kind);
+        }
+    }
+
+    private void setElement(LowLevelCAS cas, int values, int index, EntryTable table, int entry)
+            throws AnalysisEngineProcessException {
+        int valueId = resolve(table, entry);
+        if (valueId < 0) {
+            return;
+        }
+        if (kind == STRING) {
+            String value = strings[valueId];
+            if (value == null) {
+                value = strings[valueId] = table.getValue(entry, column);
+            }
+            cas.ll_setStringArrayValue(values, index, value);
+            return;
+        }
+        if (states[valueId] == INVALID) {
+            // Array elements have no string setter which would report it, as a scalar feature does
+            throw new AnalysisEngineProcessException(new NumberFormatException("Value '" + table.getValue(entry, column)
+                    + "' of column " + column + " is not valid for feature '" + feature.getName() + "'"));
+        }
+        long number = numbers[valueId];
+        switch (kind) {
+            case INTEGER:
+                cas.ll_setIntArrayValue(values, index, (int) number);
+                break;
+            case LONG:
+                cas.ll_setLongArrayValue(values, index, number);
+                break;
+            case SHORT:
+                cas.ll_setShortArrayValue(values, index, (short) number);
+                break;
+            case BYTE:
+                cas.ll_setByteArrayValue(values, index, (byte) number);
+                break;
+            case FLOAT:
+                cas.ll_setFloatArrayValue(values, index, Float.intBitsToFloat((int) number));
+                break;
+            case DOUBLE:
+                cas.ll_setDoubleArrayValue(values, index, Double.longBitsToDouble(number));
+                break;
+            default:
+                cas.ll_setBooleanArrayValue(values, index, number != 0);
+        }
+    }
+
+    /**
+     * @return id of the entry value in the column, converted unless the feature is a string, or -1 if there is none
+     */
+    private int resolve(EntryTable table, int entry) {
+        int valueId = table.getValueId(entry, column);
+        if (valueId < 0) {
+            return -1;
+        }
+        if (table != this.table || valueId >= states.length) {
+            bind(table);
+        }
+        if (kind != STRING && states[valueId] == UNKNOWN) {
+            convert(table, entry, valueId);
+        }
+        return valueId;
+    }
+
+    private void bind(EntryTable table) {
+        int count = table.getValueCount(column);
+        if (table != this.table) {
+            this.table = table;
+            this.states = new byte[count];
+            this.numbers = kind != STRING ? new long[count] : null;
+            this.strings = kind == STRING ? new String[count] : null;
+        } else {
+            this.states = Arrays.copyOf(states, count);
+            this.numbers = numbers != null ? Arrays.copyOf(numbers, count) : null;
+            this.strings = strings != null ? Arrays.copyOf(strings, count) : null;
+        }
+    }
+
+    private void convert(EntryTable table, int entry, int valueId) {
+        if (kind == GENERIC) {
+            states[valueId] = INVALID;
+            return;
+        }
+        String value = table.getValue(entry, column);
+        try {
+            long number;
+            switch (kind) {
+                case INTEGER:
+                    number = Integer.parseInt(value);
+                    break;
+                case LONG:
+                    number = Long.parseLong(value);
+                    break;
+                case SHORT:
+                    number = Short.parseShort(value);
+                    break;
+                case BYTE:
+                    number = Byte.parseByte(value);
+                    break;
+                case FLOAT:
+                    number = Float.floatToRawIntBits(Float.parseFloat(value));
+                    break;
+                case DOUBLE:
+                    number = Double.doubleToRawLongBits(Double.parseDouble(value));
+                    break;
+                default:
+                    number = Boolean.parseBoolean(value) ? 1 : 0;
+            }
+            numbers[valueId] = number;
+            states[valueId] = CONVERTED;
+        } catch (NumberFormatException e) {
+            states[valueId] = INVALID;
+        }
+    }
+
+    private static int kind(String range) {
+        switch (range) {
+            case CAS.TYPE_NAME_STRING:
+                return STRING;
+            case CAS.TYPE_NAME_INTEGER:
+                return INTEGER;
+            case CAS.TYPE_NAME_LONG:
+                return LONG;
+            case CAS.TYPE_NAME_SHORT:
+                return SHORT;
+            case CAS.TYPE_NAME_BYTE:
+                return BYTE;
+            case CAS.TYPE_NAME_FLOAT:
+                return FLOAT;
+            case CAS.TYPE_NAME_DOUBLE:
+                return DOUBLE;
+            case CAS.TYPE_NAME_BOOLEAN:
+                return BOOLEAN;
+            default:
+                // String subtypes with allowed values are validated by the CAS
+                return GENERIC;
+        }
+    }
+
+    /**
+     * @return kind of the array elements or -1 if the range is not a primitive array
+     */
+    private static int elementKind(String range) {
+        switch (range) {
+            case CAS.TYPE_NAME_STRING_ARRAY:
+                return STRING;
+            case CAS.TYPE_NAME_INTEGER_ARRAY:
+                return INTEGER;
+            case CAS.TYPE_NAME_LONG_ARRAY:
+                return LONG;
+            case CAS.TYPE_NAME_SHORT_ARRAY:
+                return SHORT;
+            case CAS.TYPE_NAME_BYTE_ARRAY:
+                return BYTE;
+            case CAS.TYPE_NAME_FLOAT_ARRAY:
+                return FLOAT;
+            case CAS.TYPE_NAME_DOUBLE_ARRAY:
+                return DOUBLE;
+            case CAS.TYPE_NAME_BOOLEAN_ARRAY:
+                return BOOLEAN;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+
+import java.util.Arrays;
+
+/**
+ * Matched entries of one or more documents kept in primitive arrays: start and end offsets, entry id in the
+ * {@link EntryTable} of the match, index of the dictionary the entry comes from, in the order dictionaries were
+ * given to {@link DictionaryMatcher}, and edit cost of fuzzy matches. Every matched entry is a separate match, even if several entries have the same
+ * phrase. Matches of a document follow the matches of previous documents. Buffers are reused after {@link #clear()}.
+ */
+public final class Matches {
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] entries = new int[64];
+    private int[] dictionaries = new int[64];
+    private int[] costs = new int[64];
+    private EntryTable[] tables = new EntryTable[64];
+    private int size;
+    // First match of every document
+    private int[] documentStarts = new int[8];
+    private int documentCount;
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return id of the matched entry in {@link #getEntryTable(int)}
+     */
+    public int getEntry(int index) {
+        return entries[index];
+    }
+
+    /**
+     * @return index of the dictionary the matched entry comes from
+     */
+    public int getDictionary(int index) {
+        return dictionaries[index];
+    }
+
+    /**
+     * @return number of character edits between the matched text and the entry, 0 for an exact match
+     */
+    public int getCost(int index) {
+        return costs[index];
+    }
+
+    public EntryTable getEntryTable(int index) {
+        return tables[index];
+    }
+
+    /**
+     * @param column CSV column index
+     * @return value of the column of the matched entry or null
+     */
+    public String getValue(int index, int column) {
+        return tables[index].getValue(entries[index], column);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @return index of the first match of the document, matches of the document end at the start of the next one,
+     * start of document {@link #getDocumentCount()} is {@link #size()}
+     */
+    public int getDocumentStart(int document) {
+        return document < documentCount ? documentStarts[document] : size;
+    }
+
+    /**
+     * @return copy of the start offsets of all matches
+     */
+    public int[] getStarts() {
+        return Arrays.copyOf(starts, size);
+    }
+
+    /**
+     * @return copy of the end offsets of all matches
+     */
+    public int[] getEnds() {
+        return Arrays.copyOf(ends, size);
+    }
+
+    /**
+     * @return copy of the entry ids of all matches
+     */
+    public int[] getEntries() {
+        return Arrays.copyOf(entries, size);
+    }
+
+    /**
+     * @return copy of the dictionary indexes of all matches
+     */
+    public int[] getDictionaries() {
+        return Arrays.copyOf(dictionaries, size);
+    }
+
+    /**
+     * @return copy of the edit costs of all matches
+     */
+    public int[] getCosts() {
+        return Arrays.copyOf(costs, size);
+    }
+
+    /**
+     * Drops all documents and matches, buffers are kept for reuse.
+     */
+    public void clear() {
+        Arrays.fill(tables, 0, size, null);
+        size = 0;
+        documentCount = 0;
+    }
+
+    /**
+     * Starts a new document, matches added later belong to it.
+     */
+    void startDocument() {
+        if (documentCount == documentStarts.length) {
+            documentStarts = Arrays.copyOf(documentStarts, documentCount * 2);
+        }
+        documentStarts[documentCount++] = size;
+    }
+
+    void add(int start, int end, EntryTable table, int entry, int dictionary, int cost) {
+        if (size == starts.length) {
+            grow(size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        entries[size] = entry;
+        dictionaries[size] = dictionary;
+        costs[size] = cost;
+        tables[size] = table;
+        size++;
+    }
+
+    /**
+     * Appends all documents of other matches.
+     */
+    void addAll(Matches other) {
+        if (size + other.size > starts.length) {
+            grow(Math.max(starts.length * 2, size + other.size));
+        }
+        for (int d = 0; d < other.documentCount; d++) {
+            startDocument();
+            documentStarts[documentCount - 1] = size + other.documentStarts[d];
+        }
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.ends, 0, ends, size, other.size);
+        System.arraycopy(other.entries, 0, entries, size, other.size);
+        System.arraycopy(other.dictionaries, 0, dictionaries, size, other.size);
+        System.arraycopy(other.costs, 0, costs, size, other.size);
+        System.arraycopy(other.tables, 0, tables, size, other.size);
+        size += other.size;
+    }
+
+    private void grow(int capacity) {
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        entries = Arrays.copyOf(entries, capacity);
+        dictionaries = Arrays.copyOf(dictionaries, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        tables = Arrays.copyOf(tables, capacity);
+    }
+}
@@ -0,0 +1,261 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionarySnapshot;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dictionary which can be replaced by a newer version while annotators are using it.
+ * <p>
+ * New version is built in the background and published with a single volatile write only when it is complete,
+ * readers take {@link #current()} once per document and keep using that version until they are done with it.
+ * All reloads in the process run one after another on a single daemon thread, so at most one tree is under
+ * construction at a time, and reload requests made while a load is pending are served by that load.
+ * Combined dictionaries of a {@link DictionarySet} are reloaded together when any of their files changes.
+ * <p>
+ * Entries can also be added and removed without a reload. Every update publishes a new version which shares
+ * the loaded tree and all earlier updates with the previous one, see {@link DictionarySnapshot}, so annotators
+ * matching a document are not blocked and keep seeing the entries of the version they started with.
+ * Updates are kept in memory only, a reload replaces them with the content of the files. Fuzzy and character level
+ * matching need the loaded tree itself, annotators using them lock updates, see {@link #lockUpdates()}.
+ */
+public class ReloadableDictionary {
+
+    private static final Logger LOGGER = UIMAFramework.getLogger(ReloadableDictionary.class);
+
+    private static final ScheduledExecutorService RELOADER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dictionary-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DictionarySet dictionaries;
+    // Whether every dictionary is a local file, directory or glob pattern
+    private final boolean local;
+    private final AtomicLong requested = new AtomicLong();
+    private volatile SharedDictionary current;
+    // Number of readers which match the loaded tree only
+    private int updateLocks;
+
+    // Accessed only from the reloader thread after construction
+    private long served;
+    private String loadedStamp;
+    private String seenStamp;
+
+    private ScheduledFuture<?> watch;
+    private long watchInterval;
+
+    ReloadableDictionary(DictionarySet dictionaries) throws IOException {
+        this.dictionaries = dictionaries;
+        this.local = dictionaries.getLocations().stream().allMatch(location ->
+                DictionarySource.isPatternLocation(location) || DictionarySource.toPath(location) != null);
+        this.loadedStamp = stamp();
+        long start = System.currentTimeMillis();
+        DictionaryTree tree = dictionaries.load();
+        this.current = new SharedDictionary(tree, 1, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return latest completely loaded version
+     */
+    public SharedDictionary current() {
+        return current;
+    }
+
+    /**
+     * Adds an entry which annotators match from their next document.
+     *
+     * @param location location of the dictionary in the set the entry is added to, as configured (a directory
+     *                 or a glob pattern of shards) or any of its shards
+     * @param record   CSV record of the entry, as it would be read from the dictionary file
+     * @return version with the entry
+     * @throws IllegalArgumentException if the set has no such dictionary, the entry phrase has no tokens
+     *                                  or the set is frozen
+     * @throws IllegalStateException    if updates are locked
+     */
+    public synchronized SharedDictionary addEntry(URL location, String[] record) {
+        checkUpdatable();
+        int dictionary = indexOf(location);
+        DictionaryLoader loader = dictionaries.getLoaders().get(dictionary);
+        if (record.length <= loader.getPhraseColumn()) {
+            throw new IllegalArgumentException("Entry has no phrase column " + loader.getPhraseColumn());
+        }
+        SharedDictionary previous = current;
+        return update(previous, snapshot(previous).add(loader.tokenize(record), record, dictionary), "Added",
+                record[loader.getPhraseColumn()]);
+    }
+
+    /**
+     * Removes every entry of the dictionary with the phrase, loaded or added, from the next document on.
+     *
+     * @param location location of the dictionary in the set the entries are removed from, as configured
+     *                 or any of its shards
+     * @return version without the entries, the current one if there were none
+     * @throws IllegalArgumentException if the set has no such dictionary or the set is frozen
+     * @throws IllegalStateException    if updates are locked
+     */
+    public synchronized SharedDictionary removeEntry(URL location, String phrase) {
+        checkUpdatable();
+        int dictionary = indexOf(location);
+        DictionaryLoader loader = dictionaries.getLoaders().get(dictionary);
+        SharedDictionary previous = current;
+        DictionarySnapshot snapshot = snapshot(previous);
+        DictionarySnapshot updated = snapshot.remove(loader.tokenize(phrase), dictionary);
+        if (updated == snapshot) {
+            return previous;
+        }
+        return update(previous, updated, "Removed", phrase);
+    }
+
+    /**
+     * Rejects entry updates until {@link #unlockUpdates()}, for a reader which can not match them.
+     * Reloads are not affected, they replace the tree.
+     *
+     * @throws IllegalStateException if the current version already has updates
+     */
+    public synchronized void lockUpdates() {
+        if (current.getSnapshot() != null) {
+            throw new IllegalStateException("Dictionary '" + dictionaries
+                    + "' has runtime updates, which fuzzy and character level matching do not support");
+        }
+        updateLocks++;
+    }
+
+    public synchronized void unlockUpdates() {
+        if (updateLocks > 0) {
+            updateLocks--;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if updates are locked
+     */
+    synchronized void checkUpdatable() {
+        if (updateLocks > 0) {
+            throw new IllegalStateException("Dictionary '" + dictionaries
+                    + "' is used by fuzzy or character level matching, which do not support runtime updates");
+        }
+    }
+
+    /**
+     * Loads the dictionary again in the background. Current version stays in use until the new one is loaded,
+     * and if loading fails it is kept.
+     *
+     * @return version which is current after the reload
+     */
+    public Future<SharedDictionary> reload() {
+        long request = requested.incrementAndGet();
+        return RELOADER.submit(() -> {
+            if (request > served) {
+                served = requested.get();
+                load();
+            }
+            return current;
+        });
+    }
+
+    /**
+     * Starts checking the dictionary files for modifications. Directories and glob patterns are resolved again
+     * on every check, so added and removed shards are modifications too. Files are reloaded once their list, sizes
+     * and modification times stay the same for one interval, so a file which is still being written is not picked up.
+     * Only local files can be watched. If watched already, the shorter interval is used.
+     */
+    public synchronized void watch(long intervalMillis) {
+        if (intervalMillis <= 0 || (watch != null && watchInterval <= intervalMillis)) {
+            return;
+        }
+        if (!local) {
+            LOGGER.log(Level.WARNING, "Dictionary '" + dictionaries + "' is not a local file and will not be watched");
+            return;
+        }
+        if (watch != null) {
+            watch.cancel(false);
+        }
+        watchInterval = intervalMillis;
+        watch = RELOADER.scheduleWithFixedDelay(this::checkForChanges,
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void close() {
+        if (watch != null) {
+            watch.cancel(false);
+            watch = null;
+        }
+    }
+
+    private void checkForChanges() {
+        try {
+            String stamp = stamp();
+            if (!stamp.equals(loadedStamp) && stamp.equals(seenStamp)) {
+                served = requested.get();
+                load();
+            }
+            seenStamp = stamp;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to reload dictionary '" + dictionaries + "'", e);
+        }
+    }
+
+    private void load() throws IOException {
+        String stamp = stamp();
+        long start = System.currentTimeMillis();
+        DictionaryTree tree = dictionaries.load();
+        SharedDictionary next;
+        synchronized (this) {
+            next = new SharedDictionary(tree, current.getVersion() + 1, System.currentTimeMillis() - start);
+            current = next;
+        }
+        loadedStamp = stamp;
+        seenStamp = stamp;
+        LOGGER.log(Level.INFO, String.format("Reloaded dictionary '%s' version %d with %d entries in %d ms",
+                dictionaries, next.getVersion(), tree.getEntryCount(), next.getLoadTime()));
+    }
+
+    private int indexOf(URL location) {
+        int dictionary = dictionaries.indexOf(location);
+        if (dictionary < 0) {
+            throw new IllegalArgumentException("Dictionary '" + dictionaries + "' does not include '" + location + "'");
+        }
+        return dictionary;
+    }
+
+    private SharedDictionary update(SharedDictionary previous, DictionarySnapshot snapshot, String action, String phrase) {
+        SharedDictionary next = new SharedDictionary(snapshot, previous.getVersion() + 1, previous.getLoadTime());
+        current = next;
+        LOGGER.log(Level.FINE, String.format("%s entry '%s' of dictionary '%s', version %d has %d entries",
+                action, phrase, dictionaries, next.getVersion(), snapshot.getEntryCount()));
+        return next;
+    }
+
+    private static DictionarySnapshot snapshot(SharedDictionary dictionary) {
+        return dictionary.getSnapshot() != null ? dictionary.getSnapshot() : DictionarySnapshot.of(dictionary.getTree());
+    }
+
+    private String stamp() throws IOException {
+        if (!local) {
+            return "";
+        }
+        StringBuilder stamp = new StringBuilder();
+        for (URL location : dictionaries.getLocations()) {
+            for (URL shard : DictionarySource.resolve(location)) {
+                Path file = DictionarySource.toPath(shard);
+                stamp.append(file).append('=').append(Files.getLastModifiedTime(file).toMillis())
+                        .append(':').append(Files.size(file)).append(';');
+            }
+        }
+        return stamp.toString();
+    }
+}
@@ -0,0 +1,189 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches of recently seen token sequences (whole documents or sentences), least recently used ones are evicted.
+ * A sequence is keyed by two independent 64-bit hashes of its tokens as normalized by every normalizer of the
+ * dictionaries and the number of tokens, so sequences which match the same are found however their case, accents
+ * or the text between tokens differ. Matches are kept as token indexes relative to the
+ * first token of the sequence and replayed onto the token offsets of the current document.
+ * Entry ids are valid for a single dictionary version only, so the cache must be cleared when the dictionary changes.
+ * Used by a single annotator thread, counters may be read from any thread.
+ */
+final class ResultCache {
+
+    private final int capacity;
+    private final Map<Key, Result> results;
+    private final StringBuilder token = new StringBuilder();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int size;
+
+    ResultCache(int capacity) {
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                if (size() > ResultCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param normalizers normalizers of the matched dictionaries
+     * @return key of the tokens from first until first + count
+     */
+    Key key(TextNormalizer[] normalizers, CharSequence text, int[] tokenBegins, int[] tokenEnds, int first, int count) {
+        long fnv = 0xcbf29ce484222325L;
+        long polynomial = 0;
+        for (TextNormalizer normalizer : normalizers) {
+            for (int t = first; t < first + count; t++) {
+                normalizer.normalize(text, tokenBegins[t], tokenEnds[t], token);
+                for (int i = 0; i < token.length(); i++) {
+                    char c = token.charAt(i);
+                    fnv = (fnv ^ c) * 0x100000001b3L;
+                    polynomial = polynomial * 0x9e3779b97f4a7c15L + c + 1;
+                }
+                // Token boundaries are part of the key, "ab" "c" is not "a" "bc"
+                fnv = (fnv ^ 0x10000) * 0x100000001b3L;
+                polynomial = polynomial * 0x9e3779b97f4a7c15L;
+            }
+        }
+        return new Key(fnv, polynomial, count);
+    }
+
+    /**
+     * @return cached matches of the key or null, counted as a hit or a miss
+     */
+    Result get(Key key) {
+        Result result = results.get(key);
+        (result != null ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    void put(Key key, Result result) {
+        results.put(key, result);
+        size = results.size();
+    }
+
+    void clear() {
+        results.clear();
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    static final class Key {
+
+        private final long fnv;
+        private final long polynomial;
+        private final int count;
+
+        private Key(long fnv, long polynomial, int count) {
+            this.fnv = fnv;
+            this.polynomial = polynomial;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fnv == key.fnv && polynomial == key.polynomial && count == key.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fnv ^ (fnv >>> 32));
+        }
+    }
+
+    /**
+     * Matches of a token sequence, first and last matched token of every match relative to the sequence start.
+     */
+    static final class Result {
+
+        private final int[] firstTokens;
+        private final int[] lastTokens;
+        private final int[] entries;
+        private final int[] dictionaries;
+        private final int[] costs;
+        private final EntryTable[] tables;
+
+        private Result(int size) {
+            firstTokens = new int[size];
+            lastTokens = new int[size];
+            entries = new int[size];
+            dictionaries = new int[size];
+            costs = new int[size];
+            tables = new EntryTable[size];
+        }
+
+        /**
+         * @param from matches from this index until the end of matches are those of the tokens
+         * @return matches of the tokens from first until first + count, null if some match does not start
+         * or end at a token boundary
+         */
+        static Result of(Matches matches, int from, int[] tokenBegins, int[] tokenEnds, int first, int count) {
+            Result result = new Result(matches.size() - from);
+            for (int i = from; i < matches.size(); i++) {
+                int firstToken = Arrays.binarySearch(tokenBegins, first, first + count, matches.getStart(i));
+                int lastToken = Arrays.binarySearch(tokenEnds, first, first + count, matches.getEnd(i));
+                if (firstToken < 0 || lastToken < 0) {
+                    return null;
+                }
+                int m = i - from;
+                result.firstTokens[m] = firstToken - first;
+                result.lastTokens[m] = lastToken - first;
+                result.entries[m] = matches.getEntry(i);
+                result.dictionaries[m] = matches.getDictionary(i);
+                result.costs[m] = matches.getCost(i);
+                result.tables[m] = matches.getEntryTable(i);
+            }
+            return result;
+        }
+
+        /**
+         * Adds the matches at offsets of the tokens starting with the first one.
+         */
+        void replay(Matches matches, int[] tokenBegins, int[] tokenEnds, int first) {
+            for (int m = 0; m < entries.length; m++) {
+                matches.add(tokenBegins[first + firstTokens[m]], tokenEnds[first + lastTokens[m]], tables[m], entries[m],
+                        dictionaries[m], costs[m]);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Process wide, reference counted cache of loaded dictionaries.
+ * Dictionary is loaded once per location and {@link DictionaryLoader} settings, or once per {@link DictionarySet}
+ * of combined dictionaries, no matter how many annotators (pipeline replicas) use it,
+ * and is dropped when the last of them releases it.
+ */
+public final class SharedDictionaries {
+
+    private static final Map<DictionarySet, Reference> DICTIONARIES = new HashMap<>();
+
+    private SharedDictionaries() {
+    }
+
+    /**
+     * Returns cached dictionary or loads it. Concurrent requests for the same dictionary wait for a single load.
+     * Every successful call must be paired with {@link #release(URL, DictionaryLoader)}.
+     */
+    public static ReloadableDictionary acquire(URL location, DictionaryLoader loader) throws IOException {
+        return acquire(new DictionarySet(location, loader));
+    }
+
+    public static void release(URL location, DictionaryLoader loader) {
+        release(new DictionarySet(location, loader));
+    }
+
+    /**
+     * Returns cached combined dictionary or loads it. Every successful call must be paired with
+     * {@link #release(DictionarySet)}.
+     */
+    public static ReloadableDictionary acquire(DictionarySet dictionaries) throws IOException {
+        Reference reference;
+        synchronized (DICTIONARIES) {
+            reference = DICTIONARIES.computeIfAbsent(dictionaries, k -> new Reference());
+            reference.count++;
+        }
+        try {
+            return reference.get(dictionaries);
+        } catch (IOException | RuntimeException e) {
+            release(dictionaries);
+            throw e;
+        }
+    }
+
+    public static void release(DictionarySet dictionaries) {
+        synchronized (DICTIONARIES) {
+            Reference reference = DICTIONARIES.get(dictionaries);
+            if (reference != null && --reference.count == 0) {
+                DICTIONARIES.remove(dictionaries);
+                reference.close();
+            }
+        }
+    }
+
+    /**
+     * Reloads in the background all cached dictionaries loaded from the given location, whatever their loader settings,
+     * including the combined ones which have the location among others.
+     * Annotators switch to the new version with the next document.
+     *
+     * @return one future per reloaded dictionary, completed when the new version is in use
+     */
+    public static List<Future<SharedDictionary>> reload(URL location) {
+        List<ReloadableDictionary> dictionaries = find(location);
+        List<Future<SharedDictionary>> result = new ArrayList<>(dictionaries.size());
+        for (ReloadableDictionary dictionary : dictionaries) {
+            result.add(dictionary.reload());
+        }
+        return result;
+    }
+
+    /**
+     * Adds an entry to all cached dictionaries loaded from the given location, see
+     * {@link ReloadableDictionary#addEntry(URL, String[])}. Annotators match it from the next document.
+     *
+     * @return number of updated dictionaries
+     * @throws IllegalStateException if some annotator using the location can not match updates, nothing is updated then
+     */
+    public static int addEntry(URL location, String[] record) {
+        List<ReloadableDictionary> dictionaries = find(location);
+        checkUpdatable(dictionaries);
+        for (ReloadableDictionary dictionary : dictionaries) {
+            dictionary.addEntry(location, record);
+        }
+        return dictionaries.size();
+    }
+
+    /**
+     * Removes entries with the phrase from all cached dictionaries loaded from the given location, see
+     * {@link ReloadableDictionary#removeEntry(URL, String)}.
+     *
+     * @return number of dictionaries the entries were removed from
+     * @throws IllegalStateException if some annotator using the location can not match updates, nothing is updated then
+     */
+    public static int removeEntry(URL location, String phrase) {
+        List<ReloadableDictionary> dictionaries = find(location);
+        checkUpdatable(dictionaries);
+        int updated = 0;
+        for (ReloadableDictionary dictionary : dictionaries) {
+            SharedDictionary previous = dictionary.current();
+            if (dictionary.removeEntry(location, phrase) != previous) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    static int size() {
+        synchronized (DICTIONARIES) {
+            return DICTIONARIES.size();
+        }
+    }
+
+    private static void checkUpdatable(List<ReloadableDictionary> dictionaries) {
+        for (ReloadableDictionary dictionary : dictionaries) {
+            dictionary.checkUpdatable();
+        }
+    }
+
+    /**
+     * @return loaded dictionaries which have the location among their dictionaries
+     */
+    private static List<ReloadableDictionary> find(URL location) {
+        List<ReloadableDictionary> dictionaries = new ArrayList<>();
+        synchronized (DICTIONARIES) {
+            for (Map.Entry<DictionarySet, Reference> entry : DICTIONARIES.entrySet()) {
+                ReloadableDictionary dictionary = entry.getValue().dictionary;
+                if (entry.getKey().contains(location) && dictionary != null) {
+                    dictionaries.add(dictionary);
+                }
+            }
+        }
+        return dictionaries;
+    }
+
+    private static final class Reference {
+
+        private int count;
+        private volatile ReloadableDictionary dictionary;
+
+        synchronized ReloadableDictionary get(DictionarySet dictionaries) throws IOException {
+            if (dictionary == null) {
+                dictionary = new ReloadableDictionary(dictionaries);
+            }
+            return dictionary;
+        }
+
+        void close() {
+            ReloadableDictionary loaded = dictionary;
+            if (loaded != null) {
+                loaded.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.AhoCorasickAutomaton;
+import lt.tokenmill.uima.dictionaryannotator.tree.CharacterTrie;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionarySnapshot;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+import lt.tokenmill.uima.dictionaryannotator.tree.FuzzyIndex;
+
+/**
+ * One loaded version of a dictionary shared by all annotators with the same dictionary location and loader settings.
+ * The tree and structures compiled from it are read-only and safe to use from many threads,
+ * every annotator keeps its own {@link lt.tokenmill.uima.dictionaryannotator.tree.TokenMatcher}.
+ * Reloading and runtime updates create a new instance, see {@link ReloadableDictionary}.
+ * A version with runtime updates keeps the loaded tree and a {@link DictionarySnapshot} of the updates,
+ * which is matched token by token only.
+ */
+public class SharedDictionary {
+
+    private final DictionaryTree tree;
+    private final DictionarySnapshot snapshot;
+    private final long version;
+    private final long loadTime;
+    private AhoCorasickAutomaton automaton;
+    private CharacterTrie characterTrie;
+    private FuzzyIndex fuzzyIndex;
+    private long memory = -1;
+
+    /**
+     * @param loadTime time in milliseconds the dictionary took to load
+     */
+    SharedDictionary(DictionaryTree tree, long version, long loadTime) {
+        this.tree = tree;
+        this.snapshot = null;
+        this.version = version;
+        this.loadTime = loadTime;
+    }
+
+    /**
+     * @param loadTime time in milliseconds the loaded tree of the snapshot took to load
+     */
+    SharedDictionary(DictionarySnapshot snapshot, long version, long loadTime) {
+        this.tree = snapshot.getTree();
+        this.snapshot = snapshot;
+        this.version = version;
+        this.loadTime = loadTime;
+    }
+
+    /**
+     * @return number of this version, the first load is version 1
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return loaded tree, without runtime updates
+     */
+    public DictionaryTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return tree with runtime updates or null if the dictionary was not updated since it was loaded
+     */
+    public DictionarySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return entries of matches, including the added ones
+     */
+    public EntryTable getEntryTable() {
+        return snapshot != null ? snapshot.getEntryTable() : tree.getEntryTable();
+    }
+
+    /**
+     * @return number of entries, including runtime updates
+     */
+    public int getEntryCount() {
+        return snapshot != null ? snapshot.getEntryCount() : tree.getEntryCount();
+    }
+
+    public int getMaxEntryLength() {
+        return snapshot != null ? snapshot.getMaxEntryLength() : tree.getMaxEntryLength();
+    }
+
+    /**
+     * @return time in milliseconds the dictionary took to load
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * @return estimated heap usage of the tree in bytes, computed on first request
+     */
+    public synchronized long getEstimatedMemory() {
+        if (memory < 0) {
+            memory = tree.estimateMemory();
+        }
+        return memory;
+    }
+
+    /**
+     * @return Aho-Corasick automaton compiled on first request
+     */
+    public synchronized AhoCorasickAutomaton getAutomaton() {
+        checkNotUpdated();
+        if (automaton == null) {
+            automaton = new AhoCorasickAutomaton(tree);
+        }
+        return automaton;
+    }
+
+    /**
+     * @return character level trie compiled on first request
+     */
+    public synchronized CharacterTrie getCharacterTrie() {
+        checkNotUpdated();
+        if (characterTrie == null) {
+            characterTrie = new CharacterTrie(tree);
+        }
+        return characterTrie;
+    }
+
+    /**
+     * @return character tries of the vocabulary for fuzzy matching, compiled on first request
+     */
+    public synchronized FuzzyIndex getFuzzyIndex() {
+        checkNotUpdated();
+        if (fuzzyIndex == null) {
+            fuzzyIndex = new FuzzyIndex(tree);
+        }
+        return fuzzyIndex;
+    }
+
+    private void checkNotUpdated() {
+        if (snapshot != null) {
+            throw new UnsupportedOperationException("Dictionary with runtime updates is matched only by the tree matcher");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import java.util.Arrays;
+
+/**
+ * Matches of a document grouped by span and dictionary, for span output mode where every group becomes a single
+ * annotation. Groups are found through an open addressing hash table, in the order of their first match, and
+ * matches of a group keep their order. Arrays are reused from document to document. Used by a single thread.
+ */
+final class SpanGroups {
+
+    // Group index + 1 by hash of start, end and dictionary, 0 for an empty slot
+    private int[] slots = new int[16];
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int[] dictionaries = new int[8];
+    private int[] counts = new int[8];
+    // Index of the first match of a group in order
+    private int[] firsts = new int[8];
+    private int[] groupOf = new int[8];
+    private int[] order = new int[8];
+    private int size;
+
+    /**
+     * Groups the matches, replacing the previous groups.
+     */
+    void group(Matches matches) {
+        int matchCount = matches.size();
+        int capacity = Integer.highestOneBit(Math.max(8, matchCount) * 2 - 1) << 1;
+        if (slots.length < capacity) {
+            slots = new int[capacity];
+        } else {
+            Arrays.fill(slots, 0, capacity, 0);
+        }
+        if (groupOf.length < matchCount) {
+            int length = Math.max(matchCount, groupOf.length * 2);
+            groupOf = new int[length];
+            order = new int[length];
+        }
+        size = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < matchCount; i++) {
+            int start = matches.getStart(i);
+            int end = matches.getEnd(i);
+            int dictionary = matches.getDictionary(i);
+            int slot = hash(start, end, dictionary) & mask;
+            int group;
+            while (true) {
+                group = slots[slot] - 1;
+                if (group < 0) {
+                    group = addGroup(start, end, dictionary);
+                    slots[slot] = group + 1;
+                    break;
+                }
+                if (starts[group] == start && ends[group] == end && dictionaries[group] == dictionary) {
+                    counts[group]++;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            groupOf[i] = group;
+        }
+        // Matches are laid out by group, the counts are used as next positions meanwhile
+        int position = 0;
+        for (int g = 0; g < size; g++) {
+            firsts[g] = position;
+            position += counts[g];
+            counts[g] = firsts[g];
+        }
+        for (int i = 0; i < matchCount; i++) {
+            order[counts[groupOf[i]]++] = i;
+        }
+        for (int g = 0; g < size; g++) {
+            counts[g] -= firsts[g];
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getStart(int group) {
+        return starts[group];
+    }
+
+    int getEnd(int group) {
+        return ends[group];
+    }
+
+    int getDictionary(int group) {
+        return dictionaries[group];
+    }
+
+    /**
+     * @return number of matches in the group
+     */
+    int getCount(int group) {
+        return counts[group];
+    }
+
+    /**
+     * @return position of the first match of the group in {@link #getOrder()}
+     */
+    int getFirst(int group) {
+        return firsts[group];
+    }
+
+    /**
+     * @return match indexes laid out by group
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    private int addGroup(int start, int end, int dictionary) {
+        if (size == starts.length) {
+            int length = size * 2;
+            starts = Arrays.copyOf(starts, length);
+            ends = Arrays.copyOf(ends, length);
+            dictionaries = Arrays.copyOf(dictionaries, length);
+            counts = Arrays.copyOf(counts, length);
+            firsts = Arrays.copyOf(firsts, length);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        dictionaries[size] = dictionary;
+        counts[size] = 1;
+        return size++;
+    }
+
+    private static int hash(int start, int end, int dictionary) {
+        int hash = start * 0x9e3779b1 + end;
+        hash = hash * 0x85ebca6b + dictionary;
+        return hash ^ (hash >>> 16);
+    }
+}
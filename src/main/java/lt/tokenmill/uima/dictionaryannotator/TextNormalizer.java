@@ -1,14 +1,36 @@
 package lt.tokenmill.uima.dictionaryannotator;
 
+import lt.tokenmill.uima.dictionaryannotator.tree.CharacterNormalizer;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Normalizes text before matching.
+ * <p>
+ * Text is folded through a precomputed per character table, ASCII characters skip the table altogether.
+ * Characters whose normalization depends on their context or expands into several characters
+ * (Greek capital sigma, Hangul syllables, surrogates, combining marks which are not removed, ...)
+ * make the whole text fall back to {@link String#toLowerCase()} and {@link StringUtils#stripAccents(String)},
+ * so the result is always the same as theirs. Lower casing rules of Turkish, Azerbaijani and Lithuanian
+ * default locales are context dependent, so with these locales case insensitive normalization always falls back.
  */
-public class TextNormalizer {
+public class TextNormalizer implements CharacterNormalizer {
+
+    private static final char DELETED = '\uFFFE';
+    private static final char COMPLEX = '\uFFFF';
+    private static final char[][] TABLES = new char[4][];
+    // Single character results, one cache per normalization setting shared by all instances
+    private static final Map<String, String[]> CHARACTERS = new ConcurrentHashMap<>();
 
     private boolean caseSensitive = true;
     private boolean accentSensitive = true;
+    private char[] table;
+    // Default language lower casing falls back to, if it is context dependent
+    private String contextualLanguage;
+    private volatile String[] characters;
 
     public TextNormalizer() {
     }
@@ -16,11 +38,131 @@ public class TextNormalizer {
     public TextNormalizer(boolean caseSensitive, boolean accentSensitive) {
         this.caseSensitive = caseSensitive;
         this.accentSensitive = accentSensitive;
+        if (!caseSensitive || !accentSensitive) {
+            String language = Locale.getDefault().getLanguage();
+            boolean contextualLowerCase = "tr".equals(language) || "az".equals(language) || "lt".equals(language);
+            this.table = !caseSensitive && contextualLowerCase ? null : table(caseSensitive, accentSensitive);
+            this.contextualLanguage = !caseSensitive && contextualLowerCase ? language : null;
+        }
+    }
+
+    private TextNormalizer(boolean caseSensitive, boolean accentSensitive, char[] table) {
+        this.caseSensitive = caseSensitive;
+        this.accentSensitive = accentSensitive;
+        this.table = table;
     }
 
     public String normalize(String text) {
+        if (caseSensitive && accentSensitive) {
+            return text;
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        return fold(text, 0, text.length(), normalized) ? normalized.toString() : normalizeSlow(text);
+    }
+
+    /**
+     * Normalizes characters of text from start (inclusive) to end (exclusive) into target, which is cleared first.
+     * Produces the same characters as {@link #normalize(String)} of the same substring,
+     * but does not allocate unless the text has characters without a precomputed folding.
+     */
+    public void normalize(CharSequence text, int start, int end, StringBuilder target) {
+        target.setLength(0);
+        if (caseSensitive && accentSensitive) {
+            target.append(text, start, end);
+        } else if (!fold(text, start, end, target)) {
+            target.setLength(0);
+            target.append(normalizeSlow(text.subSequence(start, end).toString()));
+        }
+    }
+
+    /**
+     * Normalizes a single character the same way {@link #normalize(String)} normalizes one character string.
+     * Results are cached in a table shared by normalizers with the same settings, so repeated calls do not allocate.
+     * The table is filled without locking, a result not yet seen by the calling thread is just normalized again.
+     */
+    @Override
+    public String normalize(char c) {
+        String[] cache = characters;
+        if (cache == null) {
+            cache = CHARACTERS.computeIfAbsent(caseSensitive + "," + accentSensitive + "," + contextualLanguage,
+                    k -> new String[Character.MAX_VALUE + 1]);
+            characters = cache;
+        }
+        String normalized = cache[c];
+        if (normalized == null) {
+            normalized = normalize(String.valueOf(c));
+            cache[c] = normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * @return false if text contains characters which can not be normalized one by one
+     */
+    private boolean fold(CharSequence text, int start, int end, StringBuilder target) {
+        if (table == null) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                target.append(caseSensitive || c < 'A' || c > 'Z' ? c : (char) (c + ('a' - 'A')));
+                continue;
+            }
+            char folded = table[c];
+            if (folded == COMPLEX) {
+                return false;
+            }
+            if (folded != DELETED) {
+                target.append(folded);
+            }
+        }
+        return true;
+    }
+
+    private String normalizeSlow(String text) {
         text = caseSensitive ? text : text.toLowerCase();
         text = accentSensitive ? text : StringUtils.stripAccents(text);
         return text;
     }
+
+    private static char[] table(boolean caseSensitive, boolean accentSensitive) {
+        int index = (caseSensitive ? 2 : 0) + (accentSensitive ? 1 : 0);
+        synchronized (TABLES) {
+            if (TABLES[index] == null) {
+                TABLES[index] = createTable(new TextNormalizer(caseSensitive, accentSensitive, null));
+            }
+            return TABLES[index];
+        }
+    }
+
+    private static char[] createTable(TextNormalizer normalizer) {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String folded = normalizer.normalizeSlow(String.valueOf((char) c));
+            if (folded.isEmpty()) {
+                table[c] = DELETED;
+            } else if (folded.length() == 1 && isContextFree((char) c, normalizer.caseSensitive)
+                    && (normalizer.accentSensitive || !isMark(folded.charAt(0)))) {
+                table[c] = folded.charAt(0);
+            } else {
+                table[c] = COMPLEX;
+            }
+        }
+        return table;
+    }
+
+    private static boolean isContextFree(char c, boolean caseSensitive) {
+        // Capital sigma lower cases to final or non final form depending on the surrounding letters
+        return (caseSensitive || c != '\u03A3') && c != DELETED && c != COMPLEX && !Character.isSurrogate(c);
+    }
+
+    /**
+     * Combining marks which survive accent stripping may be reordered by canonical decomposition.
+     */
+    private static boolean isMark(char c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
 }
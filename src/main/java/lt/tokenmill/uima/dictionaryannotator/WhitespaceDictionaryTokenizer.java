@@ -1,5 +1,7 @@
 package lt.tokenmill.uima.dictionaryannotator;
 
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenBoundary;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -7,10 +9,23 @@ import java.util.List;
 /**
  * Split dictionary entries by whitespace.
  */
-public final class WhitespaceDictionaryTokenizer implements DictionaryTokenizer {
+public final class WhitespaceDictionaryTokenizer implements DictionaryTokenizer, TokenBoundary {
 
     @Override
     public List<String> tokenize(String text) {
         return text != null ? Arrays.asList(text.split("\\s+")) : new ArrayList<>();
     }
+
+    /**
+     * Same characters as matched by regular expression {@code \s}.
+     */
+    @Override
+    public boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    @Override
+    public boolean isBoundary(char previous, char next) {
+        return false;
+    }
 }
@@ -0,0 +1,113 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Token level Aho-Corasick automaton compiled from {@link DictionaryTree}.
+ * Every state corresponds to a tree element and has a failure link to the state of its longest proper suffix
+ * and an output link to the closest suffix state which ends some dictionary entry.
+ * Transitions are keyed by tree vocabulary token ids.
+ */
+public class AhoCorasickAutomaton {
+
+    private final DictionaryTree tree;
+    private final State root;
+    private final int maxDepth;
+
+    public AhoCorasickAutomaton(DictionaryTree tree) {
+        this.tree = tree;
+        this.root = new State(tree.getRoot(), 0);
+        this.root.failure = this.root;
+        int depth = 0;
+        Deque<State> queue = new ArrayDeque<>();
+        queue.add(this.root);
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            depth = Math.max(depth, state.depth);
+            int[] tokens = state.element.getChildTokens();
+            DictionaryTreeElement[] children = state.element.getChildren();
+            if (tokens == null) {
+                continue;
+            }
+            state.transitionTokens = tokens;
+            state.transitions = new State[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] == 0) {
+                    continue;
+                }
+                int tokenId = tokens[i] - 1;
+                State next = new State(children[i], state.depth + 1);
+                next.failure = state == this.root ? this.root : state.failure.transition(tokenId, this.root);
+                next.output = next.failure.hasEntries() ? next.failure : next.failure.output;
+                state.transitions[i] = next;
+                queue.add(next);
+            }
+        }
+        this.maxDepth = depth;
+    }
+
+    DictionaryTree getTree() {
+        return tree;
+    }
+
+    State getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the number of tokens in the longest dictionary entry
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    static final class State {
+
+        private final DictionaryTreeElement element;
+        private final int depth;
+        // Children table of the element is shared, transitions use the same slots
+        private int[] transitionTokens;
+        private State[] transitions;
+        private State failure;
+        private State output;
+
+        private State(DictionaryTreeElement element, int depth) {
+            this.element = element;
+            this.depth = depth;
+        }
+
+        State transition(int tokenId, State root) {
+            if (tokenId < 0) {
+                return root;
+            }
+            State state = this;
+            while (true) {
+                int slot = IntTables.find(state.transitionTokens, tokenId);
+                if (slot >= 0) {
+                    return state.transitions[slot];
+                }
+                if (state == root) {
+                    return root;
+                }
+                state = state.failure;
+            }
+        }
+
+        boolean hasEntries() {
+            return depth > 0 && element.getEntryCount() > 0;
+        }
+
+        DictionaryTreeElement getElement() {
+            return element;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        State getOutput() {
+            return output;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Matches tokens against {@link AhoCorasickAutomaton}. Every token costs a single (amortized) state transition
+ * regardless of how many dictionary entries overlap. Produces the same matches in the same order as {@link TreeMatcher}.
+ */
+public class AhoCorasickMatcher implements TokenMatcher {
+
+    private final AhoCorasickAutomaton automaton;
+    private final TreeMatch match = new TreeMatch();
+    private final int[] begins;
+    private AhoCorasickAutomaton.State state;
+    private int position;
+
+    public AhoCorasickMatcher(AhoCorasickAutomaton automaton) {
+        this.automaton = automaton;
+        this.begins = new int[Math.max(1, automaton.getMaxDepth())];
+        this.state = automaton.getRoot();
+    }
+
+    @Override
+    public void proceed(int begin, int end, CharSequence token, MatchListener listener) {
+        this.state = this.state.transition(this.automaton.getTree().getTokenId(token), this.automaton.getRoot());
+        this.begins[this.position] = begin;
+        this.position = (this.position + 1) % this.begins.length;
+        AhoCorasickAutomaton.State current = this.state.hasEntries() ? this.state : this.state.getOutput();
+        while (current != null) {
+            int index = (this.position - current.getDepth() + this.begins.length) % this.begins.length;
+            listener.onMatch(this.match.set(this.begins[index], end, this.automaton.getTree().getEntryTable(), current.getElement()));
+            current = current.getOutput();
+        }
+    }
+
+    /**
+     * Longest partial match is the current state itself, every other one is its suffix.
+     */
+    @Override
+    public int getPartialMatchStart() {
+        if (this.state.getDepth() == 0) {
+            return -1;
+        }
+        return this.begins[(this.position - this.state.getDepth() + this.begins.length) % this.begins.length];
+    }
+
+    @Override
+    public void reset() {
+        this.state = this.automaton.getRoot();
+        this.position = 0;
+    }
+}
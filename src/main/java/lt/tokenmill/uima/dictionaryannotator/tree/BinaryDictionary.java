@@ -0,0 +1,268 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Dictionary compiled by {@link BinaryDictionaryWriter} and memory mapped from file.
+ * Dictionary data stays outside of Java heap and mapped pages are shared by all processes which open the same file.
+ * Nodes are addressed by their index, root node is 0. Read-only and safe to share between threads.
+ */
+public class BinaryDictionary implements EntryTable {
+
+    static final int HEADER_INTS = 14;
+
+    private final ByteBuffer buffer;
+    private final String settings;
+    private final int hashSize;
+    private final int nodeCount;
+    private final int entryCount;
+    private final int stringCount;
+    private final int hashOffset;
+    private final int tokensOffset;
+    private final int nodesOffset;
+    private final int edgesOffset;
+    private final int entriesOffset;
+    private final int entryDataOffset;
+    private final int stringsOffset;
+    private final int stringDataOffset;
+    private int maxEntryLength = -1;
+
+    private BinaryDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 12 || buffer.getInt(0) != BinaryDictionaryWriter.MAGIC) {
+            throw new IOException("Not a binary dictionary file");
+        }
+        int version = buffer.getInt(4);
+        if (version != BinaryDictionaryWriter.VERSION) {
+            throw new IOException(String.format("Unsupported binary dictionary version %d, expected %d",
+                    version, BinaryDictionaryWriter.VERSION));
+        }
+        int settingsLength = buffer.getInt(8);
+        this.settings = readChars(12, settingsLength);
+        int header = 12 + settingsLength * 2;
+        this.hashSize = buffer.getInt(header + 4);
+        this.nodeCount = buffer.getInt(header + 8);
+        this.entryCount = buffer.getInt(header + 16);
+        this.stringCount = buffer.getInt(header + 20);
+        this.hashOffset = buffer.getInt(header + 24);
+        this.tokensOffset = buffer.getInt(header + 28);
+        this.nodesOffset = buffer.getInt(header + 32);
+        this.edgesOffset = buffer.getInt(header + 36);
+        this.entriesOffset = buffer.getInt(header + 40);
+        this.entryDataOffset = buffer.getInt(header + 44);
+        this.stringsOffset = buffer.getInt(header + 48);
+        this.stringDataOffset = buffer.getInt(header + 52);
+    }
+
+    /**
+     * Maps dictionary file into memory.
+     *
+     * @param settings tokenizer and normalizer settings of the caller, must be the same as the file was compiled with
+     */
+    public static BinaryDictionary open(Path file, String settings) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary dictionary '" + file + "' is larger than 2GB");
+            }
+            BinaryDictionary dictionary = new BinaryDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (!dictionary.settings.equals(settings)) {
+                throw new IOException(String.format("Binary dictionary '%s' was compiled with settings [%s], but [%s] are used",
+                        file, dictionary.settings, settings));
+            }
+            return dictionary;
+        }
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return number of tokens in the longest entry, computed on first request by walking all nodes
+     */
+    public synchronized int getMaxEntryLength() {
+        if (maxEntryLength < 0) {
+            int max = 0;
+            int[] nodes = new int[16];
+            int[] depths = new int[16];
+            int size = 1;
+            while (size > 0) {
+                size--;
+                int node = nodes[size];
+                int depth = depths[size];
+                if (hasEntries(node)) {
+                    max = Math.max(max, depth);
+                }
+                int first = buffer.getInt(nodesOffset + node * 16);
+                int count = buffer.getInt(nodesOffset + node * 16 + 4);
+                if (size + count > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + count));
+                    depths = Arrays.copyOf(depths, nodes.length);
+                }
+                for (int edge = first; edge < first + count; edge++) {
+                    nodes[size] = buffer.getInt(edgesOffset + edge * 8 + 4);
+                    depths[size] = depth + 1;
+                    size++;
+                }
+            }
+            maxEntryLength = max;
+        }
+        return maxEntryLength;
+    }
+
+    /**
+     * @return size of the mapped file in bytes
+     */
+    public int getByteCount() {
+        return buffer.limit();
+    }
+
+    /**
+     * @return id of the token or -1 if no dictionary entry contains it
+     */
+    public int getTokenId(CharSequence token) {
+        int mask = hashSize - 1;
+        int slot = Vocabulary.hash(token) & mask;
+        while (true) {
+            int id = buffer.getInt(hashOffset + slot * 4) - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (equalsString(buffer.getInt(tokensOffset + id * 4), token)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return child node following the token or -1 if there is none
+     */
+    public int getChild(int node, int tokenId) {
+        int low = buffer.getInt(nodesOffset + node * 16);
+        int high = low + buffer.getInt(nodesOffset + node * 16 + 4) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int token = buffer.getInt(edgesOffset + middle * 8);
+            if (token < tokenId) {
+                low = middle + 1;
+            } else if (token > tokenId) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(edgesOffset + middle * 8 + 4);
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasChildren(int node) {
+        return buffer.getInt(nodesOffset + node * 16 + 4) > 0;
+    }
+
+    public boolean hasEntries(int node) {
+        return buffer.getInt(nodesOffset + node * 16 + 12) > 0;
+    }
+
+    /**
+     * @return id of the first entry ending at the node, entries of a node have consecutive ids
+     */
+    public int getFirstEntry(int node) {
+        return buffer.getInt(nodesOffset + node * 16 + 8);
+    }
+
+    public int getEntryCount(int node) {
+        return buffer.getInt(nodesOffset + node * 16 + 12);
+    }
+
+    @Override
+    public int size() {
+        return entryCount;
+    }
+
+    @Override
+    public String getValue(int entry, int column) {
+        int valueId = getValueId(entry, column);
+        return valueId >= 0 ? readString(valueId) : null;
+    }
+
+    /**
+     * @return id in the string pool shared by all columns
+     */
+    @Override
+    public int getValueId(int entry, int column) {
+        int offset = entryDataOffset + buffer.getInt(entriesOffset + entry * 4);
+        if (column < 0 || column >= buffer.getInt(offset + 4)) {
+            return -1;
+        }
+        return buffer.getInt(offset + 8 + column * 4);
+    }
+
+    @Override
+    public int getValueCount(int column) {
+        return stringCount;
+    }
+
+    /**
+     * Binary dictionaries are compiled from a single CSV file.
+     */
+    @Override
+    public int getDictionary(int entry) {
+        return 0;
+    }
+
+    /**
+     * Decodes the entry. Entries are not cached, every call creates new objects.
+     */
+    @Override
+    public EntryMetadata getMetadata(int entry) {
+        int offset = entryDataOffset + buffer.getInt(entriesOffset + entry * 4);
+        EntryMetadata metadata = new EntryMetadata();
+        metadata.setText(readString(buffer.getInt(offset)));
+        String[] columns = new String[buffer.getInt(offset + 4)];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = readString(buffer.getInt(offset + 8 + c * 4));
+        }
+        metadata.setColumns(columns);
+        return metadata;
+    }
+
+    private boolean equalsString(int stringId, CharSequence value) {
+        int offset = stringDataOffset + buffer.getInt(stringsOffset + stringId * 4);
+        int length = buffer.getInt(offset);
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.getChar(offset + 4 + i * 2) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int stringId) {
+        int offset = stringDataOffset + buffer.getInt(stringsOffset + stringId * 4);
+        return readChars(offset + 4, buffer.getInt(offset));
+    }
+
+    private String readChars(int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(offset + i * 2);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,72 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * Same matching algorithm as {@link TreeMatcher}, applied directly to memory mapped {@link BinaryDictionary}.
+ * Each token is looked up in dictionary vocabulary once, partial matches are followed by token id.
+ */
+public class BinaryDictionaryMatcher implements TokenMatcher {
+
+    private static final int ROOT = 0;
+
+    private final BinaryDictionary dictionary;
+    private final TreeMatch match = new TreeMatch();
+    private int[] starts = new int[16];
+    private int[] nodes = new int[16];
+    private int size;
+
+    public BinaryDictionaryMatcher(BinaryDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void proceed(int begin, int end, CharSequence token, MatchListener listener) {
+        int tokenId = dictionary.getTokenId(token);
+        if (tokenId < 0) {
+            size = 0;
+            return;
+        }
+        int open = 0;
+        for (int i = 0; i < size; i++) {
+            int child = dictionary.getChild(nodes[i], tokenId);
+            if (child >= 0) {
+                starts[open] = starts[i];
+                nodes[open] = child;
+                open++;
+            }
+        }
+        size = open;
+        int matched = dictionary.getChild(ROOT, tokenId);
+        if (matched >= 0) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            starts[size] = begin;
+            nodes[size] = matched;
+            size++;
+        }
+        for (int i = 0; i < size; i++) {
+            if (dictionary.hasEntries(nodes[i])) {
+                listener.onMatch(match.set(starts[i], end, dictionary, null,
+                        dictionary.getFirstEntry(nodes[i]), dictionary.getEntryCount(nodes[i])));
+            }
+        }
+    }
+
+    @Override
+    public int getPartialMatchStart() {
+        for (int i = 0; i < size; i++) {
+            if (dictionary.hasChildren(nodes[i])) {
+                return starts[i];
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void reset() {
+        size = 0;
+    }
+}
@@ -0,0 +1,197 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link DictionaryTree} into a file which can be memory mapped by {@link BinaryDictionary}.
+ *
+ * <pre>
+ * header   magic, version, settings (int length + chars), section sizes and offsets
+ * hash     open addressing table of token ids + 1 (0 - empty slot)
+ * tokens   string id of every token id
+ * nodes    first edge, edge count, first entry, entry count; node 0 is the root
+ * edges    token id, target node; sorted by token id within a node
+ * entries  offset of every entry in entry data
+ * data     text string id, column count, column string ids
+ * strings  offset of every string in string data
+ * data     length + chars of every string
+ * </pre>
+ * All values are big-endian ints except for string chars.
+ */
+public class BinaryDictionaryWriter {
+
+    static final int MAGIC = 0x55444943;
+    static final int VERSION = 1;
+
+    private final List<Integer> tokenStrings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * @param settings tokenizer and normalizer settings the tree was built with,
+     *                 {@link BinaryDictionary#open(Path, String)} rejects files built with other settings
+     */
+    public static void write(DictionaryTree tree, String settings, Path file) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            new BinaryDictionaryWriter().write(tree, settings, os);
+        }
+    }
+
+    private void write(DictionaryTree tree, String settings, OutputStream os) throws IOException {
+        Vocabulary vocabulary = tree.getVocabulary();
+        for (int i = 0; i < vocabulary.size(); i++) {
+            tokenStrings.add(stringId(vocabulary.getToken(i)));
+        }
+        List<DictionaryTreeElement> nodes = new ArrayList<>();
+        Map<DictionaryTreeElement, Integer> nodeIds = new IdentityHashMap<>();
+        nodes.add(tree.getRoot());
+        nodeIds.put(tree.getRoot(), 0);
+        for (int i = 0; i < nodes.size(); i++) {
+            DictionaryTreeElement[] children = nodes.get(i).getChildren();
+            if (children != null) {
+                for (DictionaryTreeElement child : children) {
+                    if (child != null) {
+                        nodeIds.put(child, nodes.size());
+                        nodes.add(child);
+                    }
+                }
+            }
+        }
+
+        int[] nodeData = new int[nodes.size() * 4];
+        int[] edges = new int[(nodes.size() - 1) * 2];
+        EntryTable table = tree.getEntryTable();
+        List<Integer> entries = new ArrayList<>();
+        int edgeCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            DictionaryTreeElement node = nodes.get(i);
+            nodeData[i * 4] = edgeCount;
+            nodeData[i * 4 + 1] = node.getChildCount();
+            nodeData[i * 4 + 2] = entries.size();
+            nodeData[i * 4 + 3] = node.getEntryCount();
+            int[] tokens = node.getChildTokens();
+            if (tokens != null) {
+                long[] sorted = new long[node.getChildCount()];
+                int count = 0;
+                for (int slot = 0; slot < tokens.length; slot++) {
+                    if (tokens[slot] != 0) {
+                        sorted[count++] = ((long) (tokens[slot] - 1) << 32) | nodeIds.get(node.getChildren()[slot]);
+                    }
+                }
+                Arrays.sort(sorted);
+                for (long edge : sorted) {
+                    edges[edgeCount * 2] = (int) (edge >>> 32);
+                    edges[edgeCount * 2 + 1] = (int) edge;
+                    edgeCount++;
+                }
+            }
+            for (int e = 0; e < node.getEntryCount(); e++) {
+                entries.add(node.getEntry(e));
+            }
+        }
+
+        int[] entryOffsets = new int[entries.size()];
+        List<Integer> entryData = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            EntryMetadata entry = table.getMetadata(entries.get(i));
+            entryOffsets[i] = entryData.size() * 4;
+            entryData.add(stringId(entry.getText()));
+            String[] columns = entry.getColumns();
+            entryData.add(columns.length);
+            for (String column : columns) {
+                entryData.add(stringId(column));
+            }
+        }
+
+        int hashSize = Integer.highestOneBit(Math.max(2, tokenStrings.size() * 2 - 1)) << 1;
+        int[] hash = new int[hashSize];
+        for (int id = 0; id < vocabulary.size(); id++) {
+            int slot = Vocabulary.hash(vocabulary.getToken(id)) & (hashSize - 1);
+            while (hash[slot] != 0) {
+                slot = (slot + 1) & (hashSize - 1);
+            }
+            hash[slot] = id + 1;
+        }
+
+        int[] stringOffsets = new int[strings.size()];
+        int stringDataSize = 0;
+        for (int i = 0; i < strings.size(); i++) {
+            stringOffsets[i] = stringDataSize;
+            stringDataSize += 4 + strings.get(i).length() * 2;
+        }
+
+        int offset = 8 + 4 + settings.length() * 2 + BinaryDictionary.HEADER_INTS * 4;
+        int[] header = new int[BinaryDictionary.HEADER_INTS];
+        header[0] = tokenStrings.size();
+        header[1] = hashSize;
+        header[2] = nodes.size();
+        header[3] = edgeCount;
+        header[4] = entries.size();
+        header[5] = strings.size();
+        header[6] = offset;
+        header[7] = offset += hashSize * 4;
+        header[8] = offset += tokenStrings.size() * 4;
+        header[9] = offset += nodeData.length * 4;
+        header[10] = offset += edgeCount * 2 * 4;
+        header[11] = offset += entryOffsets.length * 4;
+        header[12] = offset += entryData.size() * 4;
+        header[13] = offset += stringOffsets.length * 4;
+        if ((long) offset + stringDataSize > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary is too large for binary format");
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(settings.length());
+        out.writeChars(settings);
+        writeInts(out, header, header.length);
+        writeInts(out, hash, hash.length);
+        for (Integer stringId : tokenStrings) {
+            out.writeInt(stringId);
+        }
+        writeInts(out, nodeData, nodeData.length);
+        writeInts(out, edges, edgeCount * 2);
+        writeInts(out, entryOffsets, entryOffsets.length);
+        for (Integer value : entryData) {
+            out.writeInt(value);
+        }
+        writeInts(out, stringOffsets, stringOffsets.length);
+        for (String string : strings) {
+            out.writeInt(string.length());
+            out.writeChars(string);
+        }
+        out.flush();
+    }
+
+    private int stringId(String string) {
+        if (string == null) {
+            // Column which is not kept in the tree
+            string = "";
+        }
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+}
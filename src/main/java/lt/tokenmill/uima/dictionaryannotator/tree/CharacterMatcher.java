@@ -0,0 +1,74 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Matches raw text against {@link CharacterTrie}. Text is normalized character by character while it is scanned
+ * and dictionary entries are matched only between token boundaries, so no upstream tokenization is needed.
+ * Matches are reported ordered by their start.
+ */
+public class CharacterMatcher {
+
+    private final CharacterTrie trie;
+    private final TokenBoundary boundary;
+    private final CharacterNormalizer normalizer;
+    private final TreeMatch match = new TreeMatch();
+
+    public CharacterMatcher(CharacterTrie trie, TokenBoundary boundary, CharacterNormalizer normalizer) {
+        this.trie = trie;
+        this.boundary = boundary;
+        this.normalizer = normalizer;
+    }
+
+    public void match(CharSequence text, MatchListener listener) {
+        int length = text.length();
+        for (int start = 0; start < length; start++) {
+            char c = text.charAt(start);
+            if (boundary.isSeparator(c)) {
+                continue;
+            }
+            if (start > 0 && !isTokenEnd(text, start)) {
+                continue;
+            }
+            matchFrom(text, start, listener);
+        }
+    }
+
+    private void matchFrom(CharSequence text, int start, MatchListener listener) {
+        int length = text.length();
+        int node = CharacterTrie.ROOT;
+        int position = start;
+        while (true) {
+            do {
+                String normalized = normalizer.normalize(text.charAt(position));
+                for (int i = 0; i < normalized.length() && node >= 0; i++) {
+                    node = trie.getChild(node, normalized.charAt(i));
+                }
+                if (node < 0) {
+                    return;
+                }
+                position++;
+            } while (position < length && !isTokenEnd(text, position));
+            if (trie.hasEntries(node)) {
+                listener.onMatch(match.set(start, position, trie.getEntryTable(), trie.getElement(node)));
+            }
+            node = trie.getBoundaryChild(node);
+            if (node < 0) {
+                return;
+            }
+            while (position < length && boundary.isSeparator(text.charAt(position))) {
+                position++;
+            }
+            if (position == length) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if token ends before the character at position
+     */
+    private boolean isTokenEnd(CharSequence text, int position) {
+        char c = text.charAt(position);
+        char previous = text.charAt(position - 1);
+        return boundary.isSeparator(c) || boundary.isSeparator(previous) || boundary.isBoundary(previous, c);
+    }
+}
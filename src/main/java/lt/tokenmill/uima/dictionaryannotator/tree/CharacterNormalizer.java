@@ -0,0 +1,12 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Normalizes text one character at a time.
+ */
+public interface CharacterNormalizer {
+
+    /**
+     * @return normalized form of the character, may be empty or longer than one character
+     */
+    String normalize(char c);
+}
@@ -0,0 +1,158 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * Character level trie compiled from {@link DictionaryTree}. Characters of consecutive entry tokens are linked
+ * through a boundary transition, so entries can be matched against raw text without tokenizing it first.
+ * All character transitions are kept in a single open addressing table keyed by node and character.
+ */
+public class CharacterTrie {
+
+    public static final int ROOT = 0;
+
+    private long[] keys = new long[64];
+    private int[] targets = new int[64];
+    private int transitionCount;
+    private int[] boundaries = new int[16];
+    private DictionaryTreeElement[] elements = new DictionaryTreeElement[16];
+    private int size = 1;
+    private final EntryTable entryTable;
+
+    public CharacterTrie(DictionaryTree tree) {
+        this.entryTable = tree.getEntryTable();
+        Arrays.fill(boundaries, -1);
+        add(tree.getRoot(), ROOT, tree.getVocabulary());
+    }
+
+    /**
+     * @return node following the character or -1 if there is none
+     */
+    public int getChild(int node, char c) {
+        long key = key(node, c);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return targets[slot];
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return node following a token boundary or -1 if no entry continues with another token
+     */
+    public int getBoundaryChild(int node) {
+        return boundaries[node];
+    }
+
+    /**
+     * @return true if entries end at the node when the text token ends there as well
+     */
+    public boolean hasEntries(int node) {
+        return elements[node] != null;
+    }
+
+    public EntryTable getEntryTable() {
+        return entryTable;
+    }
+
+    /**
+     * @return tree node holding entries which end at the node
+     */
+    DictionaryTreeElement getElement(int node) {
+        return elements[node];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void add(DictionaryTreeElement element, int node, Vocabulary vocabulary) {
+        int[] tokens = element.getChildTokens();
+        if (tokens == null) {
+            return;
+        }
+        DictionaryTreeElement[] children = element.getChildren();
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] == 0) {
+                continue;
+            }
+            String token = vocabulary.getToken(tokens[i] - 1);
+            if (token.isEmpty()) {
+                // Text never contains empty tokens
+                continue;
+            }
+            int current = node;
+            for (int c = 0; c < token.length(); c++) {
+                current = addChild(current, token.charAt(c));
+            }
+            DictionaryTreeElement child = children[i];
+            if (child.getEntryCount() > 0) {
+                elements[current] = child;
+            }
+            if (child.getChildCount() > 0) {
+                if (boundaries[current] < 0) {
+                    boundaries[current] = newNode();
+                }
+                add(child, boundaries[current], vocabulary);
+            }
+        }
+    }
+
+    private int addChild(int node, char c) {
+        int child = getChild(node, c);
+        if (child >= 0) {
+            return child;
+        }
+        child = newNode();
+        if ((transitionCount + 1) * 2 > keys.length) {
+            long[] oldKeys = keys;
+            int[] oldTargets = targets;
+            keys = new long[keys.length * 2];
+            targets = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldTargets[i]);
+                }
+            }
+        }
+        insert(key(node, c), child);
+        transitionCount++;
+        return child;
+    }
+
+    private void insert(long key, int target) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        targets[slot] = target;
+    }
+
+    private int newNode() {
+        if (size == boundaries.length) {
+            boundaries = Arrays.copyOf(boundaries, size * 2);
+            Arrays.fill(boundaries, size, boundaries.length, -1);
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        return size++;
+    }
+
+    // Character is stored incremented by one, so that zero key marks an empty slot
+    private static long key(int node, char c) {
+        return ((long) node << 17) | (c + 1);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,234 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * In-heap {@link EntryTable}. Only the selected CSV columns are kept, every kept column interns its values
+ * into a separate pool and an entry is a row of value ids in a single int array.
+ * Dictionary indexes of entries are stored only once an entry of other than the first dictionary is added.
+ */
+public class ColumnarEntryTable implements EntryTable {
+
+    private final int[] phraseColumns;
+    private final boolean allColumns;
+    // CSV column index to position in a row, -1 if the column is not kept
+    private int[] positions;
+    private ValuePool[] pools;
+    private int width;
+    private int[] rows = new int[16];
+    private int[] dictionaries;
+    private int size;
+    private boolean trimmed;
+
+    /**
+     * @param phraseColumn CSV column which holds entry text, used only by {@link #getMetadata(int)}
+     * @param columns      CSV columns to keep or null to keep all of them
+     */
+    public ColumnarEntryTable(int phraseColumn, int[] columns) {
+        this(new int[]{phraseColumn}, columns);
+    }
+
+    /**
+     * @param phraseColumns CSV column which holds entry text in each of the combined dictionaries,
+     *                      used only by {@link #getMetadata(int)}
+     * @param columns       CSV columns to keep or null to keep all of them
+     */
+    public ColumnarEntryTable(int[] phraseColumns, int[] columns) {
+        this.phraseColumns = phraseColumns.clone();
+        this.allColumns = columns == null;
+        this.positions = new int[0];
+        this.pools = new ValuePool[0];
+        if (columns != null) {
+            for (int column : columns) {
+                if (column >= 0 && getPosition(column) < 0) {
+                    addColumn(column);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return id of the new entry
+     */
+    public int add(String[] record) {
+        return add(record, 0);
+    }
+
+    /**
+     * @param dictionary index of the dictionary the entry comes from
+     * @return id of the new entry
+     */
+    public int add(String[] record, int dictionary) {
+        if (trimmed) {
+            throw new IllegalStateException("Entry table is trimmed and can not be modified");
+        }
+        if (allColumns) {
+            for (int column = positions.length; column < record.length; column++) {
+                addColumn(column);
+            }
+        }
+        int offset = size * width;
+        if (offset + width > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, offset + width));
+        }
+        for (int column = 0; column < positions.length; column++) {
+            int position = positions[column];
+            if (position >= 0) {
+                rows[offset + position] = column < record.length && record[column] != null
+                        ? pools[position].add(record[column]) : -1;
+            }
+        }
+        if (dictionary != 0 || dictionaries != null) {
+            if (dictionaries == null) {
+                dictionaries = new int[Math.max(16, size + 1)];
+            } else if (size == dictionaries.length) {
+                dictionaries = Arrays.copyOf(dictionaries, size * 2);
+            }
+            dictionaries[size] = dictionary;
+        }
+        return size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getValue(int entry, int column) {
+        int position = getPosition(column);
+        if (position < 0) {
+            return null;
+        }
+        int id = rows[entry * width + position];
+        return id >= 0 ? pools[position].get(id) : null;
+    }
+
+    @Override
+    public int getValueId(int entry, int column) {
+        int position = getPosition(column);
+        return position >= 0 ? rows[entry * width + position] : -1;
+    }
+
+    @Override
+    public int getValueCount(int column) {
+        int position = getPosition(column);
+        return position >= 0 ? pools[position].size() : 0;
+    }
+
+    @Override
+    public int getDictionary(int entry) {
+        return dictionaries != null ? dictionaries[entry] : 0;
+    }
+
+    @Override
+    public EntryMetadata getMetadata(int entry) {
+        int length = 0;
+        for (int column = 0; column < positions.length; column++) {
+            if (getValueId(entry, column) >= 0) {
+                length = column + 1;
+            }
+        }
+        String[] columns = new String[length];
+        for (int column = 0; column < length; column++) {
+            columns[column] = getValue(entry, column);
+        }
+        EntryMetadata metadata = new EntryMetadata();
+        int dictionary = getDictionary(entry);
+        metadata.setText(getValue(entry, getPhraseColumn(dictionary)));
+        metadata.setColumns(columns);
+        return metadata;
+    }
+
+    /**
+     * Moves entries so that entry {@code order[i]} gets id {@code i}.
+     */
+    void reorder(int[] order) {
+        int[] reordered = new int[size * width];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(rows, order[i] * width, reordered, i * width, width);
+        }
+        rows = reordered;
+        if (dictionaries != null) {
+            int[] reorderedDictionaries = new int[size];
+            for (int i = 0; i < size; i++) {
+                reorderedDictionaries[i] = dictionaries[order[i]];
+            }
+            dictionaries = reorderedDictionaries;
+        }
+    }
+
+    /**
+     * Releases memory needed only while adding entries. Table can not be modified afterwards.
+     */
+    void trim() {
+        rows = Arrays.copyOf(rows, size * width);
+        if (dictionaries != null) {
+            dictionaries = Arrays.copyOf(dictionaries, size);
+        }
+        for (ValuePool pool : pools) {
+            pool.trim();
+        }
+        trimmed = true;
+    }
+
+    long estimateMemory() {
+        long bytes = MemoryEstimates.object(6 * MemoryEstimates.REFERENCE + 2 * 4 + 2)
+                + MemoryEstimates.array(phraseColumns, phraseColumns.length, 4)
+                + MemoryEstimates.array(positions, positions.length, 4)
+                + MemoryEstimates.array(dictionaries, dictionaries != null ? dictionaries.length : 0, 4)
+                + MemoryEstimates.array(pools, pools.length, MemoryEstimates.REFERENCE)
+                + MemoryEstimates.array(rows, rows.length, 4);
+        for (ValuePool pool : pools) {
+            bytes += pool.estimateMemory();
+        }
+        return bytes;
+    }
+
+    int getColumnCount() {
+        return width;
+    }
+
+    int getDistinctValueCount() {
+        int count = 0;
+        for (ValuePool pool : pools) {
+            count += pool.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return whether values of the column are stored
+     */
+    boolean isKept(int column) {
+        return allColumns ? column >= 0 : getPosition(column) >= 0;
+    }
+
+    int getPhraseColumn(int dictionary) {
+        return phraseColumns[Math.min(dictionary, phraseColumns.length - 1)];
+    }
+
+    private int getPosition(int column) {
+        return column >= 0 && column < positions.length ? positions[column] : -1;
+    }
+
+    private void addColumn(int column) {
+        if (column >= positions.length) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, column + 1);
+            Arrays.fill(positions, oldLength, positions.length, -1);
+        }
+        positions[column] = width;
+        pools = Arrays.copyOf(pools, width + 1);
+        pools[width] = new ValuePool();
+        if (size > 0) {
+            int[] widened = new int[(size * 2 + 16) * (width + 1)];
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(rows, i * width, widened, i * (width + 1), width);
+                widened[i * (width + 1) + width] = -1;
+            }
+            rows = widened;
+        }
+        width++;
+    }
+}
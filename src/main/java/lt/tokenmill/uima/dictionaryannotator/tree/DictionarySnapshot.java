@@ -0,0 +1,362 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable version of a dictionary: a loaded {@link DictionaryTree} with entries added and removed at runtime.
+ * The tree itself is never modified. Added entries are kept in a trie of their own, whose children are
+ * {@link PersistentIntMap}s keyed by token id, and removed tree entries in a set of entry ids.
+ * {@link #add(List, String[], int)} and {@link #remove(List, int)} return a new snapshot which shares everything
+ * but the copied path to the entry with this one, so an update costs memory proportional to the entry length
+ * and a reader sees the same entries for as long as it holds a snapshot, without locks.
+ * Matched by {@link SnapshotMatcher}.
+ */
+public final class DictionarySnapshot {
+
+    private static final Node EMPTY = new Node(PersistentIntMap.empty(), new int[0]);
+
+    private final DictionaryTree tree;
+    private final ColumnarEntryTable treeEntries;
+    // Tokens which are not in the tree vocabulary by Vocabulary.hash, ids continue after the tree vocabulary
+    private final PersistentIntMap<AddedToken> tokens;
+    private final int tokenCount;
+    private final Node root;
+    // Added entries by id, ids continue after the tree entries
+    private final PersistentIntMap<AddedEntry> entries;
+    private final int nextEntry;
+    // Removed tree entries
+    private final PersistentIntMap<Boolean> removed;
+    private final int maxEntryLength;
+    private final Table table = new Table();
+
+    private DictionarySnapshot(DictionaryTree tree, PersistentIntMap<AddedToken> tokens, int tokenCount, Node root,
+                               PersistentIntMap<AddedEntry> entries, int nextEntry, PersistentIntMap<Boolean> removed,
+                               int maxEntryLength) {
+        this.tree = tree;
+        this.treeEntries = tree.getEntries();
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+        this.root = root;
+        this.entries = entries;
+        this.nextEntry = nextEntry;
+        this.removed = removed;
+        this.maxEntryLength = maxEntryLength;
+    }
+
+    /**
+     * @return snapshot with the entries of the tree only
+     * @throws IllegalArgumentException if the tree is frozen
+     */
+    public static DictionarySnapshot of(DictionaryTree tree) {
+        if (tree.isFrozen()) {
+            throw new IllegalArgumentException("Frozen dictionary tree can not be updated");
+        }
+        return new DictionarySnapshot(tree, PersistentIntMap.empty(), tree.getVocabulary().size(), EMPTY,
+                PersistentIntMap.empty(), tree.getEntryCount(), PersistentIntMap.empty(), tree.getMaxEntryLength());
+    }
+
+    /**
+     * @param entryTokens normalized entry tokens, as the tree loader would add them
+     * @param record      CSV record of the entry, only the columns kept by the tree are read
+     * @param dictionary  index of the dictionary the entry belongs to
+     * @return snapshot with the entry added
+     */
+    public DictionarySnapshot add(List<String> entryTokens, String[] record, int dictionary) {
+        if (entryTokens.isEmpty()) {
+            throw new IllegalArgumentException("Dictionary entry has no tokens");
+        }
+        PersistentIntMap<AddedToken> addedTokens = tokens;
+        int addedTokenCount = tokenCount;
+        int[] ids = new int[entryTokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String token = entryTokens.get(i);
+            int id = getTokenId(token, addedTokens);
+            if (id < 0) {
+                id = addedTokenCount++;
+                int hash = Vocabulary.hash(token);
+                addedTokens = addedTokens.put(hash, new AddedToken(token, id, addedTokens.get(hash)));
+            }
+            ids[i] = id;
+        }
+        int entry = nextEntry;
+        return new DictionarySnapshot(tree, addedTokens, addedTokenCount, add(root, ids, 0, entry),
+                entries.put(entry, new AddedEntry(record.clone(), dictionary)), entry + 1, removed,
+                Math.max(maxEntryLength, ids.length));
+    }
+
+    /**
+     * Removes every entry of the dictionary with the given tokens, whether it was loaded or added.
+     *
+     * @param entryTokens normalized entry tokens, as the tree loader would add them
+     * @return snapshot without the entries, this snapshot if there are none
+     */
+    public DictionarySnapshot remove(List<String> entryTokens, int dictionary) {
+        int[] ids = new int[entryTokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = getTokenId(entryTokens.get(i));
+            if (ids[i] < 0) {
+                return this;
+            }
+        }
+        PersistentIntMap<Boolean> removedEntries = removed;
+        DictionaryTreeElement element = ids.length > 0 ? tree.getMatching(ids[0]) : null;
+        for (int i = 1; i < ids.length && element != null; i++) {
+            element = element.getChild(ids[i]);
+        }
+        if (element != null) {
+            for (int i = 0; i < element.getEntryCount(); i++) {
+                int entry = element.getEntry(i);
+                if (treeEntries.getDictionary(entry) == dictionary && removedEntries.get(entry) == null) {
+                    removedEntries = removedEntries.put(entry, Boolean.TRUE);
+                }
+            }
+        }
+        PersistentIntMap<AddedEntry> addedEntries = entries;
+        Node node = root;
+        for (int i = 0; i < ids.length && node != null; i++) {
+            node = node.getChild(ids[i]);
+        }
+        Node updatedRoot = root;
+        if (node != null) {
+            int[] kept = new int[node.entries.length];
+            int count = 0;
+            for (int entry : node.entries) {
+                if (entries.get(entry).dictionary == dictionary) {
+                    addedEntries = addedEntries.remove(entry);
+                } else {
+                    kept[count++] = entry;
+                }
+            }
+            if (count < node.entries.length) {
+                updatedRoot = replaceEntries(root, ids, 0, Arrays.copyOf(kept, count));
+                if (updatedRoot == null) {
+                    updatedRoot = EMPTY;
+                }
+            }
+        }
+        if (removedEntries == removed && updatedRoot == root) {
+            return this;
+        }
+        return new DictionarySnapshot(tree, tokens, tokenCount, updatedRoot, addedEntries, nextEntry, removedEntries,
+                maxEntryLength);
+    }
+
+    /**
+     * @return loaded tree the updates apply to
+     */
+    public DictionaryTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return entries of the tree and the added ones, ids of added entries follow the tree entries.
+     * Column values of added entries are not interned, every entry has its own value ids
+     */
+    public EntryTable getEntryTable() {
+        return table;
+    }
+
+    /**
+     * @return number of entries which are not removed
+     */
+    public int getEntryCount() {
+        return tree.getEntryCount() - removed.size() + entries.size();
+    }
+
+    public int getAddedEntryCount() {
+        return entries.size();
+    }
+
+    public int getRemovedEntryCount() {
+        return removed.size();
+    }
+
+    /**
+     * @return number of tokens in the longest entry, including removed ones
+     */
+    public int getMaxEntryLength() {
+        return maxEntryLength;
+    }
+
+    /**
+     * @return id of the token or -1 if no entry of the tree or added ones contains it
+     */
+    public int getTokenId(CharSequence token) {
+        return getTokenId(token, tokens);
+    }
+
+    private int getTokenId(CharSequence token, PersistentIntMap<AddedToken> addedTokens) {
+        int id = tree.getTokenId(token);
+        if (id >= 0 || addedTokens.size() == 0) {
+            return id;
+        }
+        for (AddedToken added = addedTokens.get(Vocabulary.hash(token)); added != null; added = added.next) {
+            if (added.token.contentEquals(token)) {
+                return added.id;
+            }
+        }
+        return -1;
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    boolean hasRemovedEntries() {
+        return removed.size() > 0;
+    }
+
+    boolean isRemoved(int entry) {
+        return removed.get(entry) != null;
+    }
+
+    private static Node add(Node node, int[] ids, int index, int entry) {
+        if (node == null) {
+            node = EMPTY;
+        }
+        if (index == ids.length) {
+            int[] entries = Arrays.copyOf(node.entries, node.entries.length + 1);
+            entries[node.entries.length] = entry;
+            return new Node(node.children, entries);
+        }
+        Node child = add(node.children.get(ids[index]), ids, index + 1, entry);
+        return new Node(node.children.put(ids[index], child), node.entries);
+    }
+
+    /**
+     * @return copy of the path with new entries at its end, null if the node is left without entries and children
+     */
+    private static Node replaceEntries(Node node, int[] ids, int index, int[] entries) {
+        Node updated;
+        if (index == ids.length) {
+            updated = new Node(node.children, entries);
+        } else {
+            Node child = replaceEntries(node.children.get(ids[index]), ids, index + 1, entries);
+            updated = new Node(child != null ? node.children.put(ids[index], child) : node.children.remove(ids[index]),
+                    node.entries);
+        }
+        return updated.children.size() == 0 && updated.entries.length == 0 ? null : updated;
+    }
+
+    /**
+     * Node of the added entries trie, immutable.
+     */
+    static final class Node {
+
+        private final PersistentIntMap<Node> children;
+        private final int[] entries;
+
+        private Node(PersistentIntMap<Node> children, int[] entries) {
+            this.children = children;
+            this.entries = entries;
+        }
+
+        Node getChild(int tokenId) {
+            return children.get(tokenId);
+        }
+
+        boolean hasChildren() {
+            return children.size() > 0;
+        }
+
+        int getEntryCount() {
+            return entries.length;
+        }
+
+        int getEntry(int index) {
+            return entries[index];
+        }
+    }
+
+    private static final class AddedToken {
+
+        private final String token;
+        private final int id;
+        // Other token with the same hash
+        private final AddedToken next;
+
+        private AddedToken(String token, int id, AddedToken next) {
+            this.token = token;
+            this.id = id;
+            this.next = next;
+        }
+    }
+
+    private static final class AddedEntry {
+
+        private final String[] record;
+        private final int dictionary;
+
+        private AddedEntry(String[] record, int dictionary) {
+            this.record = record;
+            this.dictionary = dictionary;
+        }
+    }
+
+    /**
+     * Tree entries followed by the added ones. Value id of an added entry column is the number of tree values
+     * in the column plus the position of the entry among the added ones.
+     */
+    private final class Table implements EntryTable {
+
+        @Override
+        public int size() {
+            return nextEntry;
+        }
+
+        @Override
+        public String getValue(int entry, int column) {
+            if (entry < treeEntries.size()) {
+                return treeEntries.getValue(entry, column);
+            }
+            AddedEntry added = entries.get(entry);
+            return added != null && treeEntries.isKept(column) && column < added.record.length
+                    ? added.record[column] : null;
+        }
+
+        @Override
+        public int getValueId(int entry, int column) {
+            if (entry < treeEntries.size()) {
+                return treeEntries.getValueId(entry, column);
+            }
+            return getValue(entry, column) != null ? treeEntries.getValueCount(column) + entry - treeEntries.size() : -1;
+        }
+
+        @Override
+        public int getValueCount(int column) {
+            return treeEntries.getValueCount(column) + nextEntry - treeEntries.size();
+        }
+
+        @Override
+        public int getDictionary(int entry) {
+            if (entry < treeEntries.size()) {
+                return treeEntries.getDictionary(entry);
+            }
+            AddedEntry added = entries.get(entry);
+            return added != null ? added.dictionary : 0;
+        }
+
+        @Override
+        public EntryMetadata getMetadata(int entry) {
+            if (entry < treeEntries.size()) {
+                return treeEntries.getMetadata(entry);
+            }
+            AddedEntry added = entries.get(entry);
+            int length = 0;
+            for (int column = 0; added != null && column < added.record.length; column++) {
+                if (getValue(entry, column) != null) {
+                    length = column + 1;
+                }
+            }
+            String[] columns = new String[length];
+            for (int column = 0; column < length; column++) {
+                columns[column] = getValue(entry, column);
+            }
+            EntryMetadata metadata = new EntryMetadata();
+            metadata.setText(getValue(entry, treeEntries.getPhraseColumn(getDictionary(entry))));
+            metadata.setColumns(columns);
+            return metadata;
+        }
+    }
+}
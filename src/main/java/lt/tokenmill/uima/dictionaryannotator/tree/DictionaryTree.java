@@ -1,28 +1,303 @@
 package lt.tokenmill.uima.dictionaryannotator.tree;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
 /**
  * Stores dictionary in a tree structure to allow efficient access.
+ * Every distinct token is interned into {@link Vocabulary} once and tree nodes are keyed by token id.
+ * Entry metadata is kept in {@link ColumnarEntryTable}, nodes refer to entries by id.
+ * Tree is populated once when the dictionary is loaded and must not be modified after it is published.
+ * A populated tree holds no matching state and is safe to share between threads,
+ * per document state is kept by {@link TokenMatcher}.
+ * <p>
+ * A compacted tree can be frozen into a minimized {@link FrozenTree}, which replaces the nodes and is matched
+ * by {@link TreeMatcher} only.
  */
 public class DictionaryTree {
 
     private DictionaryTreeElement root;
+    private FrozenTree frozen;
+    // Heap usage of the nodes replaced by the frozen tree
+    private long unfrozenNodeBytes;
+    private Vocabulary vocabulary;
+    private ColumnarEntryTable entries;
+    private int nodeCount = 1;
+    private int maxEntryLength;
+    private boolean compacted;
 
+    /**
+     * Tree which keeps all CSV columns, phrase is in the first one.
+     */
     public DictionaryTree() {
-        root = new DictionaryTreeElement(null);
+        this(0, null);
     }
 
-    public void addEntry(List<String> entryTokens, EntryMetadata metadata) {
+    /**
+     * @param columns CSV columns to keep in entry metadata or null to keep all of them
+     */
+    public DictionaryTree(int phraseColumn, int[] columns) {
+        this(new int[]{phraseColumn}, columns);
+    }
+
+    /**
+     * Tree of several dictionaries combined, which share vocabulary and nodes of common phrases.
+     * Entries are tagged by dictionary index, see {@link EntryTable#getDictionary(int)}.
+     *
+     * @param phraseColumns phrase column of each dictionary
+     * @param columns       CSV columns to keep in entry metadata or null to keep all of them
+     */
+    public DictionaryTree(int[] phraseColumns, int[] columns) {
+        root = new DictionaryTreeElement();
+        vocabulary = new Vocabulary();
+        entries = new ColumnarEntryTable(phraseColumns, columns);
+    }
+
+    /**
+     * @param record CSV record of the entry, only the kept columns are stored
+     * @return id of the new entry
+     */
+    public int addEntry(List<String> entryTokens, String[] record) {
+        return addEntry(entryTokens, record, 0);
+    }
+
+    /**
+     * @param record     CSV record of the entry, only the kept columns are stored
+     * @param dictionary index of the dictionary the entry comes from
+     * @return id of the new entry
+     */
+    public int addEntry(List<String> entryTokens, String[] record, int dictionary) {
+        checkModifiable();
         DictionaryTreeElement current = root;
 
         for (String part : entryTokens) {
-            current = current.addChild(part);
+            DictionaryTreeElement parent = current;
+            int childCount = parent.getChildCount();
+            current = parent.addChild(vocabulary.add(part));
+            nodeCount += parent.getChildCount() - childCount;
+        }
+        int entry = entries.add(record, dictionary);
+        current.addEntry(entry);
+        maxEntryLength = Math.max(maxEntryLength, entryTokens.size());
+        return entry;
+    }
+
+    /**
+     * Adds entries of the batch in their order, the tree is the same as if they were added one by one.
+     */
+    public void addEntries(EntryBatch batch) {
+        addEntries(batch, 0);
+    }
+
+    /**
+     * @param dictionary index of the dictionary the entries come from
+     */
+    public void addEntries(EntryBatch batch, int dictionary) {
+        checkModifiable();
+        Vocabulary batchVocabulary = batch.getVocabulary();
+        int[] tokenIds = new int[batchVocabulary.size()];
+        for (int i = 0; i < tokenIds.length; i++) {
+            tokenIds[i] = vocabulary.add(batchVocabulary.getToken(i));
+        }
+        int token = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            DictionaryTreeElement current = root;
+            int end = batch.getTokenEnd(i);
+            maxEntryLength = Math.max(maxEntryLength, end - token);
+            for (; token < end; token++) {
+                DictionaryTreeElement parent = current;
+                int childCount = parent.getChildCount();
+                current = parent.addChild(tokenIds[batch.getTokenId(token)]);
+                nodeCount += parent.getChildCount() - childCount;
+            }
+            current.addEntry(entries.add(batch.getRecord(i), dictionary));
+        }
+    }
+
+    /**
+     * Renumbers entries so that entries of every node are a range of consecutive ids and releases memory
+     * needed only while loading. Tree can not be modified afterwards.
+     */
+    public void compact() {
+        if (compacted) {
+            return;
+        }
+        int[] order = new int[entries.size()];
+        int next = 0;
+        boolean reordered = false;
+        Deque<DictionaryTreeElement> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            DictionaryTreeElement element = stack.pop();
+            for (int i = 0; i < element.getEntryCount(); i++) {
+                int entry = element.getEntry(i);
+                reordered |= entry != next + i;
+                order[next + i] = entry;
+            }
+            if (element.getEntryCount() > 0) {
+                element.setEntryRange(next);
+                next += element.getEntryCount();
+            }
+            DictionaryTreeElement[] children = element.getChildren();
+            if (children != null) {
+                for (DictionaryTreeElement child : children) {
+                    if (child != null) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+        if (reordered) {
+            entries.reorder(order);
+        }
+        entries.trim();
+        compacted = true;
+    }
+
+    /**
+     * Compacts the tree and replaces its nodes by a minimized graph where identical subtrees are shared and
+     * children are sorted arrays, see {@link FrozenTree}. Renumbers entries, every entry keeps its own metadata.
+     * A frozen tree is matched by {@link TreeMatcher} only, structures compiled from the nodes, such as
+     * Aho-Corasick automaton, character trie, fuzzy index, binary dictionary or runtime updates, need a tree
+     * which is not frozen.
+     */
+    public void freeze() {
+        if (frozen != null) {
+            return;
+        }
+        compact();
+        unfrozenNodeBytes = estimateNodeMemory();
+        int[] order = new int[entries.size()];
+        FrozenTree minimized = new FrozenTree(root, vocabulary.size(), order);
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != i) {
+                entries.reorder(order);
+                break;
+            }
         }
-        current.addMetadata(metadata);
+        frozen = minimized;
+        root = null;
+    }
+
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    /**
+     * @return id of the token or -1 if no dictionary entry contains it
+     */
+    public int getTokenId(CharSequence token) {
+        return vocabulary.getId(token);
+    }
+
+    /**
+     * @throws IllegalStateException if the tree is frozen
+     */
+    public DictionaryTreeElement getMatching(int tokenId) {
+        return tokenId >= 0 ? getRoot().getChild(tokenId) : null;
+    }
+
+    public DictionaryTreeElement getMatching(CharSequence token) {
+        return getMatching(getTokenId(token));
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public EntryTable getEntryTable() {
+        return entries;
+    }
+
+    /**
+     * @return number of nodes, of the minimized graph if the tree is frozen
+     */
+    public int getNodeCount() {
+        return frozen != null ? frozen.getNodeCount() : nodeCount;
+    }
+
+    /**
+     * @return number of tokens in the longest entry
+     */
+    public int getMaxEntryLength() {
+        return maxEntryLength;
+    }
+
+    /**
+     * @return estimated heap usage of tree nodes, vocabulary and entry metadata in bytes
+     */
+    public long estimateMemory() {
+        return estimateNodeMemory() + vocabulary.estimateMemory() + entries.estimateMemory();
+    }
+
+    /**
+     * @return estimated heap usage of tree nodes, vocabulary and entry metadata
+     */
+    public String getMemoryReport() {
+        long nodeBytes = estimateNodeMemory();
+        long vocabularyBytes = vocabulary.estimateMemory();
+        long entryBytes = entries.estimateMemory();
+        String nodes = frozen == null ? String.format("nodes: %d, %d bytes", nodeCount, nodeBytes)
+                : String.format("nodes: %d, %d bytes frozen into %d nodes and %d edges, %d bytes",
+                nodeCount, unfrozenNodeBytes, frozen.getNodeCount(), frozen.getEdgeCount(), nodeBytes);
+        return String.format("%s; vocabulary: %d tokens, %d bytes; "
+                        + "entries: %d with %d columns and %d distinct values, %d bytes; total: %d bytes",
+                nodes, vocabulary.size(), vocabularyBytes,
+                entries.size(), entries.getColumnCount(), entries.getDistinctValueCount(), entryBytes,
+                nodeBytes + vocabularyBytes + entryBytes);
+    }
+
+    private long estimateNodeMemory() {
+        if (frozen != null) {
+            return frozen.estimateMemory();
+        }
+        long nodeBytes = 0;
+        Deque<DictionaryTreeElement> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            DictionaryTreeElement element = stack.pop();
+            nodeBytes += element.estimateMemory();
+            DictionaryTreeElement[] children = element.getChildren();
+            if (children != null) {
+                for (DictionaryTreeElement child : children) {
+                    if (child != null) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+        return nodeBytes;
+    }
+
+    private void checkModifiable() {
+        if (compacted) {
+            throw new IllegalStateException("Dictionary tree is compacted and can not be modified");
+        }
+    }
+
+    ColumnarEntryTable getEntries() {
+        return entries;
+    }
+
+    /**
+     * @throws IllegalStateException if the tree is frozen
+     */
+    DictionaryTreeElement getRoot() {
+        if (frozen != null) {
+            throw new IllegalStateException("Dictionary tree is frozen and can be matched only by " + TreeMatcher.class.getSimpleName());
+        }
+        return root;
+    }
+
+    /**
+     * @return minimized graph or null if the tree is not frozen
+     */
+    FrozenTree getFrozen() {
+        return frozen;
     }
 
-    public DictionaryTreeElement getMatching(String token) {
-        return root.getChild(token);
+    Vocabulary getVocabulary() {
+        return vocabulary;
     }
 }
@@ -1,46 +1,131 @@
 package lt.tokenmill.uima.dictionaryannotator.tree;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Tree node. Children are kept in an open addressing table keyed by vocabulary token id,
+ * leaf nodes and nodes without entries do not allocate any collections.
+ * Entries ending at the node are ids in {@link EntryTable}, normally a range of consecutive ids.
+ */
 public class DictionaryTreeElement {
 
-    private String token;
+    private int firstEntry;
 
-    private List<EntryMetadata> metadata;
+    private int entryCount;
 
-    private Map<String, DictionaryTreeElement> children;
+    // Entry ids, only while the node has entries which are not consecutive
+    private int[] entries;
 
-    DictionaryTreeElement(String token) {
-        this.token = token;
-        this.children = new HashMap<>();
-        this.metadata = new ArrayList<>();
+    private int[] childTokens;
+
+    private DictionaryTreeElement[] children;
+
+    private int childCount;
+
+    DictionaryTreeElement() {
     }
 
-    DictionaryTreeElement addChild(String token) {
-        DictionaryTreeElement child = children.get(token);
-        if (child == null) {
-            child = new DictionaryTreeElement(token);
-            children.put(token, child);
+    DictionaryTreeElement addChild(int tokenId) {
+        int slot = IntTables.find(childTokens, tokenId);
+        if (slot >= 0) {
+            return children[slot];
         }
+        if (childTokens == null || (childCount + 1) * 2 > childTokens.length) {
+            resize(IntTables.capacity(childCount + 1));
+        }
+        DictionaryTreeElement child = new DictionaryTreeElement();
+        slot = IntTables.insertionSlot(childTokens, tokenId);
+        childTokens[slot] = tokenId + 1;
+        children[slot] = child;
+        childCount++;
         return child;
     }
 
-    void addMetadata(EntryMetadata metadata) {
-        this.metadata.add(metadata);
+    void addEntry(int entry) {
+        if (entryCount == 0) {
+            firstEntry = entry;
+        } else if (entries != null || entry != firstEntry + entryCount) {
+            if (entries == null) {
+                entries = new int[entryCount * 2];
+                for (int i = 0; i < entryCount; i++) {
+                    entries[i] = firstEntry + i;
+                }
+            } else if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, entryCount * 2);
+            }
+            entries[entryCount] = entry;
+        }
+        entryCount++;
+    }
+
+    void setEntryRange(int firstEntry) {
+        this.firstEntry = firstEntry;
+        this.entries = null;
     }
 
     public boolean isEndElement() {
-        return children.size() > 0;
+        return childCount > 0;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getEntry(int index) {
+        return entries != null ? entries[index] : firstEntry + index;
+    }
+
+    public DictionaryTreeElement getChild(int tokenId) {
+        int slot = IntTables.find(childTokens, tokenId);
+        return slot >= 0 ? children[slot] : null;
+    }
+
+    int getChildCount() {
+        return childCount;
+    }
+
+    /**
+     * @return raw children table, token id + 1 for used slots and 0 for empty ones
+     */
+    int[] getChildTokens() {
+        return childTokens;
+    }
+
+    DictionaryTreeElement[] getChildren() {
+        return children;
+    }
+
+    int getFirstEntry() {
+        return firstEntry;
     }
 
-    public List<EntryMetadata> getMetadata() {
-        return this.metadata;
+    /**
+     * @return entry ids or null if entries are the range starting at {@link #getFirstEntry()}
+     */
+    int[] getEntryIds() {
+        return entries;
     }
 
-    public DictionaryTreeElement getChild(String token) {
-        return children.get(token);
+    long estimateMemory() {
+        return MemoryEstimates.object(3 * 4 + 3 * MemoryEstimates.REFERENCE)
+                + MemoryEstimates.array(childTokens, childTokens != null ? childTokens.length : 0, 4)
+                + MemoryEstimates.array(children, children != null ? children.length : 0, MemoryEstimates.REFERENCE)
+                + MemoryEstimates.array(entries, entries != null ? entries.length : 0, 4);
+    }
+
+    private void resize(int capacity) {
+        int[] oldTokens = childTokens;
+        DictionaryTreeElement[] oldChildren = children;
+        childTokens = new int[capacity];
+        children = new DictionaryTreeElement[capacity];
+        if (oldTokens != null) {
+            for (int i = 0; i < oldTokens.length; i++) {
+                if (oldTokens[i] != 0) {
+                    int slot = IntTables.insertionSlot(childTokens, oldTokens[i] - 1);
+                    childTokens[slot] = oldTokens[i];
+                    children[slot] = oldChildren[i];
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
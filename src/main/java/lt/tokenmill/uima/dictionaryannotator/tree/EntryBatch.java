@@ -0,0 +1,62 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dictionary entries tokenized and normalized ahead of adding them to {@link DictionaryTree},
+ * so that batches can be prepared by several threads while the tree is populated by one.
+ * Tokens are interned into batch local ids in the order of their first occurrence, so
+ * {@link DictionaryTree#addEntries(EntryBatch)} looks up every distinct token of the batch only once
+ * and builds exactly the same tree as adding the entries one by one.
+ */
+public final class EntryBatch {
+
+    private final Vocabulary vocabulary = new Vocabulary();
+    private int[] tokenIds = new int[64];
+    private int[] tokenEnds = new int[16];
+    private String[][] records = new String[16][];
+    private int size;
+    private int tokenCount;
+
+    /**
+     * @param record CSV record of the entry, only the columns kept by the tree are stored
+     */
+    public void add(List<String> entryTokens, String[] record) {
+        if (size == records.length) {
+            records = Arrays.copyOf(records, size * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, size * 2);
+        }
+        if (tokenCount + entryTokens.size() > tokenIds.length) {
+            tokenIds = Arrays.copyOf(tokenIds, Math.max(tokenIds.length * 2, tokenCount + entryTokens.size()));
+        }
+        for (String token : entryTokens) {
+            tokenIds[tokenCount++] = vocabulary.add(token);
+        }
+        tokenEnds[size] = tokenCount;
+        records[size++] = record;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    int getTokenId(int index) {
+        return tokenIds[index];
+    }
+
+    /**
+     * @return index after the last token of the entry, tokens of the entry start where tokens of the previous one end
+     */
+    int getTokenEnd(int entry) {
+        return tokenEnds[entry];
+    }
+
+    String[] getRecord(int entry) {
+        return records[entry];
+    }
+}
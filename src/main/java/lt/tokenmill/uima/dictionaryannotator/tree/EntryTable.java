@@ -0,0 +1,38 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Metadata of dictionary entries addressed by entry id. Column values are interned, so equal values of a column
+ * share a value id and consumers may cache anything derived from a value by its id.
+ */
+public interface EntryTable {
+
+    int size();
+
+    /**
+     * @param column CSV column index
+     * @return value of the column or null if the entry has no such column or the column is not kept
+     */
+    String getValue(int entry, int column);
+
+    /**
+     * @param column CSV column index
+     * @return id of the column value, less than {@link #getValueCount(int)}, or -1 if there is no value
+     */
+    int getValueId(int entry, int column);
+
+    /**
+     * @return upper bound of value ids in the column
+     */
+    int getValueCount(int column);
+
+    /**
+     * @return index of the dictionary the entry was loaded from when several dictionaries are combined
+     * in one tree, otherwise 0
+     */
+    int getDictionary(int entry);
+
+    /**
+     * Decodes entry into a new object. Meant for tools and tests, matching uses column values directly.
+     */
+    EntryMetadata getMetadata(int entry);
+}
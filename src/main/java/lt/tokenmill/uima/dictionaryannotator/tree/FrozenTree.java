@@ -0,0 +1,251 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimized, immutable form of a populated tree: identical subtrees are stored once, so suffixes shared by many
+ * entries ("... Inc", "... of America") become a single chain of nodes, and children of a node are a sorted
+ * range of flat edge arrays instead of a table object per node.
+ * <p>
+ * A shared node can not hold entry ids of its own, as it ends different phrases on different paths. Entries are
+ * numbered depth first with children in token id order instead, and every edge holds the number of entries
+ * ordered before the child within the subtree of its parent. Entry ids of a path are then the sum of its edge
+ * offsets, followed by the entry count of the node, and two subtrees are identical if they have the same
+ * edges and entry counts. Entry table is reordered to these ids when the tree is frozen, see
+ * {@link DictionaryTree#freeze()}.
+ */
+final class FrozenTree {
+
+    static final int ROOT = 0;
+
+    // First edge and entry count of every node, edges of node n are from nodes[2 * n] until nodes[2 * n + 2]
+    private final int[] nodes;
+    // Token id, target node and entry offset of every edge
+    private final int[] edges;
+    // Target node + 1 (0 - none) and entry offset of the root child of every token id, read without a search
+    private final int[] rootEdges;
+    private final int nodeCount;
+    private final int edgeCount;
+
+    /**
+     * @param order filled with the entry id of every new entry id
+     */
+    FrozenTree(DictionaryTreeElement root, int vocabularySize, int[] order) {
+        Builder builder = new Builder(order);
+        int rootNode = builder.add(root);
+        // Root is numbered last by the builder, it is moved to the front
+        this.nodeCount = builder.nodeCount;
+        this.edgeCount = builder.edgeCount;
+        this.nodes = new int[2 * nodeCount + 2];
+        this.edges = new int[3 * edgeCount];
+        int[] renumbered = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            renumbered[node] = node == rootNode ? ROOT : node < rootNode ? node + 1 : node;
+        }
+        int edge = 0;
+        for (int node : orderWithRootFirst(rootNode)) {
+            int to = renumbered[node];
+            nodes[2 * to] = edge;
+            nodes[2 * to + 1] = builder.nodes[2 * node + 1];
+            for (int e = builder.nodes[2 * node]; e < builder.nodes[2 * node] + builder.edgeCounts[node]; e++) {
+                edges[3 * edge] = builder.edges[3 * e];
+                edges[3 * edge + 1] = renumbered[builder.edges[3 * e + 1]];
+                edges[3 * edge + 2] = builder.edges[3 * e + 2];
+                edge++;
+            }
+        }
+        nodes[2 * nodeCount] = edge;
+        this.rootEdges = new int[2 * vocabularySize];
+        for (int e = nodes[0]; e < nodes[2]; e++) {
+            rootEdges[2 * edges[3 * e]] = edges[3 * e + 1] + 1;
+            rootEdges[2 * edges[3 * e] + 1] = edges[3 * e + 2];
+        }
+    }
+
+    private int[] orderWithRootFirst(int rootNode) {
+        int[] order = new int[nodeCount];
+        order[0] = rootNode;
+        for (int node = 0, i = 1; node < nodeCount; node++) {
+            if (node != rootNode) {
+                order[i++] = node;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return edge from the node to its child of the token or -1 if there is none, see {@link #getTarget(int)}
+     */
+    int getEdge(int node, int tokenId) {
+        int low = nodes[2 * node];
+        int high = nodes[2 * node + 2] - 1;
+        while (high - low > 8) {
+            int middle = (low + high) >>> 1;
+            int token = edges[3 * middle];
+            if (token < tokenId) {
+                low = middle + 1;
+            } else if (token > tokenId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        for (int edge = low; edge <= high; edge++) {
+            if (edges[3 * edge] == tokenId) {
+                return edge;
+            }
+        }
+        return -1;
+    }
+
+    int getTarget(int edge) {
+        return edges[3 * edge + 1];
+    }
+
+    /**
+     * @return number of entries of the parent subtree ordered before the target subtree
+     */
+    int getEntryOffset(int edge) {
+        return edges[3 * edge + 2];
+    }
+
+    /**
+     * @return root child of the token or -1 if no entry starts with it
+     */
+    int getRootChild(int tokenId) {
+        return tokenId >= 0 && 2 * tokenId < rootEdges.length ? rootEdges[2 * tokenId] - 1 : -1;
+    }
+
+    /**
+     * @return first entry id of the root child of the token, valid only if the child exists
+     */
+    int getRootEntryOffset(int tokenId) {
+        return rootEdges[2 * tokenId + 1];
+    }
+
+    int getEntryCount(int node) {
+        return nodes[2 * node + 1];
+    }
+
+    boolean hasChildren(int node) {
+        return nodes[2 * node + 2] > nodes[2 * node];
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+    long estimateMemory() {
+        return MemoryEstimates.object(3 * MemoryEstimates.REFERENCE + 2 * 4)
+                + MemoryEstimates.array(nodes, nodes.length, 4)
+                + MemoryEstimates.array(edges, edges.length, 4)
+                + MemoryEstimates.array(rootEdges, rootEdges.length, 4);
+    }
+
+    /**
+     * Numbers distinct subtrees bottom up, children before their parents.
+     */
+    private static final class Builder {
+
+        private final int[] order;
+        private int ordered;
+        private final Map<Signature, Integer> registry = new HashMap<>();
+        private int[] nodes = new int[64];
+        private int[] edgeCounts = new int[32];
+        // Number of entries in the subtree of every node
+        private int[] subtreeEntries = new int[32];
+        private int[] edges = new int[96];
+        private int nodeCount;
+        private int edgeCount;
+
+        private Builder(int[] order) {
+            this.order = order;
+        }
+
+        private int add(DictionaryTreeElement element) {
+            for (int i = 0; i < element.getEntryCount(); i++) {
+                order[ordered++] = element.getEntry(i);
+            }
+            long[] children = sortedChildren(element);
+            int[] signature = new int[1 + 2 * children.length];
+            signature[0] = element.getEntryCount();
+            DictionaryTreeElement[] elements = element.getChildren();
+            for (int c = 0; c < children.length; c++) {
+                signature[1 + 2 * c] = (int) (children[c] >>> 32);
+                signature[2 + 2 * c] = add(elements[(int) children[c]]);
+            }
+            Signature key = new Signature(signature);
+            Integer existing = registry.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            int node = nodeCount++;
+            if (node == edgeCounts.length) {
+                nodes = Arrays.copyOf(nodes, 4 * node);
+                edgeCounts = Arrays.copyOf(edgeCounts, 2 * node);
+                subtreeEntries = Arrays.copyOf(subtreeEntries, 2 * node);
+            }
+            if (3 * (edgeCount + children.length) > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(2 * edges.length, 3 * (edgeCount + children.length)));
+            }
+            nodes[2 * node] = edgeCount;
+            nodes[2 * node + 1] = element.getEntryCount();
+            edgeCounts[node] = children.length;
+            int offset = element.getEntryCount();
+            for (int c = 0; c < children.length; c++) {
+                int child = signature[2 + 2 * c];
+                edges[3 * edgeCount] = signature[1 + 2 * c];
+                edges[3 * edgeCount + 1] = child;
+                edges[3 * edgeCount + 2] = offset;
+                edgeCount++;
+                offset += subtreeEntries[child];
+            }
+            subtreeEntries[node] = offset;
+            registry.put(key, node);
+            return node;
+        }
+
+        /**
+         * @return token id and slot of every child, sorted by token id
+         */
+        private static long[] sortedChildren(DictionaryTreeElement element) {
+            int[] tokens = element.getChildTokens();
+            long[] children = new long[element.getChildCount()];
+            int count = 0;
+            for (int slot = 0; tokens != null && slot < tokens.length; slot++) {
+                if (tokens[slot] != 0) {
+                    children[count++] = ((long) (tokens[slot] - 1) << 32) | slot;
+                }
+            }
+            Arrays.sort(children);
+            return children;
+        }
+    }
+
+    private static final class Signature {
+
+        private final int[] values;
+        private final int hash;
+
+        private Signature(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature && hash == ((Signature) o).hash && Arrays.equals(values, ((Signature) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
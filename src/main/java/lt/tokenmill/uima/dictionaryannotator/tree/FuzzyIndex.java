@@ -0,0 +1,437 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Finds the children of a tree element whose tokens are within an edit distance of a text token, by intersecting
+ * the {@link LevenshteinAutomaton} of the text token with the child tokens of the element. No variants of tokens
+ * are enumerated.
+ * <p>
+ * Child tokens of the root and of every other element with many children are laid out in a character trie of their
+ * own, which is descended only into the branches the automaton accepts. Child tokens of an element with few children
+ * are packed into a single array and stepped through the automaton one by one, or compared directly for distance 1.
+ * <p>
+ * Most text tokens start no match, yet the children of the root have to be searched for each of them. For distance 1
+ * a token within one edit of the text token has either the first half of the text token at its start or the second
+ * half at its end, so such elements are searched twice: the trie of their child tokens is descended exactly along
+ * the first half, and a trie of their reversed child tokens exactly along the reversed second half, and
+ * the automaton is stepped only below the half. A text token none of whose halves is a path of the tries is rejected
+ * after a few characters.
+ * Compiled once from a populated tree, read-only afterwards and safe to share between threads.
+ */
+public class FuzzyIndex {
+
+    // Elements with at least as many children have tries of their child tokens
+    static final int TRIE_MIN_CHILDREN = 16;
+
+    private final DictionaryTree tree;
+    private final Vocabulary vocabulary;
+    private final DictionaryTreeElement root;
+    private final Map<DictionaryTreeElement, ChildTries> tries = new IdentityHashMap<>();
+    // Child tokens of every other element in the order of its child slots, each one preceded by its length
+    private final Map<DictionaryTreeElement, char[]> packedTokens = new IdentityHashMap<>();
+    private final int nodeCount;
+
+    public FuzzyIndex(DictionaryTree tree) {
+        this.tree = tree;
+        this.vocabulary = tree.getVocabulary();
+        this.root = tree.getRoot();
+        int nodeCount = 0;
+        Deque<DictionaryTreeElement> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            DictionaryTreeElement element = pending.pop();
+            if (element.getChildCount() == 0) {
+                continue;
+            }
+            int[] childTokens = element.getChildTokens();
+            DictionaryTreeElement[] children = element.getChildren();
+            int[] tokenIds = new int[element.getChildCount()];
+            int count = 0;
+            for (int slot = 0; slot < childTokens.length; slot++) {
+                if (childTokens[slot] != 0) {
+                    tokenIds[count++] = childTokens[slot] - 1;
+                    pending.push(children[slot]);
+                }
+            }
+            if (element == root || count >= TRIE_MIN_CHILDREN) {
+                ChildTries childTries = new ChildTries(new Trie(vocabulary, tokenIds, false),
+                        new Trie(vocabulary, tokenIds, true));
+                tries.put(element, childTries);
+                nodeCount += childTries.forward.size + childTries.backward.size;
+            } else {
+                packedTokens.put(element, pack(vocabulary, tokenIds));
+            }
+        }
+        this.nodeCount = nodeCount;
+    }
+
+    public DictionaryTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return number of nodes of all tries
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long estimateMemory() {
+        long bytes = MemoryEstimates.object(5 * MemoryEstimates.REFERENCE + 4)
+                // Identity maps keep keys and values in one table of twice the expected size
+                + MemoryEstimates.array(tries, tries.size() * 4, MemoryEstimates.REFERENCE)
+                + MemoryEstimates.array(packedTokens, packedTokens.size() * 4, MemoryEstimates.REFERENCE);
+        for (ChildTries childTries : tries.values()) {
+            bytes += MemoryEstimates.object(2 * MemoryEstimates.REFERENCE)
+                    + childTries.forward.estimateMemory() + childTries.backward.estimateMemory();
+        }
+        for (char[] packed : packedTokens.values()) {
+            bytes += MemoryEstimates.array(packed, packed.length, 2);
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds the token id of every child of the element within the distance of the automaton from the text token
+     * to candidates, with its edit distance. The automaton is started with the token, possibly reversed.
+     */
+    void search(DictionaryTreeElement element, CharSequence token, LevenshteinAutomaton automaton,
+                Candidates candidates) {
+        int childCount = element.getChildCount();
+        if (childCount == 0) {
+            return;
+        }
+        if (element == root || childCount >= TRIE_MIN_CHILDREN) {
+            tries.get(element).search(token, automaton, candidates);
+            return;
+        }
+        int maxDistance = automaton.getMaxDistance();
+        if (maxDistance != 1) {
+            automaton.start(token);
+        }
+        // Packed tokens are read from a single array instead of a string of the vocabulary for each child
+        char[] packed = packedTokens.get(element);
+        int[] childTokens = element.getChildTokens();
+        int offset = 0;
+        for (int slot = 0; slot < childTokens.length; slot++) {
+            if (childTokens[slot] != 0) {
+                int length = packed[offset];
+                int distance = maxDistance == 1
+                        ? distanceOne(token, packed, offset + 1, length)
+                        : distance(automaton, packed, offset + 1, length);
+                if (distance <= maxDistance) {
+                    candidates.add(childTokens[slot] - 1, distance);
+                }
+                offset += length + 1;
+            }
+        }
+    }
+
+    DictionaryTreeElement getRoot() {
+        return root;
+    }
+
+    private static char[] pack(Vocabulary vocabulary, int[] tokenIds) {
+        int size = 0;
+        for (int tokenId : tokenIds) {
+            size += vocabulary.getToken(tokenId).length() + 1;
+        }
+        char[] packed = new char[size];
+        int offset = 0;
+        for (int tokenId : tokenIds) {
+            String token = vocabulary.getToken(tokenId);
+            packed[offset] = (char) token.length();
+            token.getChars(0, token.length(), packed, offset + 1);
+            offset += token.length() + 1;
+        }
+        return packed;
+    }
+
+    /**
+     * @return edit distance of the automaton token and the packed token, more than the maximum if it is too far
+     */
+    private static int distance(LevenshteinAutomaton automaton, char[] packed, int offset, int length) {
+        if (Math.abs(length - automaton.getLength()) > automaton.getMaxDistance()) {
+            return automaton.getMaxDistance() + 1;
+        }
+        for (int depth = 1; depth <= length; depth++) {
+            if (!automaton.step(depth, packed[offset + depth - 1])) {
+                return automaton.getMaxDistance() + 1;
+            }
+        }
+        return automaton.getDistance(length);
+    }
+
+    /**
+     * Distance 1 needs no automaton: the tokens may differ only between their common prefix and common suffix.
+     *
+     * @return edit distance of the text token and the packed token, 2 if it is more than 1
+     */
+    private static int distanceOne(CharSequence text, char[] packed, int offset, int length) {
+        int textLength = text.length();
+        if (Math.abs(textLength - length) > 1) {
+            return 2;
+        }
+        int prefix = 0;
+        while (prefix < textLength && prefix < length && text.charAt(prefix) == packed[offset + prefix]) {
+            prefix++;
+        }
+        if (prefix == textLength && prefix == length) {
+            return 0;
+        }
+        int suffix = 0;
+        int common = Math.min(textLength, length) - prefix;
+        int end = offset + length - 1;
+        while (suffix < common && text.charAt(textLength - 1 - suffix) == packed[end - suffix]) {
+            suffix++;
+        }
+        return textLength - prefix - suffix <= 1 && length - prefix - suffix <= 1 ? 1 : 2;
+    }
+
+    /**
+     * Child tokens of an element in a trie and reversed in another one.
+     */
+    private static final class ChildTries {
+
+        private final Trie forward;
+        private final Trie backward;
+
+        private ChildTries(Trie forward, Trie backward) {
+            this.forward = forward;
+            this.backward = backward;
+        }
+
+        private void search(CharSequence token, LevenshteinAutomaton automaton, Candidates candidates) {
+            int length = token.length();
+            if (automaton.getMaxDistance() != 1 || length < 2) {
+                automaton.start(token);
+                forward.search(0, automaton, candidates);
+                return;
+            }
+            int half = length / 2;
+            automaton.start(token, false);
+            forward.search(half, automaton, candidates);
+            int found = candidates.size();
+            automaton.start(token, true);
+            backward.search(length - half, automaton, candidates);
+            // Tokens with both halves intact are found twice
+            candidates.removeRepeated(found);
+        }
+    }
+
+    /**
+     * Nodes are numbered breadth first, so the children of a node are consecutive and their labels are read
+     * from a single region of memory while the automaton is tried on each of them.
+     */
+    private static final class Trie {
+
+        private final char[] labels;
+        // First child and vocabulary id of the token ending at the node or -1 of every node,
+        // children of node n are nodes[2 * n] until nodes[2 * n + 2]
+        private final int[] nodes;
+        private final int size;
+
+        private Trie(Vocabulary vocabulary, int[] ids, boolean reversed) {
+            String[] keys = new String[ids.length];
+            Integer[] order = new Integer[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                order[i] = i;
+                String token = vocabulary.getToken(ids[i]);
+                keys[i] = reversed ? new StringBuilder(token).reverse().toString() : token;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+            // Depth first layout with subtree ends is built from sorted tokens, then renumbered breadth first
+            char[] labels = new char[64];
+            int[] tokenIds = new int[64];
+            int[] subtreeEnds = new int[64];
+            int size = 1;
+            tokenIds[0] = -1;
+            // Node on the path of the previous token at every depth
+            int[] path = new int[16];
+            String previous = "";
+            for (int i : order) {
+                String token = keys[i];
+                if (token.isEmpty()) {
+                    continue;
+                }
+                int common = 0;
+                while (common < previous.length() && common < token.length() && previous.charAt(common) == token.charAt(common)) {
+                    common++;
+                }
+                for (int depth = previous.length(); depth > common; depth--) {
+                    subtreeEnds[path[depth]] = size;
+                }
+                if (path.length <= token.length()) {
+                    path = Arrays.copyOf(path, token.length() * 2);
+                }
+                for (int depth = common + 1; depth <= token.length(); depth++) {
+                    if (size == labels.length) {
+                        labels = Arrays.copyOf(labels, size * 2);
+                        tokenIds = Arrays.copyOf(tokenIds, size * 2);
+                        subtreeEnds = Arrays.copyOf(subtreeEnds, size * 2);
+                    }
+                    labels[size] = token.charAt(depth - 1);
+                    tokenIds[size] = -1;
+                    path[depth] = size++;
+                }
+                tokenIds[path[token.length()]] = ids[i];
+                previous = token;
+            }
+            for (int depth = previous.length(); depth >= 0; depth--) {
+                subtreeEnds[path[depth]] = size;
+            }
+            this.size = size;
+            this.labels = new char[size];
+            this.nodes = new int[2 * size + 1];
+            // Queue of depth first nodes in breadth first order, position in it is the new number
+            int[] queue = new int[size];
+            int tail = 1;
+            for (int head = 0; head < size; head++) {
+                int node = queue[head];
+                this.labels[head] = labels[node];
+                this.nodes[2 * head] = tail;
+                this.nodes[2 * head + 1] = tokenIds[node];
+                for (int child = node + 1; child < subtreeEnds[node]; child = subtreeEnds[child]) {
+                    queue[tail++] = child;
+                }
+            }
+            this.nodes[2 * size] = size;
+        }
+
+        /**
+         * Searches the trie with the automaton below the path of the first exact characters of its token.
+         */
+        private void search(int exact, LevenshteinAutomaton automaton, Candidates candidates) {
+            int node = 0;
+            for (int depth = 1; depth <= exact; depth++) {
+                node = getChild(node, automaton.charAt(depth - 1));
+                if (node < 0) {
+                    return;
+                }
+                automaton.step(depth, labels[node]);
+            }
+            add(node, exact, automaton, candidates);
+            search(node, exact, automaton, candidates);
+        }
+
+        private void search(int node, int depth, LevenshteinAutomaton automaton, Candidates candidates) {
+            if (depth == automaton.getMaxDepth()) {
+                return;
+            }
+            for (int child = nodes[2 * node], end = nodes[2 * node + 2]; child < end; child++) {
+                if (automaton.step(depth + 1, labels[child])) {
+                    add(child, depth + 1, automaton, candidates);
+                    long positions = automaton.getExhaustedPositions(depth + 1);
+                    if (positions == 0) {
+                        search(child, depth + 1, automaton, candidates);
+                    } else {
+                        followExactly(child, positions, automaton, candidates);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Once the path has spent every edit, only the rest of the token may follow, without stepping the automaton
+         * on every child.
+         */
+        private void followExactly(int node, long positions, LevenshteinAutomaton automaton, Candidates candidates) {
+            int length = automaton.getLength();
+            for (int position = Long.numberOfTrailingZeros(positions); position < length;
+                 position = Long.numberOfTrailingZeros(positions)) {
+                positions &= positions - 1;
+                int current = node;
+                for (int i = position; i < length && current >= 0; i++) {
+                    current = getChild(current, automaton.charAt(i));
+                }
+                if (current >= 0 && nodes[2 * current + 1] >= 0) {
+                    candidates.add(nodes[2 * current + 1], automaton.getMaxDistance());
+                }
+            }
+        }
+
+        private void add(int node, int depth, LevenshteinAutomaton automaton, Candidates candidates) {
+            if (nodes[2 * node + 1] >= 0) {
+                int distance = automaton.getDistance(depth);
+                if (distance <= automaton.getMaxDistance()) {
+                    candidates.add(nodes[2 * node + 1], distance);
+                }
+            }
+        }
+
+        private int getChild(int node, char c) {
+            for (int child = nodes[2 * node], end = nodes[2 * node + 2]; child < end; child++) {
+                if (labels[child] == c) {
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+        private long estimateMemory() {
+            return MemoryEstimates.object(2 * MemoryEstimates.REFERENCE + 4)
+                    + MemoryEstimates.array(labels, labels.length, 2)
+                    + MemoryEstimates.array(nodes, nodes.length, 4);
+        }
+    }
+
+    /**
+     * Child token ids of an element close to a text token with their edit distances, reused for every token.
+     */
+    static final class Candidates {
+
+        private int[] tokenIds = new int[16];
+        private int[] costs = new int[16];
+        private int size;
+
+        void add(int tokenId, int cost) {
+            if (size == tokenIds.length) {
+                tokenIds = Arrays.copyOf(tokenIds, size * 2);
+                costs = Arrays.copyOf(costs, size * 2);
+            }
+            tokenIds[size] = tokenId;
+            costs[size] = cost;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getTokenId(int index) {
+            return tokenIds[index];
+        }
+
+        int getCost(int index) {
+            return costs[index];
+        }
+
+        /**
+         * Removes the candidates from the index on which are also before it.
+         */
+        void removeRepeated(int from) {
+            int kept = from;
+            for (int i = from; i < size; i++) {
+                int j = 0;
+                while (j < from && tokenIds[j] != tokenIds[i]) {
+                    j++;
+                }
+                if (j == from) {
+                    tokenIds[kept] = tokenIds[i];
+                    costs[kept++] = costs[i];
+                }
+            }
+            size = kept;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * Follows open partial matches like {@link TreeMatcher}, but a text token may follow any child edge whose token is
+ * within a Levenshtein distance of it. The automaton of the text token is intersected with the child tokens
+ * of every open element, see {@link FuzzyIndex}. Children of the root, which every token may start a match with,
+ * are cached for recent tokens in a two way set associative cache, as text repeats most of its tokens. Tokens shorter than the minimum length or longer than 63 characters
+ * must match exactly. Match cost is the sum of the edits of its tokens, see {@link TreeMatch#getCost()}.
+ */
+public class FuzzyTreeMatcher implements TokenMatcher {
+
+    // Sets of the root candidate cache, each of two slots
+    private static final int CACHE_SETS = 8192;
+
+    private final DictionaryTree tree;
+    private final FuzzyIndex index;
+    private final DictionaryTreeElement root;
+    private final int minTokenLength;
+    private final LevenshteinAutomaton automaton;
+    private final FuzzyIndex.Candidates children = new FuzzyIndex.Candidates();
+    private final char[][] cachedTokens = new char[2 * CACHE_SETS][];
+    private final int[] cachedLengths = new int[2 * CACHE_SETS];
+    private final FuzzyIndex.Candidates[] cachedCandidates = new FuzzyIndex.Candidates[2 * CACHE_SETS];
+    // Slot of every set used last, the other one is replaced on a miss
+    private final boolean[] lastUsedSecond = new boolean[CACHE_SETS];
+    private final TreeMatch match = new TreeMatch();
+    private int[] starts = new int[16];
+    private int[] costs = new int[16];
+    private DictionaryTreeElement[] elements = new DictionaryTreeElement[16];
+    private int[] nextStarts = new int[16];
+    private int[] nextCosts = new int[16];
+    private DictionaryTreeElement[] nextElements = new DictionaryTreeElement[16];
+    private int size;
+    private int peakSize;
+
+    /**
+     * @param maxDistance    largest number of character insertions, deletions and substitutions per token
+     * @param minTokenLength tokens shorter than it are matched exactly
+     */
+    public FuzzyTreeMatcher(FuzzyIndex index, int maxDistance, int minTokenLength) {
+        this.tree = index.getTree();
+        this.index = index;
+        this.root = index.getRoot();
+        this.minTokenLength = minTokenLength;
+        this.automaton = new LevenshteinAutomaton(maxDistance);
+    }
+
+    @Override
+    public void proceed(int begin, int end, CharSequence token, MatchListener listener) {
+        int length = token.length();
+        int open = 0;
+        if (length < minTokenLength || length > LevenshteinAutomaton.MAX_LENGTH) {
+            int tokenId = tree.getTokenId(token);
+            if (tokenId >= 0) {
+                for (int i = 0; i < size; i++) {
+                    DictionaryTreeElement child = elements[i].getChild(tokenId);
+                    if (child != null) {
+                        open = follow(open, starts[i], costs[i], child);
+                    }
+                }
+                DictionaryTreeElement matched = root.getChild(tokenId);
+                if (matched != null) {
+                    open = follow(open, begin, 0, matched);
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                children.clear();
+                index.search(elements[i], token, automaton, children);
+                for (int c = 0; c < children.size(); c++) {
+                    DictionaryTreeElement child = elements[i].getChild(children.getTokenId(c));
+                    open = follow(open, starts[i], costs[i] + children.getCost(c), child);
+                }
+            }
+            FuzzyIndex.Candidates candidates = getRootCandidates(token);
+            for (int c = 0; c < candidates.size(); c++) {
+                DictionaryTreeElement matched = root.getChild(candidates.getTokenId(c));
+                open = follow(open, begin, candidates.getCost(c), matched);
+            }
+        }
+        Arrays.fill(elements, 0, size, null);
+        int[] swapStarts = starts;
+        starts = nextStarts;
+        nextStarts = swapStarts;
+        int[] swapCosts = costs;
+        costs = nextCosts;
+        nextCosts = swapCosts;
+        DictionaryTreeElement[] swapElements = elements;
+        elements = nextElements;
+        nextElements = swapElements;
+        size = open;
+        if (size > peakSize) {
+            peakSize = size;
+        }
+        for (int i = 0; i < size; i++) {
+            if (elements[i].getEntryCount() > 0) {
+                listener.onMatch(match.set(starts[i], end, tree.getEntryTable(), elements[i], costs[i]));
+            }
+        }
+    }
+
+    /**
+     * @return children of the root close to the token, searched only if the token is in neither slot of its cache set
+     */
+    private FuzzyIndex.Candidates getRootCandidates(CharSequence token) {
+        int set = Vocabulary.hash(token) & (CACHE_SETS - 1);
+        for (int way = 0; way < 2; way++) {
+            int slot = 2 * set + way;
+            if (isCached(slot, token)) {
+                lastUsedSecond[set] = way == 1;
+                return cachedCandidates[slot];
+            }
+        }
+        int way = lastUsedSecond[set] ? 0 : 1;
+        lastUsedSecond[set] = way == 1;
+        int slot = 2 * set + way;
+        int length = token.length();
+        char[] cached = cachedTokens[slot];
+        if (cached == null || cached.length < length) {
+            cached = new char[Math.max(length, 16)];
+            cachedTokens[slot] = cached;
+        }
+        if (cachedCandidates[slot] == null) {
+            cachedCandidates[slot] = new FuzzyIndex.Candidates();
+        }
+        for (int i = 0; i < length; i++) {
+            cached[i] = token.charAt(i);
+        }
+        cachedLengths[slot] = length;
+        FuzzyIndex.Candidates candidates = cachedCandidates[slot];
+        candidates.clear();
+        index.search(root, token, automaton, candidates);
+        return candidates;
+    }
+
+    private boolean isCached(int slot, CharSequence token) {
+        char[] cached = cachedTokens[slot];
+        int length = token.length();
+        if (cached == null || cachedLengths[slot] != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached[i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int follow(int open, int start, int cost, DictionaryTreeElement element) {
+        if (open == nextStarts.length) {
+            nextStarts = Arrays.copyOf(nextStarts, open * 2);
+            nextCosts = Arrays.copyOf(nextCosts, open * 2);
+            nextElements = Arrays.copyOf(nextElements, open * 2);
+        }
+        nextStarts[open] = start;
+        nextCosts[open] = cost;
+        nextElements[open] = element;
+        return open + 1;
+    }
+
+    @Override
+    public int getPartialMatchStart() {
+        for (int i = 0; i < size; i++) {
+            if (elements[i].getChildCount() > 0) {
+                return starts[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return largest number of matches followed at once since the last call
+     */
+    public int takePeakPartialMatchCount() {
+        int peak = peakSize;
+        peakSize = size;
+        return peak;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,59 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Helpers for open addressing tables keyed by non-negative ints.
+ * Keys are stored incremented by one, so that zero marks an empty slot and new tables need no filling.
+ * Table length is always a power of two.
+ */
+final class IntTables {
+
+    private IntTables() {
+    }
+
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return slot of the key or -1 if table does not contain it
+     */
+    static int find(int[] keys, int key) {
+        if (keys == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        int stored = key + 1;
+        while (true) {
+            int current = keys[slot];
+            if (current == stored) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return slot where key is stored or should be inserted
+     */
+    static int insertionSlot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        int stored = key + 1;
+        while (keys[slot] != 0 && keys[slot] != stored) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return table capacity which keeps load factor at most 1/2 for the given number of keys
+     */
+    static int capacity(int size) {
+        return Integer.highestOneBit(Math.max(1, size * 2 - 1)) << 1;
+    }
+}
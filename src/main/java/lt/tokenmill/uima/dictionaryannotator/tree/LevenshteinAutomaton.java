@@ -0,0 +1,164 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Levenshtein automaton of a single token with bounded distance, stepped one character at a time along
+ * a path of a character trie. State at each depth is a bit vector for every number of edits up to the maximum,
+ * bit j is set if the path is within that many edits of the first j token characters, so a step is a few shifts
+ * and ors per edit instead of a row of edit distances. Tokens longer than {@link #MAX_LENGTH} do not fit
+ * a vector. State is reused, so stepping does not allocate once it has grown to the longest token.
+ */
+final class LevenshteinAutomaton {
+
+    static final int MAX_LENGTH = Long.SIZE - 1;
+
+    private final int maxDistance;
+    private char[] token = new char[16];
+    private int length;
+    // Token positions of characters below 256, other characters are looked up in token order
+    private final long[] latinMasks = new long[256];
+    // Vectors of every path depth, maxDistance + 1 at each depth, depth 0 is the empty path
+    private long[] vectors = new long[0];
+
+    LevenshteinAutomaton(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Starts matching paths against token.
+     *
+     * @throws IllegalArgumentException if the token is longer than {@link #MAX_LENGTH}
+     */
+    void start(CharSequence token) {
+        start(token, false);
+    }
+
+    /**
+     * Starts matching paths against token, or against its characters in reverse order to match paths of a trie
+     * of reversed tokens.
+     *
+     * @throws IllegalArgumentException if the token is longer than {@link #MAX_LENGTH}
+     */
+    void start(CharSequence token, boolean reversed) {
+        if (token.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Token is longer than " + MAX_LENGTH + " characters");
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.token[i] < latinMasks.length) {
+                latinMasks[this.token[i]] = 0;
+            }
+        }
+        length = token.length();
+        if (this.token.length < length) {
+            this.token = new char[Math.max(length, this.token.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(reversed ? length - 1 - i : i);
+            this.token[i] = c;
+            if (c < latinMasks.length) {
+                latinMasks[c] |= 1L << (i + 1);
+            }
+        }
+        int size = (length + maxDistance + 1) * (maxDistance + 1);
+        if (vectors.length < size) {
+            vectors = new long[Math.max(size, vectors.length * 2)];
+        }
+        long valid = valid();
+        for (int e = 0; e <= maxDistance; e++) {
+            vectors[e] = e >= MAX_LENGTH ? valid : ((1L << (e + 1)) - 1) & valid;
+        }
+    }
+
+    int getMaxDistance() {
+        return maxDistance;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * @return character of the token being matched
+     */
+    char charAt(int index) {
+        return token[index];
+    }
+
+    /**
+     * @return deepest path which may still be accepted
+     */
+    int getMaxDepth() {
+        return length + maxDistance;
+    }
+
+    /**
+     * Extends the path of depth - 1 by a character.
+     *
+     * @param depth depth of the extended path, from 1 to {@link #getMaxDepth()}
+     * @return true if the path or any of its extensions may still be within the distance
+     */
+    boolean step(int depth, char c) {
+        long mask = mask(c);
+        long valid = valid();
+        int previous = (depth - 1) * (maxDistance + 1);
+        int current = previous + maxDistance + 1;
+        // Token character matched
+        long vector = (vectors[previous] << 1) & mask;
+        vectors[current] = vector;
+        for (int e = 1; e <= maxDistance; e++) {
+            long fewer = vectors[previous + e - 1];
+            // Matched, substituted, path character inserted or token character deleted
+            vector = ((vectors[previous + e] << 1) & mask) | fewer | (fewer << 1) | (vector << 1);
+            if (depth <= e) {
+                vector |= 1;
+            }
+            vector &= valid;
+            vectors[current + e] = vector;
+        }
+        return vector != 0;
+    }
+
+    /**
+     * @return if every edit is spent by the path of the depth, bit j is set if it is the first j token characters
+     * with the maximum number of edits, so only the remaining token characters may follow it exactly,
+     * 0 otherwise
+     */
+    long getExhaustedPositions(int depth) {
+        int offset = depth * (maxDistance + 1);
+        for (int e = 0; e < maxDistance; e++) {
+            if (vectors[offset + e] != 0) {
+                return 0;
+            }
+        }
+        return vectors[offset + maxDistance];
+    }
+
+    /**
+     * @return edit distance between the path of the depth and the token, more than the maximum if it is too far
+     */
+    int getDistance(int depth) {
+        int offset = depth * (maxDistance + 1);
+        for (int e = 0; e <= maxDistance; e++) {
+            if ((vectors[offset + e] >>> length & 1) != 0) {
+                return e;
+            }
+        }
+        return maxDistance + 1;
+    }
+
+    private long mask(char c) {
+        if (c < latinMasks.length) {
+            return latinMasks[c];
+        }
+        long mask = 0;
+        for (int i = 0; i < length; i++) {
+            if (token[i] == c) {
+                mask |= 1L << (i + 1);
+            }
+        }
+        return mask;
+    }
+
+    private long valid() {
+        return length == MAX_LENGTH ? -1L : (1L << (length + 1)) - 1;
+    }
+}
@@ -0,0 +1,9 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Receives matches from {@link TokenMatcher}.
+ */
+public interface MatchListener {
+
+    void onMatch(TreeMatch match);
+}
@@ -0,0 +1,108 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps copies of reported matches, so that matches found by another thread can be passed on to listeners
+ * of the calling thread later, in the same order. Not thread-safe, every thread records into its own recorder.
+ */
+public final class MatchRecorder implements MatchListener {
+
+    private final TreeMatch match = new TreeMatch();
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] offsets = new int[64];
+    private int[] counts = new int[64];
+    private int[] costs = new int[64];
+    private EntryTable[] tables = new EntryTable[64];
+    private int[] entries = new int[64];
+    private int size;
+    private int entryCount;
+
+    @Override
+    public void onMatch(TreeMatch match) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            tables = Arrays.copyOf(tables, capacity);
+        }
+        if (entryCount + match.getEntryCount() > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entries.length * 2, entryCount + match.getEntryCount()));
+        }
+        starts[size] = match.getStart();
+        ends[size] = match.getEnd();
+        offsets[size] = entryCount;
+        counts[size] = match.getEntryCount();
+        costs[size] = match.getCost();
+        tables[size] = match.getEntryTable();
+        for (int i = 0; i < match.getEntryCount(); i++) {
+            entries[entryCount++] = match.getEntry(i);
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes recorded matches to listener in the order they were recorded.
+     */
+    public void replay(MatchListener listener) {
+        for (int i = 0; i < size; i++) {
+            listener.onMatch(get(i));
+        }
+    }
+
+    /**
+     * Passes matches recorded from consecutive chunks of a document to resolver in their order and advances it
+     * as soon as none of the later matches can overlap the buffered ones, so the selected matches reported to
+     * listener are the same as if the resolver was fed by a single matcher. Resolver is not finished.
+     */
+    public static void replay(List<MatchRecorder> chunks, OverlapResolver resolver, MatchListener listener) {
+        // Earliest start of the matches recorded by the chunks after each chunk
+        int[] laterStarts = new int[chunks.size()];
+        int laterStart = Integer.MAX_VALUE;
+        for (int c = chunks.size() - 1; c >= 0; c--) {
+            laterStarts[c] = laterStart;
+            MatchRecorder chunk = chunks.get(c);
+            for (int i = 0; i < chunk.size; i++) {
+                laterStart = Math.min(laterStart, chunk.starts[i]);
+            }
+        }
+        int[] suffixStarts = new int[0];
+        for (int c = 0; c < chunks.size(); c++) {
+            MatchRecorder chunk = chunks.get(c);
+            if (suffixStarts.length < chunk.size) {
+                suffixStarts = new int[chunk.size];
+            }
+            int start = laterStarts[c];
+            for (int i = chunk.size - 1; i >= 0; i--) {
+                suffixStarts[i] = start;
+                start = Math.min(start, chunk.starts[i]);
+            }
+            for (int i = 0; i < chunk.size; i++) {
+                resolver.onMatch(chunk.get(i));
+                resolver.advance(suffixStarts[i], listener);
+            }
+        }
+    }
+
+    /**
+     * Drops recorded matches, buffers are kept for reuse.
+     */
+    public void clear() {
+        Arrays.fill(tables, 0, size, null);
+        size = 0;
+        entryCount = 0;
+    }
+
+    private TreeMatch get(int index) {
+        return match.set(starts[index], ends[index], tables[index], entries, offsets[index], counts[index], costs[index]);
+    }
+}
@@ -0,0 +1,39 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Rough heap size estimates for a 64-bit JVM with compressed references and compact strings.
+ */
+final class MemoryEstimates {
+
+    static final int OBJECT_HEADER = 12;
+    static final int REFERENCE = 4;
+
+    private MemoryEstimates() {
+    }
+
+    static long object(int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    static long array(Object array, int length, int elementBytes) {
+        return array == null ? 0 : align(16 + (long) length * elementBytes);
+    }
+
+    static long string(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int charBytes = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                charBytes = 2;
+                break;
+            }
+        }
+        return object(4 + 4 + 1 + REFERENCE) + align(16 + (long) value.length() * charBytes);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
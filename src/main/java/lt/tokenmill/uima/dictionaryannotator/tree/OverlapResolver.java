@@ -0,0 +1,347 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Selects which of the overlapping matches to report. Resolver is put between a matcher and the final listener:
+ * it buffers matches while they may still be overlapped by later ones and passes on the selected ones
+ * when the caller guarantees, through {@link #advance(int, MatchListener)}, that no later match can overlap them.
+ * Selected matches are reported ordered by their start. Entry ids of buffered matches are copied, as matchers
+ * may reuse their id arrays for the next match. A chain of overlapping matches stays buffered until it ends, so
+ * selection sorts the buffer and sweeps it once, in O(n log n) time. Buffers are reused, so resolver is not thread-safe.
+ */
+public class OverlapResolver implements MatchListener {
+
+    public enum Policy {
+        /**
+         * Every match.
+         */
+        ALL,
+        /**
+         * Matches which are not contained in a longer match. Partially overlapping matches are all kept.
+         */
+        LONGEST,
+        /**
+         * Non-overlapping matches picked from left to right, the longest one at each start.
+         * Of fuzzy matches with the same span the one with the fewest edits is picked.
+         */
+        LEFTMOST_LONGEST,
+        /**
+         * Non-overlapping matches picked by the highest priority, then by length, then by the fewest edits
+         * and then from left to right.
+         * Of the entries sharing a span only those with the highest priority are kept.
+         */
+        NON_OVERLAPPING
+    }
+
+    private final Policy policy;
+    private final int priorityColumn;
+    private final TreeMatch match = new TreeMatch();
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private double[] priorities = new double[16];
+    private EntryTable[] tables = new EntryTable[16];
+    // Entry ids of the buffered matches which are not a range of ids, a match refers to them by offset
+    private int[] entryIds = new int[16];
+    private int entryIdCount;
+    private boolean[] ranges = new boolean[16];
+    private int[] offsets = new int[16];
+    private int[] counts = new int[16];
+    private int[] costs = new int[16];
+    private int[] filtered = new int[16];
+    private EntryTable priorityTable;
+    private double[] priorityCache;
+    private int[] order = new int[16];
+    private int[] scratch = new int[16];
+    // Start to end of the matches selected so far by NON_OVERLAPPING
+    private final TreeMap<Integer, Integer> taken = new TreeMap<>();
+    private boolean[] selected = new boolean[16];
+    private int size;
+    private int bufferEnd;
+
+    /**
+     * @param priorityColumn column of entry priority, used only by {@link Policy#NON_OVERLAPPING}.
+     *                       Entries without numeric priority have the lowest one.
+     */
+    public OverlapResolver(Policy policy, int priorityColumn) {
+        this.policy = policy;
+        this.priorityColumn = priorityColumn;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public void onMatch(TreeMatch match) {
+        if (size == starts.length) {
+            grow();
+        }
+        starts[size] = match.getStart();
+        ends[size] = match.getEnd();
+        tables[size] = match.getEntryTable();
+        int count = match.getEntryCount();
+        ranges[size] = match.getEntryIds() == null;
+        if (ranges[size]) {
+            offsets[size] = match.getOffset();
+        } else {
+            if (entryIdCount + count > entryIds.length) {
+                entryIds = Arrays.copyOf(entryIds, Math.max(entryIds.length * 2, entryIdCount + count));
+            }
+            offsets[size] = entryIdCount;
+            for (int i = 0; i < count; i++) {
+                entryIds[entryIdCount++] = match.getEntry(i);
+            }
+        }
+        counts[size] = count;
+        costs[size] = match.getCost();
+        if (policy == Policy.NON_OVERLAPPING) {
+            priorities[size] = maxPriority(match);
+        }
+        size++;
+        bufferEnd = Math.max(bufferEnd, match.getEnd());
+    }
+
+    /**
+     * Reports selected matches if none of the buffered ones can be overlapped by a match starting at
+     * or after the position.
+     *
+     * @param position offset before which no later match starts
+     */
+    public void advance(int position, MatchListener listener) {
+        if (size > 0 && bufferEnd <= position) {
+            finish(listener);
+        }
+    }
+
+    /**
+     * Reports selected buffered matches. Must be called at the end of the document.
+     */
+    public void finish(MatchListener listener) {
+        if (size == 0) {
+            return;
+        }
+        select();
+        sortByStart();
+        for (int i = 0; i < size; i++) {
+            int m = order[i];
+            if (!selected[m]) {
+                continue;
+            }
+            match.set(starts[m], ends[m], tables[m], ranges[m] ? null : entryIds, offsets[m], counts[m], costs[m]);
+            if (policy == Policy.NON_OVERLAPPING) {
+                int count = 0;
+                for (int e = 0; e < counts[m]; e++) {
+                    int entry = match.getEntry(e);
+                    if (priority(tables[m], entry) == priorities[m]) {
+                        if (count == filtered.length) {
+                            filtered = Arrays.copyOf(filtered, count * 2);
+                        }
+                        filtered[count++] = entry;
+                    }
+                }
+                if (count < counts[m]) {
+                    match.set(starts[m], ends[m], tables[m], filtered, 0, count, costs[m]);
+                }
+            }
+            listener.onMatch(match);
+        }
+        reset();
+    }
+
+    /**
+     * Moves offsets of the buffered matches by the given number of characters back, for callers which keep
+     * offsets relative to a moving start of a long stream.
+     */
+    public void rebase(int delta) {
+        for (int i = 0; i < size; i++) {
+            starts[i] -= delta;
+            ends[i] -= delta;
+        }
+        if (size > 0) {
+            bufferEnd -= delta;
+        }
+    }
+
+    /**
+     * Drops buffered matches without reporting them.
+     */
+    public void reset() {
+        Arrays.fill(tables, 0, size, null);
+        entryIdCount = 0;
+        size = 0;
+        bufferEnd = 0;
+    }
+
+    private void select() {
+        switch (policy) {
+            case LONGEST:
+                // Ordered by start and longest first, a match is contained in a longer one iff a match starting
+                // before it ends at or after its end, or the first (longest) one with the same start ends after it
+                sortByStart();
+                int maxEnd = Integer.MIN_VALUE;
+                int groupStart = Integer.MIN_VALUE;
+                int groupEnd = Integer.MIN_VALUE;
+                for (int i = 0; i < size; i++) {
+                    int m = order[i];
+                    if (starts[m] != groupStart) {
+                        maxEnd = Math.max(maxEnd, groupEnd);
+                        groupStart = starts[m];
+                        groupEnd = ends[m];
+                    }
+                    selected[m] = maxEnd < ends[m] && groupEnd <= ends[m];
+                }
+                break;
+            case LEFTMOST_LONGEST:
+                sortByStart();
+                int end = Integer.MIN_VALUE;
+                for (int i = 0; i < size; i++) {
+                    int m = order[i];
+                    selected[m] = starts[m] >= end;
+                    if (selected[m]) {
+                        end = ends[m];
+                    }
+                }
+                break;
+            case NON_OVERLAPPING:
+                // Selected matches do not overlap, so the one starting last before the end of a match
+                // is the only one which may overlap it
+                sort(true);
+                taken.clear();
+                for (int i = 0; i < size; i++) {
+                    int m = order[i];
+                    Map.Entry<Integer, Integer> before = taken.lowerEntry(ends[m]);
+                    selected[m] = before == null || before.getValue() <= starts[m];
+                    if (selected[m]) {
+                        taken.put(starts[m], ends[m]);
+                    }
+                }
+                break;
+            default:
+                Arrays.fill(selected, 0, size, true);
+        }
+    }
+
+    /**
+     * Orders buffered matches by start, then longest first and then by fewest edits.
+     */
+    private void sortByStart() {
+        sort(false);
+    }
+
+    /**
+     * Stable bottom-up merge sort of buffered matches into order, by priority or by start.
+     */
+    private void sort(boolean byPriority) {
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (scratch.length < size) {
+            scratch = new int[order.length];
+        }
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size - width; low += 2 * width) {
+                merge(low, low + width, Math.min(low + 2 * width, size), byPriority);
+            }
+        }
+    }
+
+    private void merge(int low, int middle, int high, boolean byPriority) {
+        if (!precedes(order[middle], order[middle - 1], byPriority)) {
+            return;
+        }
+        System.arraycopy(order, low, scratch, low, high - low);
+        int left = low;
+        int right = middle;
+        for (int i = low; i < high; i++) {
+            if (left < middle && (right >= high || !precedes(scratch[right], scratch[left], byPriority))) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private boolean precedes(int a, int b, boolean byPriority) {
+        return byPriority ? isBefore(a, b) : isAfterByStart(b, a);
+    }
+
+    /**
+     * @return true if match a starts later than b, or is shorter, or was matched with more edits
+     */
+    private boolean isAfterByStart(int a, int b) {
+        if (starts[a] != starts[b]) {
+            return starts[a] > starts[b];
+        }
+        if (ends[a] != ends[b]) {
+            return ends[a] < ends[b];
+        }
+        return costs[a] > costs[b];
+    }
+
+    private boolean isBefore(int a, int b) {
+        if (priorities[a] != priorities[b]) {
+            return priorities[a] > priorities[b];
+        }
+        if (ends[a] - starts[a] != ends[b] - starts[b]) {
+            return ends[a] - starts[a] > ends[b] - starts[b];
+        }
+        if (costs[a] != costs[b]) {
+            return costs[a] < costs[b];
+        }
+        return starts[a] < starts[b];
+    }
+
+    private double maxPriority(TreeMatch match) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < match.getEntryCount(); i++) {
+            max = Math.max(max, priority(match.getEntryTable(), match.getEntry(i)));
+        }
+        return max;
+    }
+
+    /**
+     * Priority values are parsed once per distinct column value.
+     */
+    private double priority(EntryTable table, int entry) {
+        int valueId = table.getValueId(entry, priorityColumn);
+        if (valueId < 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (table != priorityTable) {
+            priorityTable = table;
+            priorityCache = new double[table.getValueCount(priorityColumn)];
+            Arrays.fill(priorityCache, Double.NaN);
+        }
+        double priority = priorityCache[valueId];
+        if (Double.isNaN(priority)) {
+            try {
+                priority = Double.parseDouble(table.getValue(entry, priorityColumn).trim());
+            } catch (NumberFormatException e) {
+                priority = Double.NEGATIVE_INFINITY;
+            }
+            if (Double.isNaN(priority)) {
+                priority = Double.NEGATIVE_INFINITY;
+            }
+            priorityCache[valueId] = priority;
+        }
+        return priority;
+    }
+
+    private void grow() {
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        tables = Arrays.copyOf(tables, capacity);
+        ranges = Arrays.copyOf(ranges, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        order = Arrays.copyOf(order, capacity);
+        selected = Arrays.copyOf(selected, capacity);
+    }
+}
@@ -0,0 +1,174 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map keyed by int, a hash array mapped trie consuming five key bits per level. Every update returns
+ * a new map which shares all unchanged nodes with the old one, copying only the at most seven nodes on the path
+ * to the key, so old and new maps can be read from any thread without locks.
+ * Nodes keep only the used slots of their 32, so small maps stay small.
+ */
+final class PersistentIntMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return value of the key or null if the map does not contain it
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /**
+     * @return map with the key set to the value
+     */
+    PersistentIntMap<V> put(int key, V value) {
+        boolean[] added = new boolean[1];
+        Node updated = put(root, 0, new Leaf(key, value), added);
+        return new PersistentIntMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return map without the key, this map if it does not contain the key
+     */
+    PersistentIntMap<V> remove(int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentIntMap<>((Node) remove(root, 0, key), size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<Integer, V> action) {
+        if (root != null) {
+            forEach(root, (BiConsumer<Integer, Object>) action);
+        }
+    }
+
+    private static void forEach(Node node, BiConsumer<Integer, Object> action) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Leaf) {
+                action.accept(((Leaf) slot).key, ((Leaf) slot).value);
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+
+    private static Node put(Node node, int shift, Leaf leaf, boolean[] added) {
+        int bit = 1 << ((leaf.key >>> shift) & MASK);
+        if (node == null) {
+            added[0] = true;
+            return new Node(bit, new Object[]{leaf});
+        }
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = leaf;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, shift + BITS, leaf, added);
+        } else if (((Leaf) slot).key == leaf.key) {
+            replacement = leaf;
+        } else {
+            Node split = put(null, shift + BITS, (Leaf) slot, added);
+            replacement = put(split, shift + BITS, leaf, added);
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * @return node without the key, null if it is left empty, or its only leaf below the root level,
+     * which the parent keeps in place of the node
+     */
+    private static Object remove(Node node, int shift, int key) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement = slot instanceof Node ? remove((Node) slot, shift + BITS, key) : null;
+        if (replacement == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+            if (shift > 0 && slots.length == 1 && slots[0] instanceof Leaf) {
+                return slots[0];
+            }
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (shift > 0 && node.slots.length == 1 && replacement instanceof Leaf) {
+            return replacement;
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static final class Node {
+
+        // Bit of every used slot, slots keep only the used ones in bit order
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Leaf {
+
+        private final int key;
+        private final Object value;
+
+        private Leaf(int key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
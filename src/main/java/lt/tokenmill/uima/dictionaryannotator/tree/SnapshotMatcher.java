@@ -0,0 +1,129 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * {@link TreeMatcher} of a {@link DictionarySnapshot}: every partial match follows the loaded tree and the trie
+ * of added entries side by side. Entries of both are reported as a single match of their span, without the removed
+ * ones. Spans without updates are reported straight from the tree element, as the tree matcher does.
+ * The snapshot is fixed for the lifetime of the matcher, a newer one needs a new matcher.
+ */
+public class SnapshotMatcher implements TokenMatcher {
+
+    private final DictionarySnapshot snapshot;
+    private final DictionaryTree tree;
+    private final TreeMatch match = new TreeMatch();
+    private int[] starts = new int[16];
+    // Tree element and added entries node of every partial match, either may be null
+    private DictionaryTreeElement[] elements = new DictionaryTreeElement[16];
+    private DictionarySnapshot.Node[] nodes = new DictionarySnapshot.Node[16];
+    private int size;
+    private int peakSize;
+    private int[] entries = new int[16];
+
+    public SnapshotMatcher(DictionarySnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.tree = snapshot.getTree();
+    }
+
+    @Override
+    public void proceed(int begin, int end, CharSequence token, MatchListener listener) {
+        int tokenId = snapshot.getTokenId(token);
+        if (tokenId < 0) {
+            reset();
+            return;
+        }
+        int open = 0;
+        for (int i = 0; i < size; i++) {
+            DictionaryTreeElement element = elements[i] != null ? elements[i].getChild(tokenId) : null;
+            DictionarySnapshot.Node node = nodes[i] != null ? nodes[i].getChild(tokenId) : null;
+            if (element != null || node != null) {
+                starts[open] = starts[i];
+                elements[open] = element;
+                nodes[open] = node;
+                open++;
+            }
+        }
+        Arrays.fill(elements, open, size, null);
+        Arrays.fill(nodes, open, size, null);
+        size = open;
+        DictionaryTreeElement element = tree.getMatching(tokenId);
+        DictionarySnapshot.Node node = snapshot.getRoot().getChild(tokenId);
+        if (element != null || node != null) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                elements = Arrays.copyOf(elements, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            starts[size] = begin;
+            elements[size] = element;
+            nodes[size] = node;
+            size++;
+            if (size > peakSize) {
+                peakSize = size;
+            }
+        }
+        EntryTable table = snapshot.getEntryTable();
+        for (int i = 0; i < size; i++) {
+            int added = nodes[i] != null ? nodes[i].getEntryCount() : 0;
+            if (added == 0 && !snapshot.hasRemovedEntries()) {
+                if (elements[i] != null && elements[i].getEntryCount() > 0) {
+                    listener.onMatch(match.set(starts[i], end, table, elements[i]));
+                }
+                continue;
+            }
+            int count = collectEntries(elements[i], nodes[i]);
+            if (count > 0) {
+                listener.onMatch(match.set(starts[i], end, table, entries, 0, count));
+            }
+        }
+    }
+
+    @Override
+    public int getPartialMatchStart() {
+        for (int i = 0; i < size; i++) {
+            if ((elements[i] != null && elements[i].getChildCount() > 0) || (nodes[i] != null && nodes[i].hasChildren())) {
+                return starts[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return largest number of matches followed at once since the last call
+     */
+    public int takePeakPartialMatchCount() {
+        int peak = peakSize;
+        peakSize = size;
+        return peak;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(elements, 0, size, null);
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Copies tree entries which are not removed followed by the added ones to the entries buffer.
+     */
+    private int collectEntries(DictionaryTreeElement element, DictionarySnapshot.Node node) {
+        int treeCount = element != null ? element.getEntryCount() : 0;
+        int addedCount = node != null ? node.getEntryCount() : 0;
+        if (entries.length < treeCount + addedCount) {
+            entries = new int[Math.max(treeCount + addedCount, entries.length * 2)];
+        }
+        int count = 0;
+        for (int i = 0; i < treeCount; i++) {
+            int entry = element.getEntry(i);
+            if (!snapshot.isRemoved(entry)) {
+                entries[count++] = entry;
+            }
+        }
+        for (int i = 0; i < addedCount; i++) {
+            entries[count++] = node.getEntry(i);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,18 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Defines where tokens begin and end in raw text, used when text is matched without upstream tokenization.
+ * Must agree with {@link lt.tokenmill.uima.dictionaryannotator.DictionaryTokenizer} used for dictionary entries.
+ */
+public interface TokenBoundary {
+
+    /**
+     * @return true if character separates tokens and does not belong to any of them
+     */
+    boolean isSeparator(char c);
+
+    /**
+     * @return true if there is a token boundary between two adjacent non separator characters
+     */
+    boolean isBoundary(char previous, char next);
+}
@@ -0,0 +1,25 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+/**
+ * Consumes document tokens one by one and reports dictionary entries ending at the consumed token.
+ * Matcher keeps its state between calls and is meant to be reused across documents, but not shared between threads.
+ */
+public interface TokenMatcher {
+
+    /**
+     * Consumes next token and passes every dictionary match ending at it to listener,
+     * longest (leftmost) match first. Token is not retained, so the caller may reuse it for the next token.
+     */
+    void proceed(int begin, int end, CharSequence token, MatchListener listener);
+
+    /**
+     * @return start of the earliest partial match which the next tokens may still complete, or -1 if there is none.
+     * Matches reported later never start before it, or before the next token if there are no partial matches.
+     */
+    int getPartialMatchStart();
+
+    /**
+     * Forgets all partial matches. Must be called before processing the next document.
+     */
+    void reset();
+}
@@ -1,18 +1,51 @@
 package lt.tokenmill.uima.dictionaryannotator.tree;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Dictionary match reported to {@link MatchListener}. Matchers reuse the same instance for every reported match,
+ * so it must not be retained after {@link MatchListener#onMatch(TreeMatch)} returns.
+ * Matched entries are ids in {@link #getEntryTable()}.
+ */
 public class TreeMatch {
 
     private int start, end;
-    private DictionaryTreeElement match;
-    private boolean valid = true;
+    private EntryTable table;
+    private int[] entryIds;
+    private int offset;
+    private int count;
+    private int cost;
 
-    public TreeMatch(int start, int end, DictionaryTreeElement match) {
+    TreeMatch() {
+    }
+
+    TreeMatch set(int start, int end, EntryTable table, DictionaryTreeElement element) {
+        return set(start, end, table, element, 0);
+    }
+
+    TreeMatch set(int start, int end, EntryTable table, DictionaryTreeElement element, int cost) {
+        int[] ids = element.getEntryIds();
+        return set(start, end, table, ids, ids != null ? 0 : element.getFirstEntry(), element.getEntryCount(), cost);
+    }
+
+    /**
+     * @param entryIds ids of matched entries starting at offset, or null if entries are the range starting at offset
+     */
+    TreeMatch set(int start, int end, EntryTable table, int[] entryIds, int offset, int count) {
+        return set(start, end, table, entryIds, offset, count, 0);
+    }
+
+    TreeMatch set(int start, int end, EntryTable table, int[] entryIds, int offset, int count, int cost) {
         this.start = start;
         this.end = end;
-        this.match = match;
+        this.table = table;
+        this.entryIds = entryIds;
+        this.offset = offset;
+        this.count = count;
+        this.cost = cost;
+        return this;
     }
 
     public int getStart() {
@@ -23,21 +56,44 @@ public class TreeMatch {
         return end;
     }
 
-    public boolean isValid() {
-        return valid;
+    public EntryTable getEntryTable() {
+        return table;
     }
 
-    public List<EntryMetadata> matchedEntries() {
-        return match != null ? match.getMetadata() : Collections.EMPTY_LIST;
+    public int getEntryCount() {
+        return count;
     }
 
-    public void proceed(int end, String token) {
-        if (match != null && match.getChild(token) != null) {
-            this.end = end;
-            this.match = match.getChild(token);
-        } else {
-            this.match = null;
-            this.valid = false;
+    /**
+     * @return number of character edits between the matched text tokens and the entry tokens, 0 for an exact match
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    public int getEntry(int index) {
+        return entryIds != null ? entryIds[offset + index] : offset + index;
+    }
+
+    int[] getEntryIds() {
+        return entryIds;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Decodes matched entries into new objects.
+     */
+    public List<EntryMetadata> matchedEntries() {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<EntryMetadata> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(table.getMetadata(getEntry(i)));
         }
+        return entries;
     }
 }
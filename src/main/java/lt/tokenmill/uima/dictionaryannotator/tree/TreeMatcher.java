@@ -1,33 +1,137 @@
 package lt.tokenmill.uima.dictionaryannotator.tree;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
-public class TreeMatcher {
+/**
+ * Follows every open partial match on each token. Token is looked up in the tree vocabulary once
+ * and partial matches are followed by token id. Partial match state is kept in reusable arrays,
+ * so no objects are allocated once the arrays have grown to the number of simultaneously open matches.
+ * A frozen tree is followed by node number, with the first entry id of every partial match summed up
+ * from the edges on its path, see {@link FrozenTree}.
+ */
+public class TreeMatcher implements TokenMatcher {
 
-    private List<TreeMatch> matches = new ArrayList<>();
-    private DictionaryTree tree;
+    private final DictionaryTree tree;
+    private final FrozenTree frozen;
+    private final TreeMatch match = new TreeMatch();
+    private int[] starts = new int[16];
+    private DictionaryTreeElement[] elements = new DictionaryTreeElement[16];
+    // Node and first entry id of every partial match of a frozen tree
+    private int[] nodes;
+    private int[] firstEntries;
+    private int size;
+    private int peakSize;
 
     public TreeMatcher(DictionaryTree tree) {
         this.tree = tree;
+        this.frozen = tree.getFrozen();
+        if (frozen != null) {
+            nodes = new int[16];
+            firstEntries = new int[16];
+        }
+    }
+
+    @Override
+    public void proceed(int begin, int end, CharSequence token, MatchListener listener) {
+        int tokenId = tree.getTokenId(token);
+        if (tokenId < 0) {
+            reset();
+            return;
+        }
+        if (frozen != null) {
+            proceedFrozen(begin, end, tokenId, listener);
+            return;
+        }
+        int open = 0;
+        for (int i = 0; i < size; i++) {
+            DictionaryTreeElement child = elements[i].getChild(tokenId);
+            if (child != null) {
+                starts[open] = starts[i];
+                elements[open] = child;
+                open++;
+            }
+        }
+        Arrays.fill(elements, open, size, null);
+        size = open;
+        DictionaryTreeElement matched = tree.getMatching(tokenId);
+        if (matched != null) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            starts[size] = begin;
+            elements[size] = matched;
+            size++;
+            if (size > peakSize) {
+                peakSize = size;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (elements[i].getEntryCount() > 0) {
+                listener.onMatch(match.set(starts[i], end, tree.getEntryTable(), elements[i]));
+            }
+        }
     }
 
-    public void proceed(int begin, int end, String token) {
-        for (TreeMatch match : matches) {
-            match.proceed(end, token);
+    private void proceedFrozen(int begin, int end, int tokenId, MatchListener listener) {
+        int open = 0;
+        for (int i = 0; i < size; i++) {
+            int edge = frozen.getEdge(nodes[i], tokenId);
+            if (edge >= 0) {
+                starts[open] = starts[i];
+                nodes[open] = frozen.getTarget(edge);
+                firstEntries[open] = firstEntries[i] + frozen.getEntryOffset(edge);
+                open++;
+            }
         }
-        DictionaryTreeElement matched = tree.getMatching(token);
-        matches.add(new TreeMatch(begin, end, matched));
-        matches = matches.stream()
-                .filter(TreeMatch::isValid)
-                .collect(Collectors.toList());
+        size = open;
+        int matched = frozen.getRootChild(tokenId);
+        if (matched >= 0) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+                firstEntries = Arrays.copyOf(firstEntries, size * 2);
+            }
+            starts[size] = begin;
+            nodes[size] = matched;
+            firstEntries[size] = frozen.getRootEntryOffset(tokenId);
+            size++;
+            if (size > peakSize) {
+                peakSize = size;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int count = frozen.getEntryCount(nodes[i]);
+            if (count > 0) {
+                listener.onMatch(match.set(starts[i], end, tree.getEntryTable(), null, firstEntries[i], count));
+            }
+        }
+    }
+
+    @Override
+    public int getPartialMatchStart() {
+        for (int i = 0; i < size; i++) {
+            if (frozen != null ? frozen.hasChildren(nodes[i]) : elements[i].getChildCount() > 0) {
+                return starts[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return largest number of matches followed at once since the last call
+     */
+    public int takePeakPartialMatchCount() {
+        int peak = peakSize;
+        peakSize = size;
+        return peak;
     }
 
-    public List<TreeMatch> getMatches() {
-        return matches.stream()
-                .filter(TreeMatch::isValid)
-                .filter(tm -> !tm.matchedEntries().isEmpty())
-                .collect(Collectors.toList());
+    @Override
+    public void reset() {
+        if (frozen == null) {
+            Arrays.fill(elements, 0, size, null);
+        }
+        size = 0;
     }
 }
@@ -0,0 +1,55 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Distinct values of a single entry table column. Lookup map is needed only while entries are added
+ * and is dropped by {@link #trim()}.
+ */
+final class ValuePool {
+
+    private String[] values = new String[16];
+    private Map<String, Integer> ids = new HashMap<>();
+    private int size;
+
+    int add(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            id = size;
+            values[size++] = value;
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    String get(int id) {
+        return values[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void trim() {
+        values = Arrays.copyOf(values, size);
+        ids = null;
+    }
+
+    long estimateMemory() {
+        long bytes = MemoryEstimates.object(2 * MemoryEstimates.REFERENCE + 4)
+                + MemoryEstimates.array(values, values.length, MemoryEstimates.REFERENCE);
+        for (int i = 0; i < size; i++) {
+            bytes += MemoryEstimates.string(values[i]);
+        }
+        if (ids != null) {
+            // HashMap node and boxed id per value, table of references
+            bytes += (long) size * (32 + 16) + MemoryEstimates.array(ids, Integer.highestOneBit(size * 2 + 1), MemoryEstimates.REFERENCE);
+        }
+        return bytes;
+    }
+}
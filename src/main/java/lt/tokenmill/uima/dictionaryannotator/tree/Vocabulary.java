@@ -0,0 +1,95 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import java.util.Arrays;
+
+/**
+ * Maps every distinct normalized dictionary token to an int id.
+ * Document token is looked up once per token, tree nodes are then followed by id.
+ */
+final class Vocabulary {
+
+    private String[] tokens = new String[16];
+    private int[] table = new int[32];
+    private int size;
+
+    int getId(CharSequence token) {
+        int mask = table.length - 1;
+        int slot = hash(token) & mask;
+        while (true) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (tokens[id].contentEquals(token)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int add(String token) {
+        int id = getId(token);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+        }
+        id = size++;
+        tokens[id] = token;
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; i++) {
+                insert(i);
+            }
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    String getToken(int id) {
+        return tokens[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long estimateMemory() {
+        long bytes = MemoryEstimates.object(2 * MemoryEstimates.REFERENCE + 4)
+                + MemoryEstimates.array(tokens, tokens.length, MemoryEstimates.REFERENCE)
+                + MemoryEstimates.array(table, table.length, 4);
+        for (int i = 0; i < size; i++) {
+            bytes += MemoryEstimates.string(tokens[i]);
+        }
+        return bytes;
+    }
+
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = hash(tokens[id]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    /**
+     * Spreads {@link String#hashCode()} of the token, so that similar tokens do not form long probe sequences.
+     * Any character sequence hashes the same as a String with the same characters.
+     */
+    static int hash(CharSequence token) {
+        int h;
+        if (token instanceof String) {
+            h = token.hashCode();
+        } else {
+            h = 0;
+            for (int i = 0; i < token.length(); i++) {
+                h = 31 * h + token.charAt(i);
+            }
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,91 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.type.DictionaryEntry;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CorpusRunnerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReplicasProcessEveryText() throws Exception {
+        File dictionary = temporaryFolder.newFile("dictionary.csv");
+        Files.write(dictionary.toPath(), "New York\nYork\n".getBytes(StandardCharsets.UTF_8));
+        File texts = temporaryFolder.newFolder("texts");
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            File directory = new File(texts, "part" + i % 3);
+            directory.mkdirs();
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                text.append("New York and York ");
+            }
+            Files.write(new File(directory, i + ".txt").toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+            expected.put("part" + i % 3 + File.separator + i + ".txt", 3 * i);
+        }
+        CorpusRunner runner = new CorpusRunner.Builder(description(dictionary))
+                .replicas(3)
+                .queueCapacity(2)
+                .build();
+        Map<String, Integer> actual = new HashMap<>();
+        CorpusRunner.Report report = runner.run(texts.toPath(),
+                (document, jcas) -> new Object[]{document, JCasUtil.select(jcas, DictionaryEntry.class).size()},
+                result -> actual.put((String) result[0], (Integer) result[1]));
+        assertEquals(expected, actual);
+        assertEquals(40, report.getDocuments());
+        assertEquals(3, report.getReplicas());
+        assertTrue(report.getLatencyNanos(50) <= report.getLatencyNanos(99));
+        assertTrue(report.getLatencyNanos(99) <= report.getLatencyNanos(100));
+        assertTrue(report.getDocumentsPerSecond() > 0);
+    }
+
+    @Test
+    public void testFailureStopsRun() throws Exception {
+        File dictionary = temporaryFolder.newFile("dictionary.csv");
+        Files.write(dictionary.toPath(), "York\n".getBytes(StandardCharsets.UTF_8));
+        File texts = temporaryFolder.newFolder("texts");
+        for (int i = 0; i < 20; i++) {
+            Files.write(new File(texts, i + ".txt").toPath(), "York".getBytes(StandardCharsets.UTF_8));
+        }
+        CorpusRunner runner = new CorpusRunner.Builder(description(dictionary))
+                .replicas(2)
+                .queueCapacity(1)
+                .build();
+        try {
+            runner.run(texts.toPath(), (document, jcas) -> {
+                if (document.equals("7.txt")) {
+                    throw new IOException("Failed " + document);
+                }
+                return document;
+            }, result -> {
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Failed 7.txt", e.getMessage());
+        }
+    }
+
+    private static AnalysisEngineDescription description(File dictionary) throws Exception {
+        return AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, dictionary.toURI().toURL().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true);
+    }
+}
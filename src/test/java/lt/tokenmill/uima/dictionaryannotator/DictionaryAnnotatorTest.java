@@ -3,27 +3,57 @@ package lt.tokenmill.uima.dictionaryannotator;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import lt.tokenmill.uima.dictionaryannotator.type.DictionaryEntries;
 import lt.tokenmill.uima.dictionaryannotator.type.DictionaryEntry;
 import opennlp.uima.tokenize.SimpleTokenizer;
 import opennlp.uima.util.UimaUtil;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.factory.AggregateBuilder;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class DictionaryAnnotatorTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testFeatureAssignment() throws Exception {
         AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
@@ -66,6 +96,477 @@ public class DictionaryAnnotatorTest {
                 entries.stream().map(DictionaryEntry::getId).distinct().collect(Collectors.toList()));
     }
 
+    @Test
+    public void testAhoCorasickMatcher() throws Exception {
+        AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:nlproc-dictionary.csv",
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_MATCHER, DictionaryAnnotator.MATCHER_AHO_CORASICK,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList(
+                        "1 -> base", "2 -> id"));
+        JCas jcas = process(description, loadText("wiki-nlproc.txt"));
+        Collection<DictionaryEntry> entries = JCasUtil.select(jcas, DictionaryEntry.class);
+        assertEquals(11, entries.size());
+        assertEquals(Lists.newArrayList("Computing Machinery and Intelligence", "hand-written rules",
+                "machine learning", "Anaphora resolution",
+                "Natural language generation", "Natural language understanding", "Natural language search"),
+                entries.stream().map(DictionaryEntry::getCoveredText).distinct().collect(Collectors.toList()));
+        assertEquals(Lists.newArrayList("computing machinery", "computing intelligence", "method", "task"),
+                entries.stream().map(DictionaryEntry::getBase).distinct().collect(Collectors.toList()));
+        assertEquals(Lists.newArrayList(3, 2, 1),
+                entries.stream().map(DictionaryEntry::getId).distinct().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testBinaryDictionary() throws Exception {
+        File binary = temporaryFolder.newFile("nlproc-dictionary.bin");
+        DictionaryCompiler.compile(Resources.getResource("nlproc-dictionary.csv"),
+                new DictionaryLoader(SimpleOpenNlpTokenizer.class.getName(), false, true, 0, ',', "UTF-8"),
+                binary.toPath());
+        AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, binary.toURI().toString(),
+                DictionaryAnnotator.PARAM_DICTIONARY_FORMAT, DictionaryAnnotator.FORMAT_BINARY,
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList(
+                        "1 -> base", "2 -> id"));
+        JCas jcas = process(description, loadText("wiki-nlproc.txt"));
+        Collection<DictionaryEntry> entries = JCasUtil.select(jcas, DictionaryEntry.class);
+        assertEquals(11, entries.size());
+        assertEquals(Lists.newArrayList("Computing Machinery and Intelligence", "hand-written rules",
+                "machine learning", "Anaphora resolution",
+                "Natural language generation", "Natural language understanding", "Natural language search"),
+                entries.stream().map(DictionaryEntry::getCoveredText).distinct().collect(Collectors.toList()));
+        assertEquals(Lists.newArrayList("computing machinery", "computing intelligence", "method", "task"),
+                entries.stream().map(DictionaryEntry::getBase).distinct().collect(Collectors.toList()));
+        assertEquals(Lists.newArrayList(3, 2, 1),
+                entries.stream().map(DictionaryEntry::getId).distinct().collect(Collectors.toList()));
+    }
+
+    @Test(expected = ResourceInitializationException.class)
+    public void testBinaryDictionaryWithDifferentSettings() throws Exception {
+        File binary = temporaryFolder.newFile("nlproc-dictionary.bin");
+        DictionaryCompiler.compile(Resources.getResource("nlproc-dictionary.csv"),
+                new DictionaryLoader(SimpleOpenNlpTokenizer.class.getName(), false, true, 0, ',', "UTF-8"),
+                binary.toPath());
+        AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, binary.toURI().toString(),
+                DictionaryAnnotator.PARAM_DICTIONARY_FORMAT, DictionaryAnnotator.FORMAT_BINARY,
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, true);
+    }
+
+    @Test
+    public void testCharacterLevelMatching() throws Exception {
+        int matches = 0;
+        for (String dictionary : asList("nlproc-dictionary.csv", "language-dictionary.csv")) {
+            for (String text : asList("wiki-nlproc.txt", "wiki-language-with-accents.txt")) {
+                for (boolean sensitive : asList(true, false)) {
+                    Object[] parameters = {
+                            DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:" + dictionary,
+                            DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                            DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                            DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, sensitive,
+                            DictionaryAnnotator.PARAM_DICTIONARY_ACCENT_SENSITIVE, sensitive,
+                            DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+                    JCas tokens = process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                            parameters), loadText(text));
+                    JCas characters = processText(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                            append(parameters, DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true)), loadText(text));
+                    assertEquals(describe(tokens), describe(characters));
+                    matches += describe(characters).size();
+                }
+            }
+        }
+        assertEquals(31, matches);
+    }
+
+    @Test
+    public void testLeftmostLongestOverlapPolicy() throws Exception {
+        File csv = temporaryFolder.newFile("overlapping-dictionary.csv");
+        Files.write(csv.toPath(), ("natural language,a\nnatural language generation,b\nlanguage generation,c\n"
+                + "language,d\nmachine learning,e\nlearning,f\n").getBytes(Charsets.UTF_8));
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+        Object[] resolved = append(parameters,
+                DictionaryAnnotator.PARAM_OVERLAP_POLICY, DictionaryAnnotator.OVERLAP_LEFTMOST_LONGEST);
+        String text = loadText("wiki-nlproc.txt");
+        List<String> all = describe(process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class, parameters), text));
+        JCas jcas = process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class, resolved), text);
+        List<String> selected = describe(jcas);
+        assertTrue(all.containsAll(selected));
+        assertTrue(selected.size() < all.size());
+        int end = 0;
+        for (DictionaryEntry entry : JCasUtil.select(jcas, DictionaryEntry.class)) {
+            assertTrue(entry.getBegin() >= end);
+            end = entry.getEnd();
+        }
+        assertEquals(selected, describe(processText(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(resolved, DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true)), text)));
+        assertEquals(selected, describe(process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(resolved, DictionaryAnnotator.PARAM_MATCHER, DictionaryAnnotator.MATCHER_AHO_CORASICK)), text)));
+    }
+
+    @Test
+    public void testFuzzyMatching() throws Exception {
+        File csv = temporaryFolder.newFile("fuzzy-dictionary.csv");
+        Files.write(csv.toPath(), "natural language generation,a\nmachine learning,b\nrule,c\n".getBytes(Charsets.UTF_8));
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"),
+                DictionaryAnnotator.PARAM_COST_FEATURE, "id"};
+        String text = "Naturel language generation, machin learning and mashine lerning but no rul or rule.";
+        JCas exact = process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class, parameters), text);
+        assertEquals(asList("rule:c:0"), JCasUtil.select(exact, DictionaryEntry.class).stream()
+                .map(e -> e.getCoveredText() + ":" + e.getBase() + ":" + e.getId()).collect(Collectors.toList()));
+
+        JCas fuzzy = process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_FUZZY_DISTANCE, 1)), text);
+        assertEquals(asList("Naturel language generation:a:1", "machin learning:b:1", "mashine lerning:b:2", "rule:c:0"),
+                JCasUtil.select(fuzzy, DictionaryEntry.class).stream()
+                        .map(e -> e.getCoveredText() + ":" + e.getBase() + ":" + e.getId()).collect(Collectors.toList()));
+
+        JCas shortTokens = process(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_FUZZY_DISTANCE, 1,
+                        DictionaryAnnotator.PARAM_FUZZY_MIN_TOKEN_LENGTH, 0)), text);
+        assertEquals(asList("Naturel language generation", "machin learning", "mashine lerning", "rul", "rule"),
+                JCasUtil.select(shortTokens, DictionaryEntry.class).stream()
+                        .map(DictionaryEntry::getCoveredText).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testTypedFeatureValues() throws Exception {
+        File csv = temporaryFolder.newFile("typed-dictionary.csv");
+        Files.write(csv.toPath(), "alpha,7\nbeta,7\ngamma,-3\ndelta,x\n".getBytes(Charsets.UTF_8));
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("0 -> base", "1 -> id"));
+        JCas jcas = engine.newJCas();
+        for (int i = 0; i < 2; i++) {
+            jcas.reset();
+            jcas.setDocumentText("gamma alpha beta alpha");
+            engine.process(jcas);
+            assertEquals(asList("gamma:-3", "alpha:7", "beta:7", "alpha:7"), JCasUtil.select(jcas, DictionaryEntry.class).stream()
+                    .map(e -> e.getBase() + ":" + e.getId()).collect(Collectors.toList()));
+        }
+        jcas.reset();
+        jcas.setDocumentText("delta");
+        try {
+            engine.process(jcas);
+            fail("Value which is not an integer must be rejected");
+        } catch (AnalysisEngineProcessException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    @Test
+    public void testSpanOutputAggregatesEntries() throws Exception {
+        File csv = temporaryFolder.newFile("span-dictionary.csv");
+        Files.write(csv.toPath(), "York,city,1\nYork,surname,2\nNew York,city,3\n".getBytes(Charsets.UTF_8));
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_OUTPUT_MODE, DictionaryAnnotator.OUTPUT_SPAN,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base", "2 -> id")};
+        String text = "New York and York ";
+        JCas jcas = processTokens(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntries.class.getName())), text);
+        List<String> spans = new ArrayList<>();
+        for (DictionaryEntries e : JCasUtil.select(jcas, DictionaryEntries.class)) {
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < e.getBase().size(); i++) {
+                entries.add(e.getBase(i) + ":" + e.getId(i));
+            }
+            Collections.sort(entries);
+            spans.add(e.getBegin() + ":" + e.getEnd() + ":" + entries);
+        }
+        assertEquals(asList("0:8:[city:3]", "4:8:[city:1, surname:2]", "13:17:[city:1, surname:2]"), spans);
+
+        // Scalar features get the value of one of the entries
+        jcas = processTokens(AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName())), text);
+        for (DictionaryEntry e : JCasUtil.select(jcas, DictionaryEntry.class)) {
+            assertTrue(e.getBase().equals("city") && e.getId() % 2 == 1 || e.getBase().equals("surname") && e.getId() == 2);
+        }
+        assertEquals(3, JCasUtil.select(jcas, DictionaryEntry.class).size());
+    }
+
+    @Test
+    public void testSpanOutputRejectsInvalidArrayValue() throws Exception {
+        File csv = temporaryFolder.newFile("invalid-span-dictionary.csv");
+        Files.write(csv.toPath(), "York,city,1\nYork,surname,x\nBoston,city,2\n".getBytes(Charsets.UTF_8));
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntries.class.getName(),
+                DictionaryAnnotator.PARAM_OUTPUT_MODE, DictionaryAnnotator.OUTPUT_SPAN,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base", "2 -> id"));
+        try {
+            processSentences(engine, "York ");
+            fail("Value which is not an integer must be rejected");
+        } catch (AnalysisEngineProcessException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("'x'"));
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(":id'"));
+        }
+        // Matches of the rejected document are not annotated in the next one
+        JCas jcas = processSentences(engine, "Boston ");
+        List<String> spans = new ArrayList<>();
+        for (DictionaryEntries e : JCasUtil.select(jcas, DictionaryEntries.class)) {
+            spans.add(e.getBegin() + ":" + e.getEnd() + ":" + e.getBase(0) + ":" + e.getId(0) + ":" + e.getId().size());
+        }
+        assertEquals(asList("0:6:city:2:1"), spans);
+        engine.destroy();
+    }
+
+    @Test
+    public void testReloadReleasesPreviousTrees() throws Exception {
+        File csv = temporaryFolder.newFile("released-dictionary.csv");
+        Files.write(csv.toPath(), "alpha,first\n".getBytes(Charsets.UTF_8));
+        URL location = csv.toURI().toURL();
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, location.toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_MATCHING_THREADS, 2,
+                DictionaryAnnotator.PARAM_PARALLEL_MIN_TOKENS, 1,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+        List<WeakReference<DictionaryTree>> trees = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            SharedDictionary version = SharedDictionaries.reload(location).get(0).get();
+            trees.add(new WeakReference<>(version.getTree()));
+            JCas jcas = processSentences(engine, "alpha beta ");
+            assertEquals(asList("0:5:first"), describe(jcas));
+        }
+        // Only the version in use is reachable, matchers of the earlier ones are not kept by any thread
+        List<WeakReference<DictionaryTree>> previous = trees.subList(0, trees.size() - 1);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (previous.stream().anyMatch(tree -> tree.get() != null) && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        for (WeakReference<DictionaryTree> tree : previous) {
+            assertTrue(tree.get() == null);
+        }
+        assertTrue(trees.get(trees.size() - 1).get() != null);
+        engine.destroy();
+    }
+
+    @Test
+    public void testDictionaryReload() throws Exception {
+        File csv = temporaryFolder.newFile("reloaded-dictionary.csv");
+        Files.write(csv.toPath(), "alpha,first\n".getBytes(Charsets.UTF_8));
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true,
+                DictionaryAnnotator.PARAM_DICTIONARY_RELOAD_INTERVAL, 20,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+        JCas jcas = engine.newJCas();
+        jcas.setDocumentText("alpha beta");
+        engine.process(jcas);
+        assertEquals(asList("0:5:first"), describe(jcas));
+
+        Files.write(csv.toPath(), "alpha,second\nbeta,second\n".getBytes(Charsets.UTF_8));
+        csv.setLastModified(csv.lastModified() + 2000);
+        long deadline = System.currentTimeMillis() + 10000;
+        List<String> matches;
+        do {
+            Thread.sleep(20);
+            jcas.reset();
+            jcas.setDocumentText("alpha beta");
+            engine.process(jcas);
+            matches = describe(jcas);
+        } while (matches.size() < 2 && System.currentTimeMillis() < deadline);
+        assertEquals(asList("0:5:second", "6:10:second"), matches);
+        engine.destroy();
+    }
+
+    @Test
+    public void testRuntimeEntryUpdates() throws Exception {
+        File csv = temporaryFolder.newFile("updated-dictionary.csv");
+        Files.write(csv.toPath(), "alpha,loaded\n".getBytes(Charsets.UTF_8));
+        URL location = csv.toURI().toURL();
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, location.toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+        String text = "alpha beta gamma delta";
+        assertEquals(asList("0:5:loaded"), processTokens(engine, text));
+
+        assertEquals(1, SharedDictionaries.addEntry(location, new String[]{"gamma delta", "added"}));
+        assertEquals(1, SharedDictionaries.addEntry(location, new String[]{"beta", "added"}));
+        assertEquals(asList("0:5:loaded", "6:10:added", "11:22:added"), processTokens(engine, text));
+
+        assertEquals(1, SharedDictionaries.removeEntry(location, "alpha"));
+        assertEquals(1, SharedDictionaries.removeEntry(location, "beta"));
+        assertEquals(0, SharedDictionaries.removeEntry(location, "beta"));
+        assertEquals(asList("11:22:added"), processTokens(engine, text));
+        engine.destroy();
+    }
+
+    @Test
+    public void testRuntimeUpdateRejectedWithFuzzyConsumer() throws Exception {
+        File csv = temporaryFolder.newFile("locked-dictionary.csv");
+        Files.write(csv.toPath(), "alpha,loaded\n".getBytes(Charsets.UTF_8));
+        URL location = csv.toURI().toURL();
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, location.toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+        AnalysisEngine exact = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class, parameters);
+        AnalysisEngine fuzzy = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_FUZZY_DISTANCE, 1));
+        try {
+            SharedDictionaries.addEntry(location, new String[]{"beta", "added"});
+            fail("Update must be rejected while a fuzzy annotator uses the dictionary");
+        } catch (IllegalStateException e) {
+            // Nothing is published
+        }
+        String text = "alpha beta alphx";
+        assertEquals(asList("0:5:loaded"), processTokens(exact, text));
+        assertEquals(asList("0:5:loaded", "11:16:loaded"), processTokens(fuzzy, text));
+        fuzzy.destroy();
+
+        assertEquals(1, SharedDictionaries.addEntry(location, new String[]{"beta", "added"}));
+        assertEquals(asList("0:5:loaded", "6:10:added"), processTokens(exact, text));
+        try {
+            AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    append(parameters, DictionaryAnnotator.PARAM_CHARACTER_LEVEL, true));
+            fail("Character level annotator must not start on an updated dictionary");
+        } catch (ResourceInitializationException e) {
+            // Updated dictionary is rejected at initialization rather than at document time
+        }
+        exact.destroy();
+    }
+
+    @Test
+    public void testShardedDictionaryLocation() throws Exception {
+        File directory = temporaryFolder.newFolder("gazetteer");
+        Files.write(new File(directory, "a.csv").toPath(), asList("alpha,first", "gamma delta,first"));
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(directory, "b.csv.gz")))) {
+            out.write("beta,second\ndelta,second\n".getBytes(Charsets.UTF_8));
+        }
+        String text = "alpha beta gamma delta";
+        List<String> expected = asList("0:5:first", "6:10:second", "11:22:first", "17:22:second");
+        for (String location : asList(directory.getPath(), directory.getPath() + "/*.csv*",
+                new File(directory, "a.csv").getPath() + ", " + new File(directory, "b.csv.gz").toURI())) {
+            AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, location,
+                    DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                    DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+            assertEquals(location, expected, processTokens(engine, text));
+            engine.destroy();
+        }
+    }
+
+    @Test
+    public void testWatchedShardedLocationPicksUpNewShards() throws Exception {
+        String text = "alpha beta gamma";
+        for (String kind : asList("directory", "glob")) {
+            File directory = temporaryFolder.newFolder("watched-" + kind);
+            Files.write(new File(directory, "a.csv").toPath(), asList("alpha,first"));
+            String location = "glob".equals(kind) ? directory.getPath() + "/*.csv" : directory.getPath();
+            AnalysisEngine engine = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, location,
+                    DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                    DictionaryAnnotator.PARAM_DICTIONARY_RELOAD_INTERVAL, 20,
+                    DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+            assertEquals(kind, asList("0:5:first"), processTokens(engine, text));
+
+            Files.write(new File(directory, "b.csv").toPath(), asList("beta,second"));
+            long deadline = System.currentTimeMillis() + 10000;
+            List<String> matches;
+            do {
+                Thread.sleep(20);
+                matches = processTokens(engine, text);
+            } while (matches.size() < 2 && System.currentTimeMillis() < deadline);
+            assertEquals(kind, asList("0:5:first", "6:10:second"), matches);
+
+            // Updates address the dictionary by its configured location as well as by any of its shards
+            URL configured = "glob".equals(kind) ? new URL("file:" + location) : directory.toURI().toURL();
+            assertEquals(kind, 1, SharedDictionaries.addEntry(configured, new String[]{"gamma", "added"}));
+            assertEquals(kind, 1, SharedDictionaries.removeEntry(new File(directory, "b.csv").toURI().toURL(), "beta"));
+            assertEquals(kind, asList("0:5:first", "11:16:added"), processTokens(engine, text));
+            engine.destroy();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:nlproc-dictionary.csv",
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, SimpleOpenNlpTokenizer.class.getName(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_METRICS, true,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base"));
+        AggregateBuilder builder = new AggregateBuilder();
+        builder.add(AnalysisEngineFactory.createEngineDescription(SimpleTokenizer.class,
+                UimaUtil.SENTENCE_TYPE_PARAMETER, "uima.tcas.DocumentAnnotation",
+                UimaUtil.TOKEN_TYPE_PARAMETER, Token.class.getName()));
+        builder.add(description);
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(builder.createAggregateDescription());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("lt.tokenmill.uima.dictionaryannotator:type=DictionaryAnnotator,*");
+        Set<ObjectName> names = server.queryNames(pattern, null);
+        assertEquals(1, names.size());
+        DictionaryAnnotatorMetricsMXBean metrics = JMX.newMXBeanProxy(server, names.iterator().next(),
+                DictionaryAnnotatorMetricsMXBean.class);
+
+        JCas jcas = engine.newJCas();
+        for (int i = 0; i < 2; i++) {
+            jcas.reset();
+            jcas.setDocumentText(loadText("wiki-nlproc.txt"));
+            engine.process(jcas);
+        }
+        assertEquals(2, metrics.getDocumentCount());
+        assertEquals(16, metrics.getMatchCount());
+        assertEquals(8.0, metrics.getMatchesPerDocument(), 0.0);
+        assertEquals(2 * JCasUtil.select(jcas, Token.class).size(), metrics.getTokenCount());
+        assertTrue(metrics.getTokensPerSecond() > 0);
+        assertEquals(2, Arrays.stream(metrics.getLatencyHistogram()).sum());
+        assertTrue(metrics.getLatencyMedianMicros() <= metrics.getLatency99thPercentileMicros());
+        assertTrue(metrics.getLatency99thPercentileMicros() <= metrics.getLatencyMaxMicros());
+        assertTrue(metrics.getPeakPartialMatchCount() > 0);
+        assertEquals(1, metrics.getDictionaryVersion());
+        assertTrue(metrics.getDictionaryEntryCount() > 0);
+        assertTrue(metrics.getDictionaryNodeCount() > metrics.getDictionaryEntryCount());
+        assertTrue(metrics.getDictionaryMemoryBytes() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getDocumentCount());
+        engine.destroy();
+        assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+
+    @Test
+    public void testFailedInitializeUnregistersMetrics() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("lt.tokenmill.uima.dictionaryannotator:type=DictionaryAnnotator,*");
+        try {
+            // Fork-join pools have at most 32767 threads, the pool is created after metrics are registered
+            AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:nlproc-dictionary.csv",
+                    DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                    DictionaryAnnotator.PARAM_METRICS, true,
+                    DictionaryAnnotator.PARAM_MATCHING_THREADS, 40000);
+            fail("Pool of too many threads must fail initialization");
+        } catch (ResourceInitializationException e) {
+            // Expected
+        }
+        assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+
     @Test
     public void testAccentInsensitive() throws Exception {
         AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
@@ -107,6 +608,298 @@ public class DictionaryAnnotatorTest {
                 entries.stream().map(DictionaryEntry::getBase).distinct().collect(Collectors.toList()));
     }
 
+    @Test
+    public void testMultipleDictionariesSameAsSeparateAnnotators() throws Exception {
+        File csv = temporaryFolder.newFile("fields.csv");
+        Files.write(csv.toPath(), asList("natural language;field", "Machine Learning;field", "language;word"));
+        String tokenizer = SimpleOpenNlpTokenizer.class.getName();
+        AnalysisEngineDescription combined = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                DictionaryAnnotator.PARAM_TOKENIZER_CLASS, tokenizer,
+                DictionaryAnnotator.PARAM_DICTIONARIES, asList(
+                        "dictionaryLocation=classpath:nlproc-dictionary.csv; caseSensitive=false;"
+                                + " annotationType=" + DictionaryEntry.class.getName() + "; featureMapping=1 -> base, 2 -> id",
+                        "dictionaryLocation=classpath:nlproc-dictionary.csv;"
+                                + " annotationType=" + NamedEntity.class.getName() + "; featureMapping=1 -> value",
+                        "dictionaryLocation=" + csv.toURI() + "; csvSeparator=\\;; caseSensitive=false;"
+                                + " annotationType=" + NamedEntity.class.getName() + "; featureMapping=1 -> value"));
+        AnalysisEngineDescription separate = AnalysisEngineFactory.createEngineDescription(
+                AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                        DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:nlproc-dictionary.csv",
+                        DictionaryAnnotator.PARAM_TOKENIZER_CLASS, tokenizer,
+                        DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                        DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                        DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base", "2 -> id")),
+                AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                        DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, "classpath:nlproc-dictionary.csv",
+                        DictionaryAnnotator.PARAM_TOKENIZER_CLASS, tokenizer,
+                        DictionaryAnnotator.PARAM_ANNOTATION_TYPE, NamedEntity.class.getName(),
+                        DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> value")),
+                AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                        DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                        DictionaryAnnotator.PARAM_TOKENIZER_CLASS, tokenizer,
+                        DictionaryAnnotator.PARAM_CSV_SEPARATOR, ";",
+                        DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                        DictionaryAnnotator.PARAM_ANNOTATION_TYPE, NamedEntity.class.getName(),
+                        DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> value")));
+
+        String text = loadText("wiki-nlproc.txt");
+        List<String> expected = describeAll(process(separate, text));
+        assertEquals(11 + 8 + 27, expected.size());
+        assertEquals(expected, describeAll(process(combined, text)));
+    }
+
+    @Test
+    public void testDictionaryWithoutLocationIsRejected() {
+        try {
+            AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    DictionaryAnnotator.PARAM_DICTIONARIES, asList("annotationType=" + DictionaryEntry.class.getName()));
+            fail("Dictionary without location must be rejected");
+        } catch (ResourceInitializationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testParallelSentenceSplitKeepsMatchesAcrossSentences() throws Exception {
+        File csv = temporaryFolder.newFile("sentences.csv");
+        Files.write(csv.toPath(), asList("a b c d,abcd", "c d e,cde", "g a,ga", "d,d"));
+        // Entries span every position relative to sentences of five tokens
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * DictionaryMatcher.CHUNK_TOKENS + 100; i++) {
+            text.append("abcdefg".charAt(i % 7)).append(' ');
+        }
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+        AnalysisEngine sequential = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class, parameters);
+        AnalysisEngine parallel = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_MATCHING_THREADS, 3,
+                        DictionaryAnnotator.PARAM_PARALLEL_MIN_TOKENS, 0,
+                        DictionaryAnnotator.PARAM_PARALLEL_SPLIT, DictionaryAnnotator.SPLIT_SENTENCE));
+        List<String> expected = describe(processFixedSentences(sequential, text.toString(), 5));
+        assertTrue(expected.size() > 1000);
+        assertEquals(expected, describe(processFixedSentences(parallel, text.toString(), 5)));
+        sequential.destroy();
+        parallel.destroy();
+    }
+
+    @Test
+    public void testParallelMatchingSameAsSequential() throws Exception {
+        File csv = temporaryFolder.newFile("parallel.csv");
+        Files.write(csv.toPath(), asList("a b,ab,1", "b c,bc,2", "a b c d,abcd,1", "c,c,3", "d e f g,defg,2",
+                "e,e,1", "f g h a,fgha,5", "h,h,1"));
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        int tokens = 3 * DictionaryMatcher.CHUNK_TOKENS + 100;
+        for (int i = 0; i < tokens; i++) {
+            // "a b c d" spans every chunk boundary
+            int offset = (i + 2) % DictionaryMatcher.CHUNK_TOKENS;
+            char word = offset < 4 ? "abcd".charAt(offset) : random.nextInt(12) == 0 ? '.' : (char) ('a' + random.nextInt(8));
+            text.append(word).append(' ');
+        }
+        for (String policy : asList(DictionaryAnnotator.OVERLAP_ALL, DictionaryAnnotator.OVERLAP_LONGEST,
+                DictionaryAnnotator.OVERLAP_LEFTMOST_LONGEST, DictionaryAnnotator.OVERLAP_NON_OVERLAPPING)) {
+            Object[] parameters = {
+                    DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                    DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                    DictionaryAnnotator.PARAM_OVERLAP_POLICY, policy,
+                    DictionaryAnnotator.PARAM_PRIORITY_COLUMN, 2,
+                    DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+            List<String> sequential = describe(processTokens(
+                    AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class, parameters), text.toString()));
+            assertTrue(sequential.size() > 1000);
+            for (String split : asList(DictionaryAnnotator.SPLIT_WINDOW, DictionaryAnnotator.SPLIT_SENTENCE)) {
+                AnalysisEngineDescription parallel = AnalysisEngineFactory.createEngineDescription(DictionaryAnnotator.class,
+                        append(parameters, DictionaryAnnotator.PARAM_MATCHING_THREADS, 3,
+                                DictionaryAnnotator.PARAM_PARALLEL_MIN_TOKENS, 0,
+                                DictionaryAnnotator.PARAM_PARALLEL_SPLIT, split));
+                assertEquals(policy + " " + split, sequential, describe(processTokens(parallel, text.toString())));
+            }
+        }
+    }
+
+    @Test
+    public void testResultCacheSameAsMatching() throws Exception {
+        File csv = temporaryFolder.newFile("cached.csv");
+        Files.write(csv.toPath(), asList("a b,ab,1", "b c,bc,2", "a b c d,abcd,1", "c,c,3", "e,e,1"));
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_OVERLAP_POLICY, DictionaryAnnotator.OVERLAP_LONGEST,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+        // Documents are made of a few repeated sentences, words are separated by one or two spaces
+        Random random = new Random(3);
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            StringBuilder sentence = new StringBuilder();
+            for (int t = random.nextInt(8); t > 0; t--) {
+                sentence.append((char) ('a' + random.nextInt(6))).append(' ');
+            }
+            sentences.add(sentence.append(". ").toString());
+        }
+        List<String> texts = new ArrayList<>();
+        for (int d = 0; d < 40; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int s = 1 + random.nextInt(4); s > 0; s--) {
+                text.append(sentences.get(random.nextInt(sentences.size())));
+            }
+            texts.add(d % 2 == 0 ? text.toString() : text.toString().replace("b ", "b  "));
+        }
+        AnalysisEngine uncached = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class, parameters);
+        for (String scope : asList(DictionaryAnnotator.CACHE_DOCUMENT, DictionaryAnnotator.CACHE_SENTENCE)) {
+            AnalysisEngine cached = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                    append(parameters, DictionaryAnnotator.PARAM_RESULT_CACHE_SIZE, 4,
+                            DictionaryAnnotator.PARAM_RESULT_CACHE_SCOPE, scope,
+                            DictionaryAnnotator.PARAM_METRICS, true));
+            for (String text : texts) {
+                assertEquals(scope, describe(processSentences(uncached, text)), describe(processSentences(cached, text)));
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(
+                    new ObjectName("lt.tokenmill.uima.dictionaryannotator:type=DictionaryAnnotator,*"), null);
+            DictionaryAnnotatorMetricsMXBean metrics = JMX.newMXBeanProxy(server, names.iterator().next(),
+                    DictionaryAnnotatorMetricsMXBean.class);
+            assertTrue(metrics.getResultCacheHitCount() > 0);
+            assertTrue(metrics.getResultCacheEvictionCount() > 0);
+            assertEquals(4, metrics.getResultCacheSize());
+            if (DictionaryAnnotator.CACHE_SENTENCE.equals(scope)) {
+                assertTrue(metrics.getResultCacheHitCount() > metrics.getResultCacheMissCount());
+            }
+            cached.destroy();
+        }
+        uncached.destroy();
+    }
+
+    @Test
+    public void testResultCacheKeyedByNormalizedTokens() throws Exception {
+        File csv = temporaryFolder.newFile("normalized.csv");
+        Files.write(csv.toPath(), asList("a b,ab", "c,c"));
+        Object[] parameters = {
+                DictionaryAnnotator.PARAM_DICTIONARY_LOCATION, csv.toURI().toString(),
+                DictionaryAnnotator.PARAM_ANNOTATION_TYPE, DictionaryEntry.class.getName(),
+                DictionaryAnnotator.PARAM_DICTIONARY_CASE_SENSITIVE, false,
+                DictionaryAnnotator.PARAM_FEATURE_MAPPING, asList("1 -> base")};
+        AnalysisEngine uncached = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class, parameters);
+        AnalysisEngine cached = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                append(parameters, DictionaryAnnotator.PARAM_RESULT_CACHE_SIZE, 4,
+                        DictionaryAnnotator.PARAM_METRICS, true));
+        for (String text : asList("a b c d ", "A B C d ", "a B c D ")) {
+            assertEquals(text, describe(processSentences(uncached, text)), describe(processSentences(cached, text)));
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(
+                new ObjectName("lt.tokenmill.uima.dictionaryannotator:type=DictionaryAnnotator,*"), null);
+        DictionaryAnnotatorMetricsMXBean metrics = JMX.newMXBeanProxy(server, names.iterator().next(),
+                DictionaryAnnotatorMetricsMXBean.class);
+        // Case variants of the first document match the same
+        assertEquals(1, metrics.getResultCacheMissCount());
+        assertEquals(2, metrics.getResultCacheHitCount());
+        cached.destroy();
+        uncached.destroy();
+    }
+
+    private static Object[] append(Object[] parameters, Object... more) {
+        Object[] result = Arrays.copyOf(parameters, parameters.length + more.length);
+        System.arraycopy(more, 0, result, parameters.length, more.length);
+        return result;
+    }
+
+    private static List<String> describe(JCas jcas) {
+        return JCasUtil.select(jcas, DictionaryEntry.class).stream()
+                .map(e -> e.getBegin() + ":" + e.getEnd() + ":" + e.getBase())
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> describeAll(JCas jcas) {
+        List<String> annotations = new ArrayList<>();
+        for (DictionaryEntry e : JCasUtil.select(jcas, DictionaryEntry.class)) {
+            annotations.add(e.getBegin() + ":" + e.getEnd() + ":entry:" + e.getBase() + ":" + e.getId());
+        }
+        for (NamedEntity e : JCasUtil.select(jcas, NamedEntity.class)) {
+            annotations.add(e.getBegin() + ":" + e.getEnd() + ":entity:" + e.getValue());
+        }
+        Collections.sort(annotations);
+        return annotations;
+    }
+
+    /**
+     * Adds a Token per space separated word and processes the text with an engine which is kept.
+     */
+    private static List<String> processTokens(AnalysisEngine engine, String text) throws Exception {
+        JCas jcas = engine.newJCas();
+        jcas.setDocumentText(text);
+        for (int begin = 0, end; begin < text.length(); begin = end + 1) {
+            end = text.indexOf(' ', begin);
+            end = end < 0 ? text.length() : end;
+            new Token(jcas, begin, end).addToIndexes();
+        }
+        engine.process(jcas);
+        return describe(jcas);
+    }
+
+    /**
+     * Adds a Token per space separated word and a Sentence per run of words ending with ".".
+     */
+    private JCas processTokens(AnalysisEngineDescription dictionaryDescription, String text) throws Exception {
+        AnalysisEngine engine = AnalysisEngineFactory.createEngine(dictionaryDescription);
+        JCas jcas = processSentences(engine, text);
+        engine.destroy();
+        return jcas;
+    }
+
+    /**
+     * Processes the text with an engine which is kept, tokens and sentences are added as by
+     * {@link #processTokens(AnalysisEngineDescription, String)}.
+     */
+    private static JCas processSentences(AnalysisEngine engine, String text) throws Exception {
+        JCas jcas = engine.newJCas();
+        jcas.setDocumentText(text);
+        int sentenceBegin = 0;
+        for (int begin = 0, end; begin < text.length(); begin = end + 1) {
+            end = text.indexOf(' ', begin);
+            new Token(jcas, begin, end).addToIndexes();
+            if (text.charAt(begin) == '.') {
+                new Sentence(jcas, sentenceBegin, end).addToIndexes();
+                sentenceBegin = end + 1;
+            }
+        }
+        engine.process(jcas);
+        return jcas;
+    }
+
+    /**
+     * Adds a Token per space separated word and a Sentence per the given number of tokens.
+     */
+    private static JCas processFixedSentences(AnalysisEngine engine, String text, int sentenceTokens) throws Exception {
+        JCas jcas = engine.newJCas();
+        jcas.setDocumentText(text);
+        int sentenceBegin = 0;
+        int count = 0;
+        for (int begin = 0, end; begin < text.length(); begin = end + 1) {
+            end = text.indexOf(' ', begin);
+            new Token(jcas, begin, end).addToIndexes();
+            if (++count % sentenceTokens == 0) {
+                new Sentence(jcas, sentenceBegin, end).addToIndexes();
+                sentenceBegin = end + 1;
+            }
+        }
+        engine.process(jcas);
+        return jcas;
+    }
+
+    private JCas processText(AnalysisEngineDescription dictionaryDescription, String text) {
+        try {
+            AnalysisEngine engine = AnalysisEngineFactory.createEngine(dictionaryDescription);
+            JCas jcas = engine.newJCas();
+            jcas.setDocumentText(text);
+            engine.process(jcas);
+            return jcas;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create UIMA engine", e);
+        }
+    }
+
     private JCas process(AnalysisEngineDescription dictionaryDescription, String text) {
         try {
             AggregateBuilder builder = new AggregateBuilder();
@@ -0,0 +1,127 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.DictionaryTree;
+import lt.tokenmill.uima.dictionaryannotator.tree.EntryTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DictionaryLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testParallelLoadingSameAsSerial() throws Exception {
+        Random random = new Random(3);
+        StringBuilder csv = new StringBuilder();
+        int lines = 0;
+        for (int i = 0; i < 20000; i++) {
+            String phrase = word(random) + (random.nextBoolean() ? " " + word(random) : "");
+            if (random.nextInt(50) == 0 || lines % DictionaryLoader.CHUNK_LINES == DictionaryLoader.CHUNK_LINES - 1) {
+                // Quoted values spanning several lines, also across chunk boundaries
+                csv.append('"').append(phrase).append("\n").append(word(random)).append("\",\"x\ny\",").append(i);
+                lines += 2;
+            } else if (random.nextInt(50) == 0) {
+                csv.append('"').append(phrase).append(", ").append(word(random)).append("\",type,").append(i);
+            } else {
+                csv.append(phrase).append(",type").append(random.nextInt(5)).append(',').append(i);
+            }
+            csv.append('\n');
+            lines++;
+        }
+        assertSameTrees(csv.toString());
+        assertSameTrees(csv + "\"unterminated\nquoted value");
+    }
+
+    @Test
+    public void testShardsSameAsSingleFile() throws Exception {
+        Random random = new Random(5);
+        File directory = temporaryFolder.newFolder("shards");
+        StringBuilder all = new StringBuilder();
+        List<URL> shards = new ArrayList<>();
+        for (int shard = 0; shard < 5; shard++) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < 8000; i++) {
+                csv.append(word(random)).append(' ').append(word(random)).append(",type,").append(shard).append('-').append(i).append('\n');
+            }
+            all.append(csv);
+            // Every other shard is compressed, whatever its name
+            File file = new File(directory, "shard" + shard + (shard % 2 == 0 ? ".csv.gz" : ".csv"));
+            try (OutputStream out = shard % 2 == 0 ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+                out.write(csv.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            shards.add(file.toURI().toURL());
+        }
+        File single = temporaryFolder.newFile();
+        Files.write(single.toPath(), all.toString().getBytes(StandardCharsets.UTF_8));
+        assertEquals(shards, DictionarySource.glob(directory.getPath() + "/shard*.csv*"));
+        assertEquals(shards, DictionarySource.expand(directory.toURI().toURL()));
+
+        DictionaryTree expected = load(single, 1, null);
+        for (int threads : new int[]{1, 3}) {
+            List<DictionaryLoader> loaders = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                loaders.add(new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(), false, true, 0, ',', "UTF-8",
+                        null, threads));
+            }
+            DictionaryTree tree = new DictionarySet(shards, loaders).load();
+            assertEquals(expected.getEntryCount(), tree.getEntryCount());
+            assertEquals(expected.getNodeCount(), tree.getNodeCount());
+            for (int entry = 0; entry < expected.getEntryCount(); entry++) {
+                String[] columns = tree.getEntryTable().getMetadata(entry).getColumns();
+                assertArrayEquals(expected.getEntryTable().getMetadata(entry).getColumns(), columns);
+                assertEquals(columns[2].substring(0, 1), String.valueOf(tree.getEntryTable().getDictionary(entry)));
+            }
+        }
+    }
+
+    private void assertSameTrees(String csv) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        DictionaryTree serial = load(file, 1, null);
+        DictionaryTree parallel = load(file, 4, null);
+        assertEquals(serial.getEntryCount(), parallel.getEntryCount());
+        assertEquals(serial.getNodeCount(), parallel.getNodeCount());
+        assertEquals(serial.getMemoryReport(), parallel.getMemoryReport());
+        EntryTable serialEntries = serial.getEntryTable();
+        EntryTable parallelEntries = parallel.getEntryTable();
+        for (int entry = 0; entry < serial.getEntryCount(); entry++) {
+            assertArrayEquals(serialEntries.getMetadata(entry).getColumns(),
+                    parallelEntries.getMetadata(entry).getColumns());
+            for (String token : serialEntries.getMetadata(entry).getText().split("\\s+")) {
+                String normalized = token.toLowerCase();
+                assertEquals(serial.getTokenId(normalized), parallel.getTokenId(normalized));
+            }
+        }
+        assertEquals(load(file, 1, new int[]{1}).getMemoryReport(), load(file, 3, new int[]{1}).getMemoryReport());
+    }
+
+    private static DictionaryTree load(File file, int threads, int[] columns) throws IOException {
+        return new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(), false, true, 0, ',', "UTF-8",
+                columns, threads).load(file.toURI().toURL());
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            word.append((char) ('a' + random.nextInt(6))).append((char) ('A' + random.nextInt(3)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import lt.tokenmill.uima.dictionaryannotator.tree.OverlapResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DictionaryMatcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMatchTextAndTokens() throws Exception {
+        URL languages = csv("Natural Language,field\nNatural Language Processing,field\nJava,language,7\n");
+        URL people = csv("java,island\n");
+        DictionaryMatcher matcher = new DictionaryMatcher.Builder()
+                .addDictionary(languages, loader(true))
+                .addDictionary(people, loader(false))
+                .build();
+        assertEquals(2, matcher.getDictionaryCount());
+
+        String text = "Natural Language Processing in Java";
+        Matches matches = matcher.match(text);
+        assertEquals(1, matches.getDocumentCount());
+        assertArrayEquals(new int[]{0, 0, 31, 31}, matches.getStarts());
+        assertArrayEquals(new int[]{16, 27, 35, 35}, matches.getEnds());
+        assertArrayEquals(new int[]{0, 0, 0, 1}, matches.getDictionaries());
+        assertEquals("language", matches.getValue(2, 1));
+        assertEquals("island", matches.getValue(3, 1));
+
+        int[] begins = {0, 8, 17, 28, 31};
+        int[] ends = {7, 16, 27, 30, 35};
+        Matches tokenMatches = matcher.match(text, begins, ends, begins.length);
+        assertArrayEquals(matches.getStarts(), tokenMatches.getStarts());
+        assertArrayEquals(matches.getEnds(), tokenMatches.getEnds());
+        assertArrayEquals(matches.getEntries(), tokenMatches.getEntries());
+        assertArrayEquals(matches.getDictionaries(), tokenMatches.getDictionaries());
+
+        DictionaryMatcher longest = new DictionaryMatcher.Builder()
+                .addDictionary(languages, loader(true))
+                .overlapPolicy(OverlapResolver.Policy.LONGEST, -1)
+                .build();
+        Matches longestMatches = longest.match(text, begins, ends, begins.length);
+        assertArrayEquals(new int[]{0, 31}, longestMatches.getStarts());
+        assertArrayEquals(new int[]{27, 35}, longestMatches.getEnds());
+    }
+
+    @Test
+    public void testBatchSameAsSingleDocuments() throws Exception {
+        URL dictionary = csv("a b\nb\nc a b\nd d\n");
+        Random random = new Random(5);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int t = random.nextInt(30); t > 0; t--) {
+                text.append((char) ('a' + random.nextInt(5))).append(' ');
+            }
+            texts.add(text.toString());
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            DictionaryMatcher sequential = new DictionaryMatcher.Builder()
+                    .addDictionary(dictionary, loader(true))
+                    .overlapPolicy(OverlapResolver.Policy.LEFTMOST_LONGEST, -1)
+                    .build();
+            DictionaryMatcher parallel = new DictionaryMatcher.Builder()
+                    .addDictionary(dictionary, loader(true))
+                    .overlapPolicy(OverlapResolver.Policy.LEFTMOST_LONGEST, -1)
+                    .parallel(pool, 100000)
+                    .build();
+            Matches expected = new Matches();
+            for (String text : texts) {
+                sequential.match(text, expected);
+            }
+            assertSameMatches(expected, sequential.matchAll(texts));
+            assertSameMatches(expected, parallel.matchAll(texts));
+
+            List<int[]> begins = new ArrayList<>();
+            List<int[]> ends = new ArrayList<>();
+            for (String text : texts) {
+                begins.add(offsets(text, 0));
+                ends.add(offsets(text, 1));
+            }
+            assertSameMatches(expected, parallel.matchAll(texts, begins, ends));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamSameAsText() throws Exception {
+        URL dictionary = csv("a b\nb\nc a b\nd d\nb c d e\n");
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        List<Integer> begins = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        for (int t = 0; t < 3000; t++) {
+            String token = random.nextInt(50) == 0 ? "eeeeeeeeeeeeeeeeeeee" : String.valueOf((char) ('a' + random.nextInt(5)));
+            begins.add(text.length());
+            text.append(token);
+            ends.add(text.length());
+            text.append(random.nextInt(4) == 0 ? "  " : " ");
+        }
+        for (OverlapResolver.Policy policy : OverlapResolver.Policy.values()) {
+            DictionaryMatcher matcher = new DictionaryMatcher.Builder()
+                    .addDictionary(dictionary, loader(true))
+                    .overlapPolicy(policy, -1)
+                    .build();
+            Matches expected = matcher.match(text, begins.stream().mapToInt(Integer::intValue).toArray(),
+                    ends.stream().mapToInt(Integer::intValue).toArray(), begins.size());
+            for (int bufferSize : new int[]{7, 16, 4096}) {
+                List<String> actual = new ArrayList<>();
+                DictionaryMatcher.StreamListener listener = (offset, matches) -> {
+                    for (int i = 0; i < matches.size(); i++) {
+                        actual.add((offset + matches.getStart(i)) + ":" + (offset + matches.getEnd(i)) + ":" + matches.getEntry(i));
+                    }
+                };
+                matcher.match(new StringReader(text.toString()), bufferSize, listener);
+                assertEquals(policy + " " + bufferSize, toStrings(expected), actual);
+                actual.clear();
+                matcher.match(Channels.newChannel(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8))),
+                        StandardCharsets.UTF_8, bufferSize, listener);
+                assertEquals(policy + " " + bufferSize, toStrings(expected), actual);
+            }
+        }
+    }
+
+    private static List<String> toStrings(Matches matches) {
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            strings.add(matches.getStart(i) + ":" + matches.getEnd(i) + ":" + matches.getEntry(i));
+        }
+        return strings;
+    }
+
+    private static void assertSameMatches(Matches expected, Matches actual) {
+        assertEquals(expected.getDocumentCount(), actual.getDocumentCount());
+        for (int d = 0; d <= expected.getDocumentCount(); d++) {
+            assertEquals(expected.getDocumentStart(d), actual.getDocumentStart(d));
+        }
+        assertArrayEquals(expected.getStarts(), actual.getStarts());
+        assertArrayEquals(expected.getEnds(), actual.getEnds());
+        assertArrayEquals(expected.getEntries(), actual.getEntries());
+        assertArrayEquals(expected.getDictionaries(), actual.getDictionaries());
+    }
+
+    /**
+     * @return begin (0) or end (1) offsets of single character tokens, each followed by a space
+     */
+    private static int[] offsets(String text, int end) {
+        int[] offsets = new int[text.length() / 2];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i * 2 + end;
+        }
+        return offsets;
+    }
+
+    private URL csv(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file.toURI().toURL();
+    }
+
+    private static DictionaryLoader loader(boolean caseSensitive) {
+        return new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(), caseSensitive, true, 0, ',', "UTF-8");
+    }
+}
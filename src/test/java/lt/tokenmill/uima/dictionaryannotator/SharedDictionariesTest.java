@@ -0,0 +1,81 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import com.google.common.io.Resources;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertNull;
+
+public class SharedDictionariesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDictionaryIsSharedUntilReleased() throws Exception {
+        URL location = Resources.getResource("nlproc-dictionary.csv");
+        ReloadableDictionary first = SharedDictionaries.acquire(location, loader(false));
+        ReloadableDictionary second = SharedDictionaries.acquire(location, loader(false));
+        ReloadableDictionary caseSensitive = SharedDictionaries.acquire(location, loader(true));
+        assertSame(first, second);
+        assertNotSame(first, caseSensitive);
+        assertEquals(first.current().getTree().getEntryCount(), caseSensitive.current().getTree().getEntryCount());
+
+        SharedDictionaries.release(location, loader(false));
+        assertSame(first, SharedDictionaries.acquire(location, loader(false)));
+        SharedDictionaries.release(location, loader(false));
+        SharedDictionaries.release(location, loader(false));
+        SharedDictionaries.release(location, loader(true));
+
+        ReloadableDictionary reloaded = SharedDictionaries.acquire(location, loader(false));
+        assertNotSame(first, reloaded);
+        SharedDictionaries.release(location, loader(false));
+    }
+
+    @Test
+    public void testReloadKeepsPreviousVersionIntact() throws Exception {
+        File csv = temporaryFolder.newFile("dictionary.csv");
+        Files.write(csv.toPath(), "alpha\n".getBytes(StandardCharsets.UTF_8));
+        URL location = csv.toURI().toURL();
+        ReloadableDictionary dictionary = SharedDictionaries.acquire(location, loader(false));
+        SharedDictionary first = dictionary.current();
+        assertEquals(1, first.getVersion());
+
+        Files.write(csv.toPath(), "alpha\nbeta\ngamma\n".getBytes(StandardCharsets.UTF_8));
+        List<Future<SharedDictionary>> reloads = SharedDictionaries.reload(location);
+        assertEquals(1, reloads.size());
+        SharedDictionary second = reloads.get(0).get();
+        assertSame(second, dictionary.current());
+        assertEquals(2, second.getVersion());
+        assertEquals(3, second.getTree().getEntryCount());
+        assertEquals(1, first.getTree().getEntryCount());
+        assertNull(first.getTree().getMatching("beta"));
+
+        Files.delete(csv.toPath());
+        try {
+            dictionary.reload().get();
+            fail("Reload of missing file must fail");
+        } catch (ExecutionException e) {
+            // Previous version stays in use
+        }
+        assertSame(second, dictionary.current());
+        SharedDictionaries.release(location, loader(false));
+    }
+
+    private static DictionaryLoader loader(boolean caseSensitive) {
+        return new DictionaryLoader(WhitespaceDictionaryTokenizer.class.getName(), caseSensitive, true, 0, ',', "UTF-8");
+    }
+}
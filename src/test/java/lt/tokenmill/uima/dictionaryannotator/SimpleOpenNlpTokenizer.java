@@ -1,15 +1,36 @@
 package lt.tokenmill.uima.dictionaryannotator;
 
 
+import lt.tokenmill.uima.dictionaryannotator.tree.TokenBoundary;
 import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.util.StringUtil;
 
 import java.util.Arrays;
 import java.util.List;
 
-public class SimpleOpenNlpTokenizer implements DictionaryTokenizer {
+public class SimpleOpenNlpTokenizer implements DictionaryTokenizer, TokenBoundary {
 
     @Override
     public List<String> tokenize(String text) {
         return Arrays.asList(SimpleTokenizer.INSTANCE.tokenize(text));
     }
+
+    @Override
+    public boolean isSeparator(char c) {
+        return StringUtil.isWhitespace(c);
+    }
+
+    /**
+     * Same rules as in {@link SimpleTokenizer}: token ends when character class changes
+     * or when a different non alphanumeric character follows.
+     */
+    @Override
+    public boolean isBoundary(char previous, char next) {
+        int nextClass = characterClass(next);
+        return nextClass != characterClass(previous) || (nextClass == 0 && previous != next);
+    }
+
+    private static int characterClass(char c) {
+        return Character.isLetter(c) ? 1 : Character.isDigit(c) ? 2 : 0;
+    }
 }
@@ -0,0 +1,87 @@
+package lt.tokenmill.uima.dictionaryannotator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TextNormalizerTest {
+
+    private static final boolean[] FLAGS = {true, false};
+
+    @Test
+    public void testSameAsStringNormalizationForEveryCharacter() {
+        for (boolean caseSensitive : FLAGS) {
+            for (boolean accentSensitive : FLAGS) {
+                TextNormalizer normalizer = new TextNormalizer(caseSensitive, accentSensitive);
+                StringBuilder target = new StringBuilder();
+                for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+                    String text = "a" + (char) c;
+                    String expected = reference(text, caseSensitive, accentSensitive);
+                    assertEquals(expected, normalizer.normalize(text));
+                    normalizer.normalize(text, 0, text.length(), target);
+                    assertEquals(expected, target.toString());
+                    assertEquals(reference(String.valueOf((char) c), caseSensitive, accentSensitive),
+                            normalizer.normalize((char) c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsStringNormalizationForRandomText() {
+        Random random = new Random(3);
+        String special = "\u03A3\u0391\u03A3 \u039F\u0394\u039F\u03A3 \u0130I\u0131i e\u0301\u0591\u05B0 \uD801\uDC00 \uD55C\uAD6D\uC5B4 \u0141\u00F3d\u017A \uFB01 \u01C5 \u1E9E";
+        for (boolean caseSensitive : FLAGS) {
+            for (boolean accentSensitive : FLAGS) {
+                TextNormalizer normalizer = new TextNormalizer(caseSensitive, accentSensitive);
+                StringBuilder target = new StringBuilder();
+                for (int i = 0; i < 100_000; i++) {
+                    StringBuilder text = new StringBuilder();
+                    int length = 1 + random.nextInt(8);
+                    for (int j = 0; j < length; j++) {
+                        text.append(random.nextBoolean()
+                                ? special.charAt(random.nextInt(special.length()))
+                                : (char) random.nextInt(random.nextBoolean() ? 0x250 : Character.MAX_VALUE + 1));
+                    }
+                    String prefix = "x " + text;
+                    normalizer.normalize(prefix, 2, prefix.length(), target);
+                    assertEquals(reference(text.toString(), caseSensitive, accentSensitive), target.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCharacterCacheSharedBySettings() {
+        String folded = new TextNormalizer(false, false).normalize('\u00C9');
+        assertEquals("e", folded);
+        assertSame(folded, new TextNormalizer(false, false).normalize('\u00C9'));
+        assertEquals("\u00E9", new TextNormalizer(false, true).normalize('\u00C9'));
+    }
+
+    @Test
+    public void testContextualLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr"));
+            TextNormalizer normalizer = new TextNormalizer(false, false);
+            for (String text : new String[]{"DI\u015E", "\u0130STANBUL", "I\u011EDIR", "I\u0130"}) {
+                assertEquals(reference(text, false, false), normalizer.normalize(text));
+            }
+            // Single characters are not served from the cache of other languages
+            assertEquals(reference("I", false, false), normalizer.normalize('I'));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private static String reference(String text, boolean caseSensitive, boolean accentSensitive) {
+        text = caseSensitive ? text : text.toLowerCase();
+        return accentSensitive ? text : StringUtils.stripAccents(text);
+    }
+}
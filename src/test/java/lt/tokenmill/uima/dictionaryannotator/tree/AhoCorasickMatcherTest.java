@@ -0,0 +1,65 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class AhoCorasickMatcherTest {
+
+    @Test
+    public void testOverlappingEntries() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("a", "a", "b"), record("aab"));
+        tree.addEntry(asList("a", "b"), record("ab"));
+        tree.addEntry(asList("b"), record("b"));
+        tree.addEntry(asList("a", "b", "c"), record("abc"));
+        List<String> tokens = asList("a", "a", "a", "b", "c", "a", "b");
+        List<String> expected = asList("1:4:aab", "2:4:ab", "3:4:b", "2:5:abc", "5:7:ab", "6:7:b");
+        assertEquals(expected, match(new AhoCorasickMatcher(new AhoCorasickAutomaton(tree)), tokens));
+        assertEquals(expected, match(new TreeMatcher(tree), tokens));
+    }
+
+    @Test
+    public void testSameMatchesAsTreeMatcher() {
+        Random random = new Random(42);
+        DictionaryTree tree = new DictionaryTree();
+        for (int i = 0; i < 200; i++) {
+            List<String> entry = randomTokens(random, 1 + random.nextInt(4));
+            tree.addEntry(entry, record(String.join(" ", entry)));
+        }
+        AhoCorasickAutomaton automaton = new AhoCorasickAutomaton(tree);
+        for (int i = 0; i < 50; i++) {
+            List<String> tokens = randomTokens(random, 500);
+            assertEquals(match(new TreeMatcher(tree), tokens), match(new AhoCorasickMatcher(automaton), tokens));
+        }
+    }
+
+    private static List<String> match(TokenMatcher matcher, List<String> tokens) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            matcher.proceed(i, i + 1, tokens.get(i), match -> {
+                for (EntryMetadata metadata : match.matchedEntries()) {
+                    result.add(match.getStart() + ":" + match.getEnd() + ":" + metadata.getText());
+                }
+            });
+        }
+        return result;
+    }
+
+    private static List<String> randomTokens(Random random, int count) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tokens.add(String.valueOf((char) ('a' + random.nextInt(4))));
+        }
+        return tokens;
+    }
+
+    private static String[] record(String text) {
+        return new String[]{text};
+    }
+}
@@ -0,0 +1,77 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnarEntryTableTest {
+
+    @Test
+    public void testKeepsOnlySelectedColumnsWithSharedValues() {
+        DictionaryTree tree = new DictionaryTree(0, new int[]{2, 1});
+        tree.addEntry(asList("paris"), new String[]{"Paris", "city", "fr", "unused"});
+        tree.addEntry(asList("berlin"), new String[]{"Berlin", "city", "de"});
+        tree.addEntry(asList("paris"), new String[]{"Paris", "person"});
+        tree.compact();
+
+        EntryTable table = tree.getEntryTable();
+        assertEquals(3, table.size());
+        assertEquals(2, table.getValueCount(1));
+        assertEquals(0, table.getValueCount(3));
+
+        DictionaryTreeElement paris = tree.getMatching("paris");
+        assertEquals(2, paris.getEntryCount());
+        assertNull(paris.getEntryIds());
+        assertEquals(paris.getEntry(0) + 1, paris.getEntry(1));
+        assertEquals("fr", table.getValue(paris.getEntry(0), 2));
+        assertNull(table.getValue(paris.getEntry(0), 0));
+        assertNull(table.getValue(paris.getEntry(0), 3));
+        assertNull(table.getValue(paris.getEntry(1), 2));
+        assertEquals("person", table.getValue(paris.getEntry(1), 1));
+        assertArrayEquals(new String[]{null, "city", "fr"}, table.getMetadata(paris.getEntry(0)).getColumns());
+
+        int berlin = tree.getMatching("berlin").getEntry(0);
+        assertEquals(table.getValueId(paris.getEntry(0), 1), table.getValueId(berlin, 1));
+    }
+
+    @Test
+    public void testKeepsAllColumnsByDefault() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("a"), new String[]{"a"});
+        tree.addEntry(asList("b"), new String[]{"b", "x", "y"});
+        EntryTable table = tree.getEntryTable();
+        assertArrayEquals(new String[]{"a"}, table.getMetadata(0).getColumns());
+        assertEquals("b", table.getMetadata(1).getText());
+        assertArrayEquals(new String[]{"b", "x", "y"}, table.getMetadata(1).getColumns());
+    }
+
+    @Test
+    public void testCombinedDictionariesKeepEntryDictionary() {
+        DictionaryTree tree = new DictionaryTree(new int[]{0, 1}, null);
+        tree.addEntry(asList("paris"), new String[]{"Paris", "city"});
+        tree.addEntry(asList("berlin"), new String[]{"city", "Berlin"}, 1);
+        tree.addEntry(asList("paris"), new String[]{"person", "Paris"}, 1);
+        tree.compact();
+
+        EntryTable table = tree.getEntryTable();
+        DictionaryTreeElement paris = tree.getMatching("paris");
+        assertEquals(2, paris.getEntryCount());
+        assertEquals(0, table.getDictionary(paris.getEntry(0)));
+        assertEquals(1, table.getDictionary(paris.getEntry(1)));
+        assertEquals("Paris", table.getMetadata(paris.getEntry(1)).getText());
+        int berlin = tree.getMatching("berlin").getEntry(0);
+        assertEquals(1, table.getDictionary(berlin));
+        assertEquals("Berlin", table.getMetadata(berlin).getText());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompactedTreeIsReadOnly() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("a"), new String[]{"a"});
+        tree.compact();
+        tree.addEntry(asList("b"), new String[]{"b"});
+    }
+}
@@ -0,0 +1,235 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DictionarySnapshotTest {
+
+    @Test
+    public void testSameAsLoadedTree() {
+        Random random = new Random(5);
+        List<Entry> entries = new ArrayList<>();
+        DictionaryTree tree = new DictionaryTree(new int[]{0, 0}, null);
+        for (int i = 0; i < 200; i++) {
+            Entry entry = entry(random, i);
+            entries.add(entry);
+            tree.addEntry(entry.tokens, entry.record, entry.dictionary);
+        }
+        tree.compact();
+        String[] text = new String[2000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = word(random, 12);
+        }
+        DictionarySnapshot snapshot = DictionarySnapshot.of(tree);
+        DictionarySnapshot first = null;
+        List<String> firstMatches = null;
+        for (int round = 0; round < 20; round++) {
+            for (int update = 0; update < 10; update++) {
+                if (random.nextBoolean() && !entries.isEmpty()) {
+                    Entry removed = entries.get(random.nextInt(entries.size()));
+                    entries.removeIf(entry -> entry.tokens.equals(removed.tokens) && entry.dictionary == removed.dictionary);
+                    snapshot = snapshot.remove(removed.tokens, removed.dictionary);
+                } else {
+                    Entry added = entry(random, 1000 + round * 10 + update);
+                    entries.add(added);
+                    snapshot = snapshot.add(added.tokens, added.record, added.dictionary);
+                }
+            }
+            List<String> expected = match(new TreeMatcher(tree(entries)), text);
+            assertEquals(expected, match(new SnapshotMatcher(snapshot), text));
+            assertEquals(entries.size(), snapshot.getEntryCount());
+            if (first == null) {
+                first = snapshot;
+                firstMatches = expected;
+            }
+        }
+        assertEquals(firstMatches, match(new SnapshotMatcher(first), text));
+    }
+
+    @Test
+    public void testOverlapPoliciesSameAsLoadedTree() {
+        DictionaryTree tree = new DictionaryTree(new int[]{0, 0}, null);
+        tree.addEntry(Arrays.asList("a", "b"), new String[]{"a b", "AB"}, 0);
+        tree.addEntry(Arrays.asList("b", "c"), new String[]{"b c", "BC"}, 0);
+        tree.addEntry(Arrays.asList("d"), new String[]{"d", "D"}, 0);
+        tree.compact();
+        // An unrelated removal makes the snapshot matcher report entries it collects itself
+        DictionarySnapshot snapshot = DictionarySnapshot.of(tree).remove(Arrays.asList("d"), 0);
+        String[] text = {"a", "b", "c"};
+        assertEquals(Arrays.asList("0:2:0:[a b, AB]", "1:3:0:[b c, BC]"),
+                match(new SnapshotMatcher(snapshot), text, OverlapResolver.Policy.LONGEST));
+
+        Random random = new Random(7);
+        List<Entry> entries = new ArrayList<>();
+        tree = new DictionaryTree(new int[]{0, 0}, null);
+        for (int i = 0; i < 200; i++) {
+            Entry entry = entry(random, i);
+            entries.add(entry);
+            tree.addEntry(entry.tokens, entry.record, entry.dictionary);
+        }
+        tree.compact();
+        snapshot = DictionarySnapshot.of(tree);
+        for (int update = 0; update < 30; update++) {
+            Entry removed = entries.remove(random.nextInt(entries.size()));
+            entries.removeIf(entry -> entry.tokens.equals(removed.tokens) && entry.dictionary == removed.dictionary);
+            snapshot = snapshot.remove(removed.tokens, removed.dictionary);
+            Entry added = entry(random, 1000 + update);
+            entries.add(added);
+            snapshot = snapshot.add(added.tokens, added.record, added.dictionary);
+        }
+        text = new String[2000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = word(random, 12);
+        }
+        DictionaryTree updated = tree(entries);
+        for (OverlapResolver.Policy policy : OverlapResolver.Policy.values()) {
+            assertEquals(policy.name(), match(new TreeMatcher(updated), text, policy),
+                    match(new SnapshotMatcher(snapshot), text, policy));
+        }
+    }
+
+    @Test
+    public void testRemoveMissingEntry() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(Arrays.asList("a", "b"), new String[]{"a b"});
+        tree.compact();
+        DictionarySnapshot snapshot = DictionarySnapshot.of(tree);
+        assertSame(snapshot, snapshot.remove(Arrays.asList("a"), 0));
+        assertSame(snapshot, snapshot.remove(Arrays.asList("a", "b"), 1));
+        assertSame(snapshot, snapshot.remove(Arrays.asList("c"), 0));
+        DictionarySnapshot removed = snapshot.remove(Arrays.asList("a", "b"), 0);
+        assertEquals(0, removed.getEntryCount());
+        assertEquals(1, snapshot.getEntryCount());
+    }
+
+    @Test
+    public void testPersistentIntMap() {
+        Random random = new Random(3);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        List<PersistentIntMap<Integer>> versions = new ArrayList<>();
+        List<Map<Integer, Integer>> expectedVersions = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            // Small keys share the low bits, large ones the high bits
+            int key = random.nextBoolean() ? random.nextInt(500) : random.nextInt() | 0x7ff;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+            if (i % 2000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        assertEquals(expected, toMap(map));
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(expectedVersions.get(i), toMap(versions.get(i)));
+        }
+        for (int key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+            map = map.remove(key);
+        }
+        assertEquals(0, map.size());
+        assertNull(map.get(1));
+    }
+
+    private static Map<Integer, Integer> toMap(PersistentIntMap<Integer> map) {
+        Map<Integer, Integer> result = new HashMap<>();
+        map.forEach(result::put);
+        assertEquals(map.size(), result.size());
+        for (Map.Entry<Integer, Integer> entry : result.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        return result;
+    }
+
+    private static DictionaryTree tree(List<Entry> entries) {
+        DictionaryTree tree = new DictionaryTree(new int[]{0, 0}, null);
+        for (Entry entry : entries) {
+            tree.addEntry(entry.tokens, entry.record, entry.dictionary);
+        }
+        tree.compact();
+        return tree;
+    }
+
+    private static List<String> match(TokenMatcher matcher, String[] text) {
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < text.length; i++) {
+            matcher.proceed(i, i + 1, text[i], match -> {
+                for (int e = 0; e < match.getEntryCount(); e++) {
+                    int entry = match.getEntry(e);
+                    EntryTable table = match.getEntryTable();
+                    matches.add(match.getStart() + ":" + match.getEnd() + ":" + table.getDictionary(entry)
+                            + ":" + Arrays.toString(table.getMetadata(entry).getColumns()));
+                }
+            });
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    /**
+     * Matches through an overlap resolver which is advanced after every token.
+     */
+    private static List<String> match(TokenMatcher matcher, String[] text, OverlapResolver.Policy policy) {
+        List<String> matches = new ArrayList<>();
+        MatchListener listener = match -> {
+            for (int e = 0; e < match.getEntryCount(); e++) {
+                int entry = match.getEntry(e);
+                EntryTable table = match.getEntryTable();
+                matches.add(match.getStart() + ":" + match.getEnd() + ":" + table.getDictionary(entry)
+                        + ":" + Arrays.toString(table.getMetadata(entry).getColumns()));
+            }
+        };
+        OverlapResolver resolver = new OverlapResolver(policy, 1);
+        for (int i = 0; i < text.length; i++) {
+            matcher.proceed(i, i + 1, text[i], resolver);
+            int partialMatchStart = matcher.getPartialMatchStart();
+            resolver.advance(partialMatchStart >= 0 ? partialMatchStart : i + 1, listener);
+        }
+        resolver.finish(listener);
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static Entry entry(Random random, int id) {
+        // Added entries may use words the tree does not have
+        List<String> tokens = new ArrayList<>();
+        int length = 1 + random.nextInt(3);
+        for (int t = 0; t < length; t++) {
+            tokens.add(word(random, id < 1000 ? 10 : 14));
+        }
+        return new Entry(tokens, new String[]{String.join(" ", tokens), "id" + id}, random.nextInt(2));
+    }
+
+    private static String word(Random random, int words) {
+        return "w" + random.nextInt(words);
+    }
+
+    private static final class Entry {
+
+        private final List<String> tokens;
+        private final String[] record;
+        private final int dictionary;
+
+        private Entry(List<String> tokens, String[] record, int dictionary) {
+            this.tokens = tokens;
+            this.record = record;
+            this.dictionary = dictionary;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyTreeMatcherTest {
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random random = new Random(11);
+        List<String[]> entries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String[] entry = new String[1 + random.nextInt(3)];
+            for (int t = 0; t < entry.length; t++) {
+                entry[t] = word(random);
+            }
+            entries.add(entry);
+        }
+        String[] tokens = new String[3000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = word(random);
+        }
+        assertSameAsBruteForce(entries, tokens);
+    }
+
+    @Test
+    public void testSameAsBruteForceWithManyChildren() {
+        Random random = new Random(13);
+        // Entries start with a few tokens, so their elements have child tries
+        String[] firstTokens = {"abca", "bcd", "dd"};
+        List<String[]> entries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String[] entry = new String[2 + random.nextInt(2)];
+            entry[0] = firstTokens[random.nextInt(firstTokens.length)];
+            for (int t = 1; t < entry.length; t++) {
+                entry[t] = word(random);
+            }
+            entries.add(entry);
+        }
+        String[] tokens = new String[3000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = random.nextInt(3) == 0 ? firstTokens[random.nextInt(firstTokens.length)] : word(random);
+        }
+        assertSameAsBruteForce(entries, tokens);
+    }
+
+    private static void assertSameAsBruteForce(List<String[]> entries, String[] tokens) {
+        DictionaryTree tree = new DictionaryTree();
+        for (String[] entry : entries) {
+            tree.addEntry(Arrays.asList(entry), new String[]{String.join(" ", entry)});
+        }
+        tree.compact();
+        FuzzyIndex index = new FuzzyIndex(tree);
+        int fuzzyMatches = 0;
+        for (int distance = 0; distance <= 2; distance++) {
+            List<String> expected = bruteForce(entries, tokens, distance, 3);
+            List<String> actual = new ArrayList<>();
+            FuzzyTreeMatcher matcher = new FuzzyTreeMatcher(index, distance, 3);
+            for (int i = 0; i < tokens.length; i++) {
+                matcher.proceed(i, i + 1, tokens[i], match -> {
+                    for (EntryMetadata entry : match.matchedEntries()) {
+                        actual.add(match.getStart() + ":" + match.getEnd() + ":" + entry.getText() + ":" + match.getCost());
+                    }
+                });
+            }
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+            if (distance > 0) {
+                fuzzyMatches += actual.stream().filter(match -> !match.endsWith(":0")).count();
+            }
+        }
+        assertTrue(fuzzyMatches > 0);
+    }
+
+    @Test
+    public void testLevenshteinDistance() {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(2);
+        assertEquals(1, distance(automaton, "kitten", "sitten"));
+        assertEquals(2, distance(automaton, "kitten", "sittin"));
+        assertEquals(3, distance(automaton, "kitten", "sitting"));
+        assertEquals(1, distance(automaton, "abc", "ab"));
+        assertEquals(1, distance(automaton, "ab", "abc"));
+        assertEquals(2, distance(automaton, "ab", "ba"));
+        assertEquals(0, distance(automaton, "", ""));
+        assertEquals(2, distance(automaton, "", "ab"));
+    }
+
+    /**
+     * @return distance or maximum distance + 1 if the path is rejected
+     */
+    private static int distance(LevenshteinAutomaton automaton, String token, String path) {
+        automaton.start(token);
+        for (int depth = 1; depth <= path.length(); depth++) {
+            if (depth > automaton.getMaxDepth() || !automaton.step(depth, path.charAt(depth - 1))) {
+                return 3;
+            }
+        }
+        return automaton.getDistance(path.length());
+    }
+
+    private static List<String> bruteForce(List<String[]> entries, String[] tokens, int maxDistance, int minLength) {
+        List<String> matches = new ArrayList<>();
+        for (int start = 0; start < tokens.length; start++) {
+            for (String[] entry : entries) {
+                if (start + entry.length > tokens.length) {
+                    continue;
+                }
+                int cost = 0;
+                for (int t = 0; t < entry.length && cost >= 0; t++) {
+                    String token = tokens[start + t];
+                    int distance = token.length() < minLength ? (token.equals(entry[t]) ? 0 : -1) : levenshtein(token, entry[t]);
+                    cost = distance >= 0 && distance <= maxDistance ? cost + distance : -1;
+                }
+                if (cost >= 0) {
+                    matches.add(start + ":" + (start + entry.length) + ":" + String.join(" ", entry) + ":" + cost);
+                }
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                row[j] = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 1 + random.nextInt(5); i > 0; i--) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OverlapResolverTest {
+
+    private static final List<String> TOKENS = asList("in", "new", "york", "city", "hall", "today");
+
+    @Test
+    public void testLongest() {
+        assertEquals(asList("1:4:new york city", "3:5:city hall"),
+                match(new TreeMatcher(cityTree()), TOKENS, OverlapResolver.Policy.LONGEST));
+    }
+
+    @Test
+    public void testLeftmostLongest() {
+        assertEquals(asList("1:4:new york city"),
+                match(new TreeMatcher(cityTree()), TOKENS, OverlapResolver.Policy.LEFTMOST_LONGEST));
+    }
+
+    @Test
+    public void testNonOverlappingByPriority() {
+        assertEquals(asList("1:3:new york", "3:5:city hall"),
+                match(new TreeMatcher(cityTree()), TOKENS, OverlapResolver.Policy.NON_OVERLAPPING));
+    }
+
+    @Test
+    public void testNonOverlappingKeepsEntriesWithHighestPriority() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("paris"), record("paris", "city", "5"));
+        tree.addEntry(asList("paris"), record("paris", "person", "1"));
+        tree.addEntry(asList("paris"), record("paris", "capital", "5"));
+        List<String> result = new ArrayList<>();
+        OverlapResolver resolver = new OverlapResolver(OverlapResolver.Policy.NON_OVERLAPPING, 2);
+        new TreeMatcher(tree).proceed(0, 1, "paris", resolver);
+        resolver.finish(match -> {
+            for (EntryMetadata metadata : match.matchedEntries()) {
+                result.add(metadata.getColumns()[1]);
+            }
+        });
+        assertEquals(asList("city", "capital"), result);
+    }
+
+    @Test
+    public void testStreamingSameAsResolvingWholeDocument() {
+        Random random = new Random(7);
+        DictionaryTree tree = new DictionaryTree();
+        for (int i = 0; i < 200; i++) {
+            List<String> entry = new ArrayList<>();
+            for (int j = 1 + random.nextInt(4); j > 0; j--) {
+                entry.add(String.valueOf((char) ('a' + random.nextInt(5))));
+            }
+            tree.addEntry(entry, record(String.join(" ", entry), "", String.valueOf(random.nextInt(3))));
+        }
+        AhoCorasickAutomaton automaton = new AhoCorasickAutomaton(tree);
+        for (int i = 0; i < 50; i++) {
+            List<String> tokens = new ArrayList<>();
+            for (int j = 0; j < 300; j++) {
+                tokens.add(random.nextInt(20) == 0 ? "x" : String.valueOf((char) ('a' + random.nextInt(5))));
+            }
+            for (OverlapResolver.Policy policy : OverlapResolver.Policy.values()) {
+                List<String> expected = match(new TreeMatcher(tree), tokens, policy, false);
+                assertEquals(expected, match(new TreeMatcher(tree), tokens, policy, true));
+                assertEquals(expected, match(new AhoCorasickMatcher(automaton), tokens, policy, true));
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsPairwiseSelection() {
+        Random random = new Random(11);
+        DictionaryTree tree = new DictionaryTree();
+        for (int i = 0; i < 100; i++) {
+            List<String> entry = new ArrayList<>();
+            for (int j = 1 + random.nextInt(4); j > 0; j--) {
+                entry.add(String.valueOf((char) ('a' + random.nextInt(4))));
+            }
+            // Priority depends on the phrase only, so duplicate phrases keep all their entries
+            String text = String.join(" ", entry);
+            tree.addEntry(entry, record(text, "", String.valueOf(text.hashCode() % 3 & 3)));
+        }
+        for (int i = 0; i < 20; i++) {
+            List<String> tokens = new ArrayList<>();
+            for (int j = 0; j < 200; j++) {
+                tokens.add(String.valueOf((char) ('a' + random.nextInt(4))));
+            }
+            // Every match as start, end, priority of its entry and text
+            List<String[]> all = new ArrayList<>();
+            for (String match : match(new TreeMatcher(tree), tokens, OverlapResolver.Policy.ALL)) {
+                all.add(match.split(":"));
+            }
+            for (OverlapResolver.Policy policy : asList(OverlapResolver.Policy.LONGEST, OverlapResolver.Policy.NON_OVERLAPPING)) {
+                List<String> actual = match(new TreeMatcher(tree), tokens, policy);
+                actual.sort(null);
+                assertEquals(pairwiseSelection(all, tree, policy), actual);
+            }
+        }
+    }
+
+    @Test
+    public void testLongOverlappingChainScales() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("a", "a"), record("a a", "", "1"));
+        for (OverlapResolver.Policy policy : OverlapResolver.Policy.values()) {
+            long small = bestTime(tree, 4000, policy);
+            long large = bestTime(tree, 64000, policy);
+            // 16 times more matches, which are never flushed: about 20 times slower when sorting, 256 when pairwise
+            assertTrue(policy + " " + small + " ns, " + large + " ns", large < 80 * Math.max(small, 100_000));
+        }
+        List<String> tokens = Collections.nCopies(64000, "a");
+        assertEquals(63999, match(new TreeMatcher(tree), tokens, OverlapResolver.Policy.LONGEST).size());
+        assertEquals(32000, match(new TreeMatcher(tree), tokens, OverlapResolver.Policy.NON_OVERLAPPING).size());
+        assertEquals(32000, match(new TreeMatcher(tree), tokens, OverlapResolver.Policy.LEFTMOST_LONGEST).size());
+    }
+
+    private static long bestTime(DictionaryTree tree, int length, OverlapResolver.Policy policy) {
+        List<String> tokens = Collections.nCopies(length, "a");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            match(new TreeMatcher(tree), tokens, policy);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Selects from all matches by comparing every pair of them, as the policies are defined.
+     */
+    private static List<String> pairwiseSelection(List<String[]> all, DictionaryTree tree, OverlapResolver.Policy policy) {
+        List<String> result = new ArrayList<>();
+        if (policy == OverlapResolver.Policy.LONGEST) {
+            for (String[] match : all) {
+                boolean contained = false;
+                for (String[] other : all) {
+                    contained |= start(other) <= start(match) && end(other) >= end(match)
+                            && end(other) - start(other) > end(match) - start(match);
+                }
+                if (!contained) {
+                    result.add(String.join(":", match));
+                }
+            }
+        } else {
+            // Entries of a span, span priority is the highest one of its entries
+            List<String[]> spans = new ArrayList<>();
+            for (String[] match : all) {
+                if (spans.stream().noneMatch(span -> start(span) == start(match) && end(span) == end(match))) {
+                    spans.add(new String[]{match[0], match[1], String.valueOf(all.stream()
+                            .filter(other -> start(other) == start(match) && end(other) == end(match))
+                            .mapToInt(other -> priority(other, tree)).max().getAsInt())});
+                }
+            }
+            spans.sort((a, b) -> Integer.parseInt(b[2]) != Integer.parseInt(a[2])
+                    ? Integer.parseInt(b[2]) - Integer.parseInt(a[2])
+                    : end(b) - start(b) != end(a) - start(a) ? (end(b) - start(b)) - (end(a) - start(a))
+                    : start(a) - start(b));
+            List<String[]> selected = new ArrayList<>();
+            for (String[] span : spans) {
+                if (selected.stream().noneMatch(other -> start(other) < end(span) && start(span) < end(other))) {
+                    selected.add(span);
+                    for (String[] match : all) {
+                        if (start(match) == start(span) && end(match) == end(span)
+                                && priority(match, tree) == Integer.parseInt(span[2])) {
+                            result.add(String.join(":", match));
+                        }
+                    }
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    private static int start(String[] match) {
+        return Integer.parseInt(match[0]);
+    }
+
+    private static int end(String[] match) {
+        return Integer.parseInt(match[1]);
+    }
+
+    private static int priority(String[] match, DictionaryTree tree) {
+        EntryTable entries = tree.getEntryTable();
+        for (int entry = 0; entry < entries.size(); entry++) {
+            if (entries.getValue(entry, 0).equals(match[2])) {
+                return Integer.parseInt(entries.getValue(entry, 2));
+            }
+        }
+        throw new IllegalArgumentException(match[2]);
+    }
+
+    private static DictionaryTree cityTree() {
+        DictionaryTree tree = new DictionaryTree();
+        tree.addEntry(asList("new", "york"), record("new york", "", "3"));
+        tree.addEntry(asList("new", "york", "city"), record("new york city", "", "1"));
+        tree.addEntry(asList("york"), record("york", "", "2"));
+        tree.addEntry(asList("city", "hall"), record("city hall", "", "2"));
+        return tree;
+    }
+
+    private static List<String> match(TokenMatcher matcher, List<String> tokens, OverlapResolver.Policy policy) {
+        return match(matcher, tokens, policy, true);
+    }
+
+    private static List<String> match(TokenMatcher matcher, List<String> tokens, OverlapResolver.Policy policy,
+                                      boolean streaming) {
+        List<String> result = new ArrayList<>();
+        MatchListener listener = match -> {
+            for (EntryMetadata metadata : match.matchedEntries()) {
+                result.add(match.getStart() + ":" + match.getEnd() + ":" + metadata.getText());
+            }
+        };
+        OverlapResolver resolver = new OverlapResolver(policy, 2);
+        for (int i = 0; i < tokens.size(); i++) {
+            matcher.proceed(i, i + 1, tokens.get(i), resolver);
+            if (streaming) {
+                int partialMatchStart = matcher.getPartialMatchStart();
+                resolver.advance(partialMatchStart >= 0 ? partialMatchStart : i + 1, listener);
+            }
+        }
+        resolver.finish(listener);
+        if (policy == OverlapResolver.Policy.ALL) {
+            result.sort(null);
+        }
+        return result;
+    }
+
+    private static String[] record(String text, String type, String priority) {
+        return new String[]{text, type, priority};
+    }
+}
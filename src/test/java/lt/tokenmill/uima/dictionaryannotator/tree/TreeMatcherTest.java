@@ -0,0 +1,148 @@
+package lt.tokenmill.uima.dictionaryannotator.tree;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreeMatcherTest {
+
+    private static final int TOKENS = 100_000;
+
+    @Test
+    public void testTreeMatcherDoesNotAllocate() {
+        assertAllocationFree(new TreeMatcher(createTree()));
+    }
+
+    @Test
+    public void testAhoCorasickMatcherDoesNotAllocate() {
+        assertAllocationFree(new AhoCorasickMatcher(new AhoCorasickAutomaton(createTree())));
+    }
+
+    @Test
+    public void testFuzzyTreeMatcherDoesNotAllocate() {
+        assertAllocationFree(new FuzzyTreeMatcher(new FuzzyIndex(createTree()), 1, 2));
+    }
+
+    @Test
+    public void testFrozenTreeMatcherDoesNotAllocate() {
+        DictionaryTree tree = createTree();
+        tree.freeze();
+        assertAllocationFree(new TreeMatcher(tree));
+    }
+
+    @Test
+    public void testFrozenTreeMatchesSameEntries() {
+        DictionaryTree tree = createSuffixTree();
+        DictionaryTree frozen = createSuffixTree();
+        frozen.freeze();
+        assertTrue(frozen.getNodeCount() * 2 < tree.getNodeCount());
+        assertEquals(tree.getEntryCount(), frozen.getEntryCount());
+        Random random = new Random(3);
+        String[] tokens = randomTokens(random, 20000);
+        String[] suffixTokens = {"inc", "ltd", "of", "america", "bank"};
+        for (int i = 0; i < tokens.length; i++) {
+            if (random.nextInt(3) == 0) {
+                tokens[i] = suffixTokens[random.nextInt(suffixTokens.length)];
+            }
+        }
+        List<String> matches = match(new TreeMatcher(tree), tokens);
+        assertTrue(matches.stream().anyMatch(match -> match.contains(" of america")));
+        assertEquals(matches, match(new TreeMatcher(frozen), tokens));
+    }
+
+    /**
+     * @return every match with the metadata of its entries and partial match start after every token
+     */
+    private static List<String> match(TokenMatcher matcher, String[] tokens) {
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < tokens.length; i++) {
+            matcher.proceed(i, i + 1, tokens[i], match -> {
+                for (int e = 0; e < match.getEntryCount(); e++) {
+                    int entry = match.getEntry(e);
+                    matches.add(match.getStart() + ":" + match.getEnd() + ":" + match.getEntryTable().getDictionary(entry)
+                            + ":" + Arrays.toString(match.getEntryTable().getMetadata(entry).getColumns()));
+                }
+            });
+            matches.add(i + ":" + matcher.getPartialMatchStart());
+        }
+        return matches;
+    }
+
+    /**
+     * @return tree of two dictionaries whose entries end with a few common suffixes
+     */
+    private static DictionaryTree createSuffixTree() {
+        Random random = new Random(17);
+        String[][] suffixes = {{}, {"inc"}, {"ltd"}, {"of", "america"}, {"bank", "of", "america"}};
+        DictionaryTree tree = new DictionaryTree(new int[]{0, 0}, null);
+        for (int i = 0; i < 3000; i++) {
+            List<String> entry = new ArrayList<>(Arrays.asList(randomTokens(random, 1 + random.nextInt(2))));
+            entry.addAll(Arrays.asList(suffixes[random.nextInt(suffixes.length)]));
+            tree.addEntry(entry, new String[]{String.join(" ", entry), "id" + i}, random.nextInt(2));
+        }
+        return tree;
+    }
+
+    private static void assertAllocationFree(TokenMatcher matcher) {
+        String[] tokens = randomTokens(new Random(7), TOKENS);
+        CountingListener listener = new CountingListener();
+        // Warm up, so that state arrays reach their final size and code gets compiled
+        for (int i = 0; i < 10; i++) {
+            matchDocument(matcher, tokens, listener);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < 10; i++) {
+            matchDocument(matcher, tokens, listener);
+        }
+        double bytesPerToken = (double) (allocatedBytes() - before) / (10L * TOKENS);
+        assertTrue(listener.matches > 0);
+        assertTrue("Allocated " + bytesPerToken + " bytes per token", bytesPerToken < 0.01);
+    }
+
+    private static void matchDocument(TokenMatcher matcher, String[] tokens, MatchListener listener) {
+        matcher.reset();
+        for (int i = 0; i < tokens.length; i++) {
+            matcher.proceed(i, i + 1, tokens[i], listener);
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static DictionaryTree createTree() {
+        Random random = new Random(42);
+        DictionaryTree tree = new DictionaryTree();
+        for (int i = 0; i < 1000; i++) {
+            String[] entry = randomTokens(random, 1 + random.nextInt(4));
+            tree.addEntry(Arrays.asList(entry), entry);
+        }
+        return tree;
+    }
+
+    private static String[] randomTokens(Random random, int count) {
+        String[] tokens = new String[count];
+        for (int i = 0; i < count; i++) {
+            tokens[i] = "t" + random.nextInt(30);
+        }
+        return tokens;
+    }
+
+    private static final class CountingListener implements MatchListener {
+
+        private long matches;
+
+        @Override
+        public void onMatch(TreeMatch match) {
+            matches += match.getEntryCount();
+        }
+    }
+}